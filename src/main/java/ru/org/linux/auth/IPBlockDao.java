@@ -15,9 +15,16 @@
 
 package ru.org.linux.auth;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.InetAddresses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.validation.Errors;
 import ru.org.linux.user.User;
 
@@ -25,20 +32,57 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Блокировки IP адресов.
+ *
+ * Таблица b_ips целиком хранится в памяти в виде неизменяемого снимка, поиск
+ * выполняется без обращения к БД. Снимок периодически перечитывается, а после
+ * {@link #blockIP} заменяется сразу.
+ */
 @Repository
 public class IPBlockDao {
+  private static final Logger logger = LoggerFactory.getLogger(IPBlockDao.class);
+
+  private static final int REFRESH_DELAY = 60 * 1000;
+
+  private static final String queryBlocks =
+          "SELECT ip, reason, ban_date, date, mod_id, allow_posting, captcha_required FROM b_ips";
+
   private JdbcTemplate jdbcTemplate;
 
+  @Nullable
+  private volatile Map<InetKey, IPBlockInfo> blocks;
+
   @Autowired
   public void setDataSource(DataSource ds) {
     jdbcTemplate = new JdbcTemplate(ds);
   }
 
   public IPBlockInfo getBlockInfo(String addr) {
+    InetKey key = InetKey.parse(addr);
+
+    if (key == null) {
+      // пусть БД сообщит о некорректном адресе
+      return loadBlockInfo(addr);
+    }
+
+    IPBlockInfo info = getBlocks().get(key);
+
+    if (info == null) {
+      return new IPBlockInfo(addr);
+    } else {
+      return info;
+    }
+  }
+
+  private IPBlockInfo loadBlockInfo(String addr) {
     List<IPBlockInfo> list = jdbcTemplate.query(
-            "SELECT ip, reason, ban_date, date, mod_id, allow_posting, captcha_required FROM b_ips WHERE ip = ?::inet",
+            queryBlocks + " WHERE ip = ?::inet",
             (rs, rowNum) -> new IPBlockInfo(rs),
             addr
     );
@@ -50,6 +94,79 @@ public class IPBlockDao {
     }
   }
 
+  private Map<InetKey, IPBlockInfo> getBlocks() {
+    Map<InetKey, IPBlockInfo> current = blocks;
+
+    if (current == null) {
+      synchronized (this) {
+        current = blocks;
+
+        if (current == null) {
+          current = loadBlocks();
+          blocks = current;
+        }
+      }
+    }
+
+    return current;
+  }
+
+  private Map<InetKey, IPBlockInfo> loadBlocks() {
+    Map<InetKey, IPBlockInfo> loaded = new HashMap<>();
+
+    jdbcTemplate.query(queryBlocks, rs -> {
+      IPBlockInfo info = new IPBlockInfo(rs);
+      InetKey key = InetKey.parse(info.getIp());
+
+      if (key != null) {
+        loaded.put(key, info);
+      } else {
+        logger.warn("Can't parse b_ips address " + info.getIp());
+      }
+    });
+
+    return ImmutableMap.copyOf(loaded);
+  }
+
+  @Scheduled(fixedDelay = REFRESH_DELAY)
+  public void refresh() {
+    try {
+      synchronized (this) {
+        blocks = loadBlocks();
+      }
+    } catch (RuntimeException ex) {
+      logger.warn("IP block table refresh failed", ex);
+    }
+  }
+
+  private void refresh(String ip) {
+    InetKey key = InetKey.parse(ip);
+
+    if (key == null) {
+      return;
+    }
+
+    IPBlockInfo info = loadBlockInfo(ip);
+
+    synchronized (this) {
+      Map<InetKey, IPBlockInfo> current = blocks;
+
+      if (current == null) {
+        return;
+      }
+
+      Map<InetKey, IPBlockInfo> updated = new HashMap<>(current);
+
+      if (info.isInitialized()) {
+        updated.put(key, info);
+      } else {
+        updated.remove(key);
+      }
+
+      blocks = ImmutableMap.copyOf(updated);
+    }
+  }
+
   public void checkBlockIP(@Nonnull String addr, @Nonnull Errors errors, @Nullable User user) {
     checkBlockIP(getBlockInfo(addr), errors, user);
   }
@@ -63,7 +180,7 @@ public class IPBlockDao {
 
   public void blockIP(String ip, User moderator, String reason, Timestamp ts,
                       boolean allow_posting, boolean captcha_required) {
-    IPBlockInfo blockInfo = getBlockInfo(ip);
+    IPBlockInfo blockInfo = loadBlockInfo(ip);
 
     if (!blockInfo.isInitialized()) {
       jdbcTemplate.update(
@@ -88,5 +205,87 @@ public class IPBlockDao {
               ip
       );
     }
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          refresh(ip);
+        }
+      });
+    } else {
+      refresh(ip);
+    }
+  }
+
+  /**
+   * Значение inet: адрес и длина маски. Как и для типа inet в PostgreSQL,
+   * адрес без маски равен адресу с маской на всю длину (1.2.3.4 = 1.2.3.4/32),
+   * а IPv4-mapped адрес ::ffff:1.2.3.4 остается IPv6 и не равен 1.2.3.4.
+   */
+  static final class InetKey {
+    private final byte[] address;
+    private final int prefix;
+
+    private InetKey(byte[] address, int prefix) {
+      this.address = address;
+      this.prefix = prefix;
+    }
+
+    @Nullable
+    static InetKey parse(String value) {
+      int slash = value.indexOf('/');
+      String addr = slash >= 0 ? value.substring(0, slash) : value;
+
+      if (!InetAddresses.isInetAddress(addr)) {
+        return null;
+      }
+
+      byte[] address = InetAddresses.forString(addr).getAddress();
+
+      if (address.length == 4 && addr.indexOf(':') >= 0) {
+        // InetAddress превращает ::ffff:a.b.c.d в IPv4, PostgreSQL - нет
+        byte[] mapped = new byte[16];
+        mapped[10] = (byte) 0xff;
+        mapped[11] = (byte) 0xff;
+        System.arraycopy(address, 0, mapped, 12, 4);
+        address = mapped;
+      }
+      int prefix = address.length * 8;
+
+      if (slash >= 0) {
+        try {
+          prefix = Integer.parseInt(value.substring(slash + 1));
+        } catch (NumberFormatException ex) {
+          return null;
+        }
+
+        if (prefix < 0 || prefix > address.length * 8) {
+          return null;
+        }
+      }
+
+      return new InetKey(address, prefix);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      InetKey inetKey = (InetKey) o;
+
+      return prefix == inetKey.prefix && Arrays.equals(address, inetKey.address);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Arrays.hashCode(address) + prefix;
+    }
   }
 }
@@ -20,6 +20,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -29,8 +30,11 @@ import ru.org.linux.util.StringUtil;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -48,6 +52,8 @@ public class CommentDao {
     "FROM comments " +
     "WHERE comments.id=?";
 
+  private static final String queryDeletedByIds = "SELECT id, deleted FROM comments WHERE id = ANY(?)";
+
   /**
    * Запрос списка комментариев для топика ВКЛЮЧАЯ удаленные
    */
@@ -70,6 +76,10 @@ public class CommentDao {
 
   private static final String replysForCommentCount = "SELECT count(id) FROM comments WHERE replyto=? AND NOT deleted";
   private static final String deleteComment = "UPDATE comments SET deleted='t' WHERE id=? AND not deleted";
+  private static final String deleteCommentsWithoutReplies = "UPDATE comments SET deleted='t' " +
+          "WHERE id = ANY(?) AND NOT deleted " +
+          "AND NOT EXISTS (SELECT 1 FROM comments replys WHERE replys.replyto=comments.id AND NOT replys.deleted) " +
+          "RETURNING id";
 
   private JdbcTemplate jdbcTemplate;
 
@@ -95,6 +105,26 @@ public class CommentDao {
     return comment;
   }
 
+  /**
+   * Признак удаления комментариев по списку id одним запросом
+   *
+   * @param ids id комментариев
+   * @return id комментария -> удален ли он, отсутствующих комментариев в результате нет
+   */
+  public Map<Integer, Boolean> getDeletedByIds(Collection<Integer> ids) {
+    Map<Integer, Boolean> result = new HashMap<>(ids.size());
+
+    if (!ids.isEmpty()) {
+      jdbcTemplate.query(
+              queryDeletedByIds,
+              ps -> ps.setArray(1, ps.getConnection().createArrayOf("int", ids.toArray())),
+              (RowCallbackHandler) rs -> result.put(rs.getInt("id"), rs.getBoolean("deleted"))
+      );
+    }
+
+    return result;
+  }
+
   /**
      * Список комментариев топика
      *
@@ -150,6 +180,41 @@ public class CommentDao {
     jdbcTemplate.update("UPDATE topics SET stat3=stat1 WHERE id=? AND stat3 > stat1", topicId);
   }
 
+  /**
+   * Обновляет статистику топиков после удаления комментариев из разных топиков:
+   * число удаленных считается по каждому топику, все топики обновляются одним запросом.
+   *
+   * @param commentIds удаленные комментарии
+   */
+  @Transactional(rollbackFor = Exception.class, propagation = Propagation.MANDATORY)
+  public void updateStatsAfterDelete(Collection<Integer> commentIds) {
+    jdbcTemplate.update(
+            "UPDATE topics SET stat1=topics.stat1-deleted.count, " +
+                    "stat3=LEAST(topics.stat3, topics.stat1-deleted.count), lastmod=CURRENT_TIMESTAMP " +
+                    "FROM (SELECT topic, count(*) AS count FROM comments WHERE id = ANY(?) GROUP BY topic) AS deleted " +
+                    "WHERE topics.id=deleted.topic",
+            ps -> ps.setArray(1, ps.getConnection().createArrayOf("int", commentIds.toArray()))
+    );
+  }
+
+  /**
+   * Удалить комментарии из списка, на которые нет неудаленных ответов.
+   *
+   * Ответы, удаленные этим же запросом, еще считаются неудаленными, поэтому
+   * если в списке есть цепочки ответов, запрос нужно повторять, пока он что-то удаляет.
+   *
+   * @param ids id комментариев
+   * @return id удаленных комментариев
+   */
+  @Transactional(rollbackFor = Exception.class, propagation = Propagation.MANDATORY)
+  public List<Integer> deleteCommentsWithoutReplies(Collection<Integer> ids) {
+    return jdbcTemplate.query(
+            deleteCommentsWithoutReplies,
+            ps -> ps.setArray(1, ps.getConnection().createArrayOf("int", ids.toArray())),
+            (rs, i) -> rs.getInt("id")
+    );
+  }
+
   /**
      * Сколько ответов на комментарий
      *
@@ -161,14 +226,14 @@ public class CommentDao {
   }
 
   /**
-   * Массовое удаление комментариев пользователя со всеми ответами на комментарии.
+   * Неудаленные комментарии пользователя для массового удаления,
+   * от новых к старым (ответы раньше комментариев, на которые они отвечают).
    *
    * @param user пользователь для экзекуции
-   * @return список удаленных комментариев
+   * @return список id комментариев
    */
-  @Transactional(rollbackFor = Exception.class, propagation = Propagation.MANDATORY)
-  public List<Integer> getAllByUserForUpdate(User user) {
-    return jdbcTemplate.queryForList("SELECT id FROM comments WHERE userid=? AND not deleted ORDER BY id DESC FOR update",
+  public List<Integer> getUndeletedByUser(User user) {
+    return jdbcTemplate.queryForList("SELECT id FROM comments WHERE userid=? AND not deleted ORDER BY id DESC",
             Integer.class,
             user.getId()
     );
@@ -178,9 +243,11 @@ public class CommentDao {
     return jdbcTemplate.queryForList("SELECT id FROM comments WHERE userid=? AND not deleted", Integer.class, user.getId());
   }
 
-  @Transactional(rollbackFor = Exception.class, propagation = Propagation.MANDATORY)
-  public List<Integer> getCommentsByIPAddressForUpdate(String ip, Timestamp timedelta) {
-    return jdbcTemplate.queryForList("SELECT id FROM comments WHERE postip=?::inet AND not deleted AND postdate>? ORDER BY id DESC FOR update",
+  /**
+   * Неудаленные комментарии с ip после указанного времени для массового удаления, от новых к старым
+   */
+  public List<Integer> getUndeletedByIPAddress(String ip, Timestamp timedelta) {
+    return jdbcTemplate.queryForList("SELECT id FROM comments WHERE postip=?::inet AND not deleted AND postdate>? ORDER BY id DESC",
             Integer.class,
             ip, timedelta);
   }
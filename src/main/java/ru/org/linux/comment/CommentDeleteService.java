@@ -17,16 +17,22 @@ package ru.org.linux.comment;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.org.linux.site.DeleteInfo;
 import ru.org.linux.site.ScriptErrorException;
 import ru.org.linux.spring.dao.DeleteInfoDao;
 import ru.org.linux.topic.Topic;
 import ru.org.linux.topic.TopicDao;
 import ru.org.linux.topic.TopicService;
+import ru.org.linux.tracker.TrackerIndex;
 import ru.org.linux.user.User;
 import ru.org.linux.user.UserDao;
 import ru.org.linux.user.UserEventService;
@@ -36,6 +42,15 @@ import java.util.*;
 
 @Service
 public class CommentDeleteService {
+  private static final Logger logger = LoggerFactory.getLogger(CommentDeleteService.class);
+
+  /**
+   * Сколько комментариев удалять в одной транзакции при массовом удалении
+   */
+  private static final int MASS_DELETE_CHUNK = 500;
+
+  private static final String BLOCK_REASON = "Блокировка пользователя с удалением сообщений";
+
   @Autowired
   private CommentDao commentDao;
 
@@ -57,6 +72,12 @@ public class CommentDeleteService {
   @Autowired
   private TopicDao topicDao;
 
+  @Autowired
+  private TrackerIndex trackerIndex;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
   /**
    * Удаляем коментарий, если на комментарий есть ответы - генерируем исключение
    *
@@ -107,10 +128,6 @@ public class CommentDeleteService {
     return deleted;
   }
 
-  private boolean doDeleteComment(int msgid, String reason, User user) {
-    return doDeleteComment(msgid, reason, user, 0);
-  }
-
   /**
    * Удалить комментарий.
    *
@@ -199,7 +216,8 @@ public class CommentDeleteService {
   }
 
   /**
-   * Удаление топиков, сообщений по ip и за определнный период времени, те комментарии на которые существуют ответы пропускаем
+   * Удаление топиков, сообщений по ip и за определнный период времени, те комментарии на которые существуют ответы пропускаем.
+   * Топики удаляются в одной транзакции, комментарии - пачками (см. massDeleteComments).
    *
    * @param ip        ip для которых удаляем сообщения (не проверяется на корректность)
    * @param timeDelta врменной промежуток удаления (не проверяется на корректность)
@@ -207,14 +225,15 @@ public class CommentDeleteService {
    * @param reason    причина удаления, которая будет вписана для удаляемых топиков
    * @return список id удаленных сообщений
    */
-  @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
   public DeleteCommentResult deleteCommentsByIPAddress(
     String ip,
     Timestamp timeDelta,
     final User moderator,
     final String reason)
   {
-    List<Integer> deletedTopics = topicService.deleteByIPAddress(ip, timeDelta, moderator, reason);
+    List<Integer> deletedTopics = new TransactionTemplate(transactionManager).execute(
+            status -> topicService.deleteByIPAddress(ip, timeDelta, moderator, reason)
+    );
 
     Map<Integer, String> deleteInfo = new HashMap<>();
 
@@ -223,75 +242,105 @@ public class CommentDeleteService {
     }
 
     // Удаляем комментарии если на них нет ответа
-    List<Integer> commentIds = commentDao.getCommentsByIPAddressForUpdate(ip, timeDelta);
+    List<Integer> commentIds = commentDao.getUndeletedByIPAddress(ip, timeDelta);
 
-    List<Integer> deletedCommentIds = new ArrayList<>();
+    List<Integer> deletedCommentIds = massDeleteComments(commentIds, reason, moderator);
 
     for (int msgid : commentIds) {
-      if (commentDao.getReplaysCount(msgid) == 0) {
-        if (doDeleteComment(msgid, reason, moderator)) {
-          deletedCommentIds.add(msgid);
-          deleteInfo.put(msgid, "Комментарий " + msgid + " удален");
-        } else {
-          deleteInfo.put(msgid, "Комментарий " + msgid + " уже был удален");
-        }
-      } else {
-        deleteInfo.put(msgid, "Комментарий " + msgid + " пропущен");
-      }
+      deleteInfo.put(msgid, "Комментарий " + msgid + " пропущен: есть ответы");
     }
 
     for (int msgid : deletedCommentIds) {
-      commentDao.updateStatsAfterDelete(msgid, 1);
+      deleteInfo.put(msgid, "Комментарий " + msgid + " удален");
     }
 
-    userEventService.processCommentsDeleted(deletedCommentIds);
-
     return new DeleteCommentResult(deletedTopics, deletedCommentIds, deleteInfo);
   }
 
   /**
-   * Блокировка и массивное удаление всех топиков и комментариев пользователя со всеми ответами на комментарии
+   * Блокировка и массивное удаление всех топиков и комментариев пользователя со всеми ответами на комментарии.
+   * Блокировка и удаление топиков выполняются в одной транзакции, комментарии удаляются пачками (см. massDeleteComments).
+   * Уже заблокированный пользователь повторно не блокируется, удаляются оставшиеся сообщения:
+   * так можно продолжить удаление, прерванное ошибкой в одной из пачек.
    *
    * @param user      пользователь для экзекуции
    * @param moderator экзекутор-модератор
    * @param reason    прична блокировки
    * @return список удаленных комментариев
    */
-  @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
   public DeleteCommentResult deleteAllCommentsAndBlock(User user, final User moderator, String reason) {
-    userDao.block(user, moderator, reason);
+    List<Integer> deletedTopicIds = new TransactionTemplate(transactionManager).execute(status -> {
+      if (!user.isBlocked()) {
+        userDao.block(user, moderator, reason);
+      }
 
-    List<Integer> deletedTopicIds = topicService.deleteAllByUser(user, moderator);
+      return topicService.deleteAllByUser(user, moderator);
+    });
 
-    List<Integer> deletedCommentIds = deleteAllCommentsByUser(user, moderator);
+    List<Integer> deletedCommentIds = massDeleteComments(commentDao.getUndeletedByUser(user), BLOCK_REASON, moderator);
 
     return new DeleteCommentResult(deletedTopicIds, deletedCommentIds, null);
   }
 
   /**
-     * Массовое удаление комментариев пользователя со всеми ответами на комментарии.
-     *
-     * @param user      пользователь для экзекуции
-     * @param moderator экзекутор-модератор
-     * @return список удаленных комментариев
-     */
-  private List<Integer> deleteAllCommentsByUser(User user, final User moderator) {
-    final List<Integer> deletedCommentIds = new ArrayList<>();
+   * Массовое удаление комментариев, на которые нет ответов.
+   *
+   * Комментарии удаляются пачками, каждая в отдельной транзакции, чтобы блокировки
+   * комментариев и топиков держались недолго и не мешали писать на сайт.
+   * Список должен быть упорядочен от новых к старым: тогда ответы удаляются раньше
+   * комментариев, на которые они отвечают.
+   *
+   * @param commentIds id комментариев от новых к старым
+   * @param reason     причина удаления
+   * @param moderator  экзекутор-модератор
+   * @return список удаленных комментариев
+   */
+  private List<Integer> massDeleteComments(List<Integer> commentIds, String reason, User moderator) {
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
 
-    // Удаляем все комментарии
-    List<Integer> commentIds = commentDao.getAllByUserForUpdate(user);
+    List<Integer> deleted = new ArrayList<>();
+    int processed = 0;
 
-    for (int msgid : commentIds) {
-      if (commentDao.getReplaysCount(msgid) == 0) {
-        doDeleteComment(msgid, "Блокировка пользователя с удалением сообщений", moderator);
-        commentDao.updateStatsAfterDelete(msgid, 1);
-        deletedCommentIds.add(msgid);
+    for (List<Integer> chunk : Lists.partition(commentIds, MASS_DELETE_CHUNK)) {
+      deleted.addAll(transaction.execute(status -> deleteCommentsChunk(chunk, reason, moderator)));
+      processed += chunk.size();
+
+      logger.info("Массовое удаление ({}): проверено {} из {} комментариев, удалено {}",
+              moderator.getNick(), processed, commentIds.size(), deleted.size());
+    }
+
+    return deleted;
+  }
+
+  private List<Integer> deleteCommentsChunk(List<Integer> chunk, String reason, User moderator) {
+    List<Integer> deleted = new ArrayList<>();
+    Set<Integer> remaining = new HashSet<>(chunk);
+
+    // каждый проход удаляет ответы, открывая для удаления комментарии, на которые они отвечали
+    while (!remaining.isEmpty()) {
+      List<Integer> pass = commentDao.deleteCommentsWithoutReplies(remaining);
+
+      if (pass.isEmpty()) {
+        break;
       }
+
+      deleted.addAll(pass);
+      remaining.removeAll(pass);
     }
 
-    userEventService.processCommentsDeleted(deletedCommentIds);
+    if (!deleted.isEmpty()) {
+      List<DeleteInfoDao.InsertDeleteInfo> deleteInfos = new ArrayList<>(deleted.size());
+
+      for (int msgid : deleted) {
+        deleteInfos.add(new DeleteInfoDao.InsertDeleteInfo(msgid, reason, 0, moderator.getId()));
+      }
 
-    return deletedCommentIds;
+      deleteInfoDao.insert(deleteInfos);
+      commentDao.updateStatsAfterDelete(deleted);
+      userEventService.processCommentsDeleted(deleted);
+    }
+
+    return deleted;
   }
 
   private static List<CommentAndDepth> getAllReplys(CommentNode node, int depth) {
@@ -357,5 +406,6 @@ public class CommentDeleteService {
     commentDao.undeleteComment(comment);
     deleteInfoDao.delete(comment.getId());
     topicDao.updateLastmod(comment.getTopicId(), false);
+    trackerIndex.topicChanged(comment.getTopicId());
   }
 }
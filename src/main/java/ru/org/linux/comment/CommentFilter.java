@@ -20,7 +20,6 @@ import ru.org.linux.site.MessageNotFoundException;
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Set;
 
 public class CommentFilter {
@@ -34,31 +33,54 @@ public class CommentFilter {
     this.comments = comments;
   }
 
+  /**
+   * Выбрать страницу комментариев по смещению, без обхода всего списка.
+   * В обратном порядке номер комментария считается с конца списка (size - позиция).
+   */
   private static List<Comment> getCommentList(
           @Nonnull List<Comment> comments,
           boolean reverse,
           int offset,
           int limit,
           @Nonnull Set<Integer> hideSet) {
-    List<Comment> out = new ArrayList<>();
+    int size = comments.size();
 
-    for (ListIterator<Comment> i = comments.listIterator(reverse?comments.size():0); reverse?i.hasPrevious():i.hasNext();) {
-      int index = reverse?(comments.size()-i.previousIndex()):i.nextIndex();
+    int from;
+    int to;
 
-      Comment comment = reverse?i.previous():i.next();
+    if (reverse) {
+      from = limit != 0 ? Math.max(0, size - offset - limit + 1) : 0;
+      to = Math.min(size, size - offset + 1);
+    } else {
+      from = Math.min(size, offset);
+      to = limit != 0 ? Math.min(size, offset + limit) : size;
+    }
 
-      if (index<offset || (limit!=0 && index>=offset+limit)) {
-        continue;
-      }
+    if (from >= to) {
+      return new ArrayList<>();
+    }
+
+    List<Comment> out = new ArrayList<>(to - from);
 
-      if (!hideSet.contains(comment.getId())) {
-        out.add(comment);
+    if (reverse) {
+      for (int i = to - 1; i >= from; i--) {
+        addVisible(out, comments.get(i), hideSet);
+      }
+    } else {
+      for (int i = from; i < to; i++) {
+        addVisible(out, comments.get(i), hideSet);
       }
     }
 
     return out;
   }
 
+  private static void addVisible(List<Comment> out, Comment comment, Set<Integer> hideSet) {
+    if (!hideSet.contains(comment.getId())) {
+      out.add(comment);
+    }
+  }
+
   public List<Comment> getCommentsForPage(boolean reverse, int page, int messagesPerPage, @Nonnull Set<Integer> hideSet) {
     int offset = 0;
     int limit = 0;
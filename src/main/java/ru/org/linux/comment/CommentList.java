@@ -21,6 +21,7 @@ import ru.org.linux.user.Profile;
 
 import javax.annotation.Nonnull;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +31,12 @@ public class CommentList implements Serializable {
   private final CommentNode root;
   private final ImmutableMap<Integer, CommentNode> nodeIndex;
 
+  /**
+   * id комментариев, отсортированные по возрастанию, и их позиции в списке comments
+   */
+  private final int[] sortedIds;
+  private final int[] positions;
+
   private final long lastmod;
 
   public CommentList(List<Comment> comments, long lastmod) {
@@ -66,6 +73,22 @@ public class CommentList implements Serializable {
     buildIndex(builder, root);
 
     nodeIndex = builder.build();
+
+    long[] packed = new long[this.comments.size()];
+
+    for (int i = 0; i < packed.length; i++) {
+      packed[i] = ((long) this.comments.get(i).getId() << 32) | i;
+    }
+
+    Arrays.sort(packed);
+
+    sortedIds = new int[packed.length];
+    positions = new int[packed.length];
+
+    for (int i = 0; i < packed.length; i++) {
+      sortedIds[i] = (int) (packed[i] >> 32);
+      positions[i] = (int) packed[i];
+    }
   }
 
   private static void buildIndex(ImmutableMap.Builder<Integer, CommentNode> builder, CommentNode root) {
@@ -91,8 +114,20 @@ public class CommentList implements Serializable {
     return nodeIndex.get(msgid);
   }
 
+  /**
+   * Позиция комментария в списке
+   *
+   * @param msgid id комментария
+   * @return позиция комментария или -1 если его нет в списке
+   */
+  public int indexOf(int msgid) {
+    int i = Arrays.binarySearch(sortedIds, msgid);
+
+    return i >= 0 ? positions[i] : -1;
+  }
+
   private int getCommentPage(@Nonnull Comment comment, int messages) {
-    int index = comments.indexOf(comment);
+    int index = indexOf(comment.getId());
 
     return index / messages;
   }
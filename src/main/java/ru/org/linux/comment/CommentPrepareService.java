@@ -30,12 +30,15 @@ import ru.org.linux.spring.dao.UserAgentDao;
 import ru.org.linux.topic.Topic;
 import ru.org.linux.topic.TopicPermissionService;
 import ru.org.linux.user.*;
+import ru.org.linux.util.formatter.MessageLinks;
+import ru.org.linux.util.formatter.ToHtmlFormatter;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class CommentPrepareService {
@@ -63,13 +66,26 @@ public class CommentPrepareService {
   @Autowired
   private RemarkDao remarkDao;
 
+  @Autowired
+  private RenderedCommentCache renderedCommentCache;
+
+  @Autowired
+  private ToHtmlFormatter toHtmlFormatter;
+
   private PreparedComment prepareComment(
           @Nonnull Comment comment
   ) throws UserNotFoundException {
     MessageText messageText = msgbaseDao.getMessageText(comment.getId());
     User author = userDao.getUserCached(comment.getUserid());
 
-    return prepareComment(messageText, author, null, comment, null, null, null);
+    DeleteInfo deleteInfo = null;
+
+    if (comment.isDeleted()) {
+      deleteInfo = deleteInfoDao.getDeleteInfo(comment.getId());
+    }
+
+    return prepareComment(messageText, author, null, comment, null, null, null, toHtmlFormatter.newMessageLinks(),
+            deleteInfo, null);
   }
 
   private PreparedComment prepareComment(
@@ -79,9 +95,17 @@ public class CommentPrepareService {
           @Nonnull Comment comment,
           CommentList comments,
           Template tmpl,
-          Topic topic
+          Topic topic,
+          @Nonnull MessageLinks links,
+          @Nullable DeleteInfo info,
+          @Nullable String userAgent
   ) throws UserNotFoundException {
-    String processedMessage = textService.renderCommentText(messageText, !topicPermissionService.followAuthorLinks(author));
+    String processedMessage = renderedCommentCache.renderCommentText(
+            comment.getId(),
+            messageText,
+            !topicPermissionService.followAuthorLinks(author),
+            links
+    );
 
     ReplyInfo replyInfo = null;
     boolean deletable = false;
@@ -149,26 +173,18 @@ public class CommentPrepareService {
 
     ApiUserRef ref = userService.ref(author, tmpl!=null?tmpl.getCurrentUser():null);
 
-    ApiDeleteInfo deleteInfo = loadDeleteInfo(comment);
+    ApiDeleteInfo deleteInfo = loadDeleteInfo(info);
 
     EditSummary editSummary = loadEditSummary(comment);
 
     String postIP = null;
-    String userAgent = null;
 
     if (tmpl!=null && tmpl.isModeratorSession()) {
       postIP = comment.getPostIP();
-      userAgent = userAgentDao.getUserAgentById(comment.getUserAgentId());
     }
 
     boolean undeletable = false;
     if (tmpl!=null) {
-      DeleteInfo info = null;
-
-      if (comment.isDeleted()) {
-        info = deleteInfoDao.getDeleteInfo(comment.getId());
-      }
-
       undeletable = topicPermissionService.isUndeletable(topic, comment, tmpl.getCurrentUser(), info);
     }
 
@@ -177,18 +193,14 @@ public class CommentPrepareService {
             postIP, userAgent, undeletable);
   }
 
-  private ApiDeleteInfo loadDeleteInfo(Comment comment) throws UserNotFoundException {
+  private ApiDeleteInfo loadDeleteInfo(@Nullable DeleteInfo info) throws UserNotFoundException {
     ApiDeleteInfo deleteInfo = null;
 
-    if (comment.isDeleted()) {
-      DeleteInfo info = deleteInfoDao.getDeleteInfo(comment.getId());
-
-      if (info!=null) {
-        deleteInfo = new ApiDeleteInfo(
-                userDao.getUserCached(info.getUserid()).getNick(),
-                info.getReason()
-        );
-      }
+    if (info!=null) {
+      deleteInfo = new ApiDeleteInfo(
+              userDao.getUserCached(info.getUserid()).getNick(),
+              info.getReason()
+      );
     }
 
     return deleteInfo;
@@ -210,11 +222,12 @@ public class CommentPrepareService {
 
   private PreparedRSSComment prepareRSSComment(
           @Nonnull MessageText messageText,
-          @Nonnull Comment comment
+          @Nonnull Comment comment,
+          @Nonnull MessageLinks links
   ) throws UserNotFoundException {
     User author = userDao.getUserCached(comment.getUserid());
 
-    String processedMessage = textService.renderTextRSS(messageText);
+    String processedMessage = renderedCommentCache.renderTextRSS(comment.getId(), messageText, links);
 
     return new PreparedRSSComment(comment, author, processedMessage);
   }
@@ -256,22 +269,24 @@ public class CommentPrepareService {
           @Nonnull List<Comment> list
   ) throws UserNotFoundException {
     List<PreparedRSSComment> commentsPrepared = new ArrayList<>(list.size());
-    for (Comment comment : list) {
-      MessageText messageText = msgbaseDao.getMessageText(comment.getId());
 
-      commentsPrepared.add(prepareRSSComment(messageText, comment));
+    if (list.isEmpty()) {
+      return commentsPrepared;
     }
-    return commentsPrepared;
-  }
 
-  private Map<Integer, User> loadUsers(Iterable<Integer> userIds) {
-    ImmutableMap.Builder<Integer, User> builder = ImmutableMap.builder();
+    Map<Integer, MessageText> texts = msgbaseDao.getMessageText(Lists.transform(list, Comment::getId));
+
+    MessageLinks links = toHtmlFormatter.newMessageLinks();
+    links.addTexts(Iterables.transform(texts.values(), MessageText::text));
 
-    for (User user : userService.getUsersCached(ImmutableSet.copyOf(userIds))) {
-      builder.put(user.getId(), user);
+    for (Comment comment : list) {
+      commentsPrepared.add(prepareRSSComment(texts.get(comment.getId()), comment, links));
     }
+    return commentsPrepared;
+  }
 
-    return builder.build();
+  private Map<Integer, User> loadUsers(Iterable<Integer> userIds) {
+    return userService.getUsersCachedMap(userIds);
   }
 
   public List<PreparedComment> prepareCommentList(
@@ -287,6 +302,10 @@ public class CommentPrepareService {
 
     Map<Integer, MessageText> texts = msgbaseDao.getMessageText(Lists.transform(list, Comment::getId));
 
+    // ссылки из всех комментариев страницы загружаются вместе, если они есть в текстах
+    MessageLinks links = toHtmlFormatter.newMessageLinks();
+    links.addTexts(Iterables.transform(texts.values(), MessageText::text));
+
     Map<Integer, User> users = loadUsers(Iterables.transform(list, Comment::getUserid));
     User currentUser = tmpl.getCurrentUser();
 
@@ -298,6 +317,17 @@ public class CommentPrepareService {
       remarks = ImmutableMap.of();
     }
 
+    List<Integer> deletedIds = list.stream().filter(Comment::isDeleted).map(Comment::getId).collect(Collectors.toList());
+    Map<Integer, DeleteInfo> deleteInfos = deleteInfoDao.getDeleteInfo(deletedIds);
+
+    Map<Integer, String> userAgents;
+
+    if (tmpl.isModeratorSession()) {
+      userAgents = userAgentDao.getUserAgentsByIds(Lists.transform(list, Comment::getUserAgentId));
+    } else {
+      userAgents = ImmutableMap.of();
+    }
+
     List<PreparedComment> commentsPrepared = new ArrayList<>(list.size());
     for (Comment comment : list) {
       MessageText text = texts.get(comment.getId());
@@ -312,7 +342,8 @@ public class CommentPrepareService {
         remarkText = remark.getText();
       }
 
-      commentsPrepared.add(prepareComment(text, author, remarkText, comment, comments, tmpl, topic));
+      commentsPrepared.add(prepareComment(text, author, remarkText, comment, comments, tmpl, topic, links,
+              deleteInfos.get(comment.getId()), userAgents.get(comment.getUserAgentId())));
     }
 
     return commentsPrepared;
@@ -98,6 +98,9 @@ public class CommentService {
   @Autowired
   private TopicPermissionService permissionService;
 
+  @Autowired
+  private RenderedCommentCache renderedCommentCache;
+
   private final Cache<Integer, CommentList> cache =
           CacheBuilder.newBuilder()
           .maximumSize(10000)
@@ -319,6 +322,9 @@ public class CommentService {
     int commentId = commentDao.saveNewMessage(comment, userAgent);
     msgbaseDao.saveNewMessage(commentBody, commentId);
 
+    /* уведомления отслеживающим топик добавлены триггером */
+    userEventService.watchEventsAdded(commentId);
+
     /* кастование пользователей */
     if (permissionService.isUserCastAllowed(author)) {
       Set<User> userRefs = textService.mentions(commentBody);
@@ -376,6 +382,7 @@ public class CommentService {
   ) {
     commentDao.changeTitle(oldComment, newComment.getTitle());
     msgbaseDao.updateMessage(oldComment.getId(), commentBody);
+    renderedCommentCache.invalidate(oldComment.getId());
 
     /* кастование пользователей */
     Set<User> newUserRefs = textService.mentions(MessageText.apply(commentBody, originalMessageText.markup()));
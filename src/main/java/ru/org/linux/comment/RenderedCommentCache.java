@@ -0,0 +1,240 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.comment;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.org.linux.markup.MessageTextService;
+import ru.org.linux.spring.dao.MessageText;
+import ru.org.linux.util.formatter.MessageLinks;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Кеш html представления текста комментариев.
+ *
+ * Текст комментария в msgbase меняется только при редактировании, поэтому
+ * результат рендеринга можно переиспользовать между показами страницы.
+ * Вместе с html хранится отпечаток исходного текста и разметки: html, нарисованный
+ * по тексту, прочитанному до правки, не совпадет с текстом после нее.
+ * Также хранится отпечаток ссылок текста ({@link MessageLinks#linkState}):
+ * если топик или комментарий, на который ссылается текст, удален, восстановлен,
+ * перенесен или переименован, html рисуется заново.
+ * Размер кеша ограничен суммарной длинной html, а не числом записей.
+ */
+@Component
+@ManagedResource(objectName = "ru.org.linux:type=RenderedCommentCache")
+public class RenderedCommentCache {
+  /**
+   * Максимальный суммарный размер html в кеше (в символах)
+   */
+  private static final long MAX_WEIGHT = 64 * 1024 * 1024;
+
+  /**
+   * Время жизни записи; ограничивает устаревание упоминаний пользователей внутри html
+   */
+  private static final int EXPIRE_HOURS = 6;
+
+  private final Cache<Key, Rendered> cache =
+          CacheBuilder.newBuilder()
+                  .maximumWeight(MAX_WEIGHT)
+                  .weigher((Key key, Rendered rendered) -> rendered.html.length())
+                  .expireAfterWrite(EXPIRE_HOURS, TimeUnit.HOURS)
+                  .recordStats()
+                  .build();
+
+  // статистика Guava считает попаданием и запись с устаревшим отпечатком
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  @Autowired
+  private MessageTextService textService;
+
+  /**
+   * Получить html представление текста комментария
+   *
+   * @param msgid id комментария
+   * @param text текст комментария
+   * @param nofollow добавлять rel=nofollow к ссылкам
+   * @param links ссылки на топики и комментарии страницы
+   * @return строку html комментария
+   */
+  public String renderCommentText(int msgid, @Nonnull MessageText text, boolean nofollow, @Nonnull MessageLinks links) {
+    return get(new Key(msgid, nofollow, false), text, links,
+            () -> textService.renderCommentText(text, nofollow, links));
+  }
+
+  /**
+   * Получить RSS представление текста комментария
+   *
+   * @param msgid id комментария
+   * @param text текст комментария
+   * @param links ссылки на топики и комментарии ленты
+   * @return строку html комментария
+   */
+  public String renderTextRSS(int msgid, @Nonnull MessageText text, @Nonnull MessageLinks links) {
+    return get(new Key(msgid, false, true), text, links, () -> textService.renderTextRSS(text));
+  }
+
+  private String get(Key key, MessageText text, MessageLinks links, Supplier<String> render) {
+    long source = sourceFingerprint(text);
+    long linkState = links.linkState(text.text());
+
+    Rendered cached = cache.getIfPresent(key);
+
+    if (cached != null && cached.source == source && cached.linkState == linkState) {
+      hits.increment();
+      return cached.html;
+    }
+
+    misses.increment();
+
+    String html = render.get();
+
+    cache.put(key, new Rendered(source, linkState, html));
+
+    return html;
+  }
+
+  private static long sourceFingerprint(MessageText text) {
+    return Hashing.murmur3_128().newHasher()
+            .putString(text.markup().id(), StandardCharsets.UTF_8)
+            .putString(text.text(), StandardCharsets.UTF_8)
+            .hash()
+            .asLong();
+  }
+
+  /**
+   * Удалить из кеша все варианты представления комментария.
+   * Если вызвано внутри транзакции, то удаление повторяется после её фиксации,
+   * чтобы параллельный показ страницы не вернул в кеш старый текст.
+   *
+   * @param msgid id комментария
+   */
+  public void invalidate(int msgid) {
+    evict(msgid);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          evict(msgid);
+        }
+      });
+    }
+  }
+
+  private void evict(int msgid) {
+    cache.invalidateAll(ImmutableList.of(
+            new Key(msgid, false, false),
+            new Key(msgid, true, false),
+            new Key(msgid, false, true)
+    ));
+  }
+
+  @ManagedOperation
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @ManagedAttribute
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  @ManagedAttribute
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  @ManagedAttribute
+  public long getEvictionCount() {
+    return cache.stats().evictionCount();
+  }
+
+  @ManagedAttribute
+  public double getHitRate() {
+    long hitCount = hits.sum();
+    long total = hitCount + misses.sum();
+
+    return total == 0 ? 1.0 : (double) hitCount / total;
+  }
+
+  @ManagedAttribute
+  public long getSize() {
+    return cache.size();
+  }
+
+  private static final class Rendered {
+    private final long source;
+    private final long linkState;
+    private final String html;
+
+    private Rendered(long source, long linkState, String html) {
+      this.source = source;
+      this.linkState = linkState;
+      this.html = html;
+    }
+  }
+
+  private static final class Key {
+    private final int msgid;
+    private final boolean nofollow;
+    private final boolean rss;
+
+    private Key(int msgid, boolean nofollow, boolean rss) {
+      this.msgid = msgid;
+      this.nofollow = nofollow;
+      this.rss = rss;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+
+      Key key = (Key) o;
+
+      return msgid == key.msgid &&
+              nofollow == key.nofollow &&
+              rss == key.rss;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(msgid, nofollow, rss);
+    }
+  }
+}
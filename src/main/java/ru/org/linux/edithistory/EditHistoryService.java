@@ -20,6 +20,7 @@ import com.google.common.collect.Iterables;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.org.linux.comment.Comment;
+import ru.org.linux.comment.RenderedCommentCache;
 import ru.org.linux.gallery.Image;
 import ru.org.linux.gallery.ImageDao;
 import ru.org.linux.gallery.ImageService;
@@ -69,6 +70,9 @@ public class EditHistoryService {
   @Autowired
   private ImageService imageService;
 
+  @Autowired
+  private RenderedCommentCache renderedCommentCache;
+
   /**
    * Получить историю изменений топика
    */
@@ -239,6 +243,10 @@ public class EditHistoryService {
 
   public void insert(EditHistoryRecord editHistoryRecord) {
     editHistoryDao.insert(editHistoryRecord);
+
+    if (editHistoryRecord.getObjectType() == EditHistoryObjectTypeEnum.COMMENT) {
+      renderedCommentCache.invalidate(editHistoryRecord.getMsgid());
+    }
   }
 
   public ImmutableSet<User> getEditorUsers(final Topic message, List<EditHistoryRecord> editInfoList) {
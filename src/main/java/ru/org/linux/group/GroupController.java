@@ -33,6 +33,7 @@ import ru.org.linux.topic.ArchiveDao;
 import ru.org.linux.util.BadImageException;
 import ru.org.linux.util.ServletParameterBadValueException;
 import ru.org.linux.util.image.ImageInfo;
+import ru.org.linux.util.image.ImageInfoCache;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -63,6 +64,9 @@ public class GroupController {
   @Autowired
   private GroupListDao groupListDao;
 
+  @Autowired
+  private ImageInfoCache imageInfoCache;
+
   @RequestMapping("/group.jsp")
   public ModelAndView topics(
           @RequestParam("group") int groupId,
@@ -176,7 +180,7 @@ public class GroupController {
     if(group.getImage() != null) {
       try {
         params.put("groupImagePath", '/' + "tango" + group.getImage());
-        ImageInfo info = new ImageInfo(siteConfig.getHTMLPathPrefix() + "tango" + group.getImage());
+        ImageInfo info = imageInfoCache.getInfo(siteConfig.getHTMLPathPrefix() + "tango" + group.getImage());
         params.put("groupImageInfo", info);
       } catch (BadImageException ex) {
         params.put("groupImagePath", null);
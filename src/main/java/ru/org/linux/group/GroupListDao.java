@@ -15,7 +15,9 @@
 
 package ru.org.linux.group;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -24,12 +26,15 @@ import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Repository;
 import ru.org.linux.group.Group;
 import ru.org.linux.group.TopicsListItem;
+import ru.org.linux.section.Section;
 import ru.org.linux.topic.Topic;
 import ru.org.linux.topic.TopicTagService;
 import ru.org.linux.tracker.TrackerFilterEnum;
+import ru.org.linux.tracker.TrackerIndex;
+import ru.org.linux.tracker.TrackerTopic;
 import ru.org.linux.user.User;
 import ru.org.linux.user.UserDao;
-import ru.org.linux.user.UserNotFoundException;
+import ru.org.linux.user.UserService;
 import ru.org.linux.util.StringUtil;
 
 import javax.annotation.Nullable;
@@ -38,6 +43,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.function.Predicate;
 
 @Repository
 public class GroupListDao {
@@ -51,9 +57,15 @@ public class GroupListDao {
   @Autowired
   private UserDao userDao;
 
+  @Autowired
+  private UserService userService;
+
   @Autowired
   private TopicTagService topicTagService;
 
+  @Autowired
+  private TrackerIndex trackerIndex;
+
   private static final String queryTrackerMain =
       "SELECT * FROM (SELECT DISTINCT ON(id) * FROM (SELECT " +
         "t.userid as author, " +
@@ -112,14 +124,30 @@ public class GroupListDao {
     + "where tags.tagid=user_tags.tag_id and user_tags.is_favorite = false and user_id=:userid " +
           "except select tags.msgid from tags, user_tags where " +
           "tags.tagid=user_tags.tag_id and user_tags.is_favorite = true and user_id=:userid) ";
-  private static final String queryPartNoTalks = " AND not t.groupid in (8404, 19390) ";
-  private static final String queryPartTech = " AND not t.groupid in (8404, 4068, 19392, 19390, 9326, 19405) AND section=2 ";
-  private static final String queryPartMain = " AND not t.groupid in (8404, 4068, 19392, 19390, 19405) ";
+
+  /* группы, исключаемые фильтрами трекера; из них строятся и условия SQL, и фильтры индекса трекера */
+  private static final ImmutableSet<Integer> groupsTalks = ImmutableSet.of(8404, 19390);
+  private static final ImmutableSet<Integer> groupsNotTech = ImmutableSet.of(8404, 4068, 19392, 19390, 9326, 19405);
+  private static final ImmutableSet<Integer> groupsNotMain = ImmutableSet.of(8404, 4068, 19392, 19390, 19405);
+
+  private static final String queryPartNoTalks = notInGroups(groupsTalks);
+  private static final String queryPartTech = notInGroups(groupsNotTech) + "AND section=" + Section.SECTION_FORUM + " ";
+  private static final String queryPartMain = notInGroups(groupsNotMain);
 
   private static final String noUncommited = " AND (t.moderate or NOT sections.moderate) ";
 
+  private static String notInGroups(Set<Integer> groups) {
+    return " AND not t.groupid in (" + Joiner.on(", ").join(groups) + ") ";
+  }
+
   public List<TopicsListItem> getGroupTrackerTopics(int groupid, User currentUser, Date startDate,
                                                     int topics, int offset, final int messagesInPage) {
+    List<TopicsListItem> indexed = trackerIndex.getTrackerTopics(
+            topic -> topic.getGroupId() == groupid, currentUser, startDate, topics, offset, messagesInPage);
+
+    if (indexed != null) {
+      return indexed;
+    }
 
     return load(" AND t.groupid = " + groupid + " ", currentUser, startDate, topics, offset, messagesInPage);
   }
@@ -127,21 +155,35 @@ public class GroupListDao {
   public List<TopicsListItem> getTrackerTopics(TrackerFilterEnum filter, User currentUser, Date startDate,
                                                int topics, int offset, final int messagesInPage) {
     String partFilter;
+    Predicate<TrackerTopic> indexFilter;
+
     switch (filter) {
       case ALL:
         partFilter = "";
+        indexFilter = topic -> true;
         break;
       case NOTALKS:
         partFilter = queryPartNoTalks;
+        indexFilter = topic -> !groupsTalks.contains(topic.getGroupId());
         break;
       case MAIN:
         partFilter = queryPartMain;
+        indexFilter = topic -> !groupsNotMain.contains(topic.getGroupId());
         break;
       case TECH:
         partFilter = queryPartTech;
+        indexFilter = topic -> !groupsNotTech.contains(topic.getGroupId()) && topic.getSection() == Section.SECTION_FORUM;
         break;
       default:
         partFilter = "";
+        indexFilter = topic -> true;
+    }
+
+    List<TopicsListItem> indexed =
+            trackerIndex.getTrackerTopics(indexFilter, currentUser, startDate, topics, offset, messagesInPage);
+
+    if (indexed != null) {
+      return indexed;
     }
 
     return load(partFilter, currentUser, startDate, topics, offset, messagesInPage);
@@ -181,10 +223,26 @@ public class GroupListDao {
 
     SqlRowSet resultSet = jdbcTemplate.queryForRowSet(query, parameter);
 
+    Set<Integer> userIds = new HashSet<>();
+
+    while (resultSet.next()) {
+      userIds.add(resultSet.getInt("author"));
+
+      int lastCommentBy = resultSet.getInt("last_comment_by");
+
+      if (lastCommentBy != 0) {
+        userIds.add(lastCommentBy);
+      }
+    }
+
+    Map<Integer, User> users = userService.getUsersCachedMap(userIds);
+
+    resultSet.beforeFirst();
+
     List<TopicsListItem> res = new ArrayList<>(topics);
     
     while (resultSet.next()) {
-      User author = userDao.getUserCached(resultSet.getInt("author"));
+      User author = users.get(resultSet.getInt("author"));
       int msgid = resultSet.getInt("id");
       Timestamp lastmod = resultSet.getTimestamp("lastmod");
       int stat1 = resultSet.getInt("stat1");
@@ -192,18 +250,7 @@ public class GroupListDao {
       String groupTitle = resultSet.getString("gtitle");
       String title = StringUtil.makeTitle(resultSet.getString("title"));
       int cid = resultSet.getInt("cid");
-      User lastCommentBy;
-      try {
-        int id = resultSet.getInt("last_comment_by");
-
-        if (id != 0) {
-          lastCommentBy = userDao.getUserCached(id);
-        } else {
-          lastCommentBy = null;
-        }
-      } catch (UserNotFoundException e) {
-        throw new RuntimeException(e);
-      }
+      User lastCommentBy = users.get(resultSet.getInt("last_comment_by"));
       boolean resolved = resultSet.getBoolean("resolved");
       int section = resultSet.getInt("section");
       String groupUrlName = resultSet.getString("urlname");
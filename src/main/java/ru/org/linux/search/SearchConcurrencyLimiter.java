@@ -0,0 +1,89 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.search;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Ограничение числа одновременных запросов к Elasticsearch из веб-поиска.
+ *
+ * Запросы выполняются асинхронно и не держат потоки сервлет-контейнера, поэтому
+ * без ограничения всплеск поиска превращается в очередь внутри http клиента.
+ * Если все слоты заняты, запрос сразу отклоняется с {@link SearchOverloadedException}.
+ */
+@Component
+@ManagedResource(objectName = "ru.org.linux:type=SearchConcurrencyLimiter")
+public class SearchConcurrencyLimiter {
+  private static final int MAX_IN_FLIGHT = 16;
+
+  private final Semaphore permits = new Semaphore(MAX_IN_FLIGHT);
+
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * Выполнить асинхронный запрос, если есть свободный слот
+   *
+   * @param request запуск запроса
+   * @throws SearchOverloadedException если все слоты заняты
+   */
+  public <T> CompletionStage<T> execute(Supplier<CompletionStage<T>> request) {
+    if (!permits.tryAcquire()) {
+      rejected.incrementAndGet();
+      throw new SearchOverloadedException();
+    }
+
+    started.incrementAndGet();
+
+    CompletionStage<T> result;
+
+    try {
+      result = request.get();
+    } catch (RuntimeException ex) {
+      permits.release();
+      throw ex;
+    }
+
+    return result.whenComplete((r, ex) -> permits.release());
+  }
+
+  @ManagedAttribute(description = "Search requests waiting for Elasticsearch")
+  public int getInFlight() {
+    return MAX_IN_FLIGHT - permits.availablePermits();
+  }
+
+  @ManagedAttribute
+  public int getMaxInFlight() {
+    return MAX_IN_FLIGHT;
+  }
+
+  @ManagedAttribute
+  public long getStartedCount() {
+    return started.get();
+  }
+
+  @ManagedAttribute
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+}
@@ -25,14 +25,17 @@ import com.sksamuel.elastic4s.http.search.SearchResponse;
 import com.sksamuel.elastic4s.http.search.TermBucket;
 import com.sksamuel.elastic4s.http.search.TermsAggResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.servlet.ModelAndView;
 import ru.org.linux.group.Group;
 import ru.org.linux.group.GroupDao;
 import ru.org.linux.search.SearchEnums.SearchInterval;
@@ -50,8 +53,12 @@ import scala.Tuple2;
 import java.beans.PropertyEditorSupport;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 public class SearchController {
@@ -70,6 +77,15 @@ public class SearchController {
   @Autowired
   private SearchResultsService resultsService;
 
+  @Autowired
+  private SearchConcurrencyLimiter limiter;
+
+  @Autowired
+  private SearchResultCache resultCache;
+
+  @Autowired
+  private ElasticsearchIndexService indexService;
+
   @ModelAttribute("sorts")
   public static Map<String, String> getSorts() {
     Builder<String, String> builder = ImmutableMap.builder(); // preserves order!
@@ -104,73 +120,107 @@ public class SearchController {
   }
 
   @RequestMapping(value = "/search.jsp", method = {RequestMethod.GET, RequestMethod.HEAD})
-  public String search(
-          Model model,
+  public CompletionStage<ModelAndView> search(
           @ModelAttribute("query") SearchRequest query,
           BindingResult bindingResult
   ) {
-    Map<String, Object> params = model.asMap();
+    if (query.isInitial() || bindingResult.hasErrors()) {
+      return CompletableFuture.completedFuture(new ModelAndView("search"));
+    }
+
+    sanitizeQuery(query);
+
+    String cacheKey = query.getQuery(query.getOffset());
+    long generation = indexService.indexGeneration();
+
+    SearchResultCache.Page cached = resultCache.get(cacheKey, generation);
+
+    if (cached != null) {
+      query.setSection(cached.getSection());
+
+      return CompletableFuture.completedFuture(new ModelAndView("search", cached.getParams()));
+    }
+
+    SearchViewer sv = new SearchViewer(query, client);
 
-    if (!query.isInitial() && !bindingResult.hasErrors()) {
-      sanitizeQuery(query);
+    return limiter.execute(sv::performSearchJava)
+            .toCompletableFuture()
+            .orTimeout(SearchViewer.SearchHardTimeout().toMillis(), TimeUnit.MILLISECONDS)
+            .thenApply(response -> {
+              Map<String, Object> params = prepareResult(query, response);
 
-      SearchViewer sv = new SearchViewer(query, client);
+              resultCache.put(cacheKey, generation, query.getSection(), params);
 
-      SearchResponse response = sv.performSearch();
+              return new ModelAndView("search", params);
+            });
+  }
 
-      long current = System.currentTimeMillis();
+  private Map<String, Object> prepareResult(SearchRequest query, SearchResponse response) {
+    Map<String, Object> params = new HashMap<>();
 
-      Collection<SearchItem> res = resultsService.prepareAll(Arrays.asList(response.hits().hits()));
+    long current = System.currentTimeMillis();
 
-      if (response.aggregations() != null) {
-        FilterAggregationResult countFacet = response.aggregations().filter("sections");
-        TermsAggResult sectionsFacet = countFacet.terms("sections");
+    Collection<SearchItem> res = resultsService.prepareAll(Arrays.asList(response.hits().hits()));
 
-        if (sectionsFacet.getBuckets().size()>1 || !Strings.isNullOrEmpty(query.getSection())) {
-          params.put("sectionFacet", resultsService.buildSectionFacet(countFacet, Option.apply(Strings.emptyToNull(query.getSection()))));
+    if (response.aggregations() != null) {
+      FilterAggregationResult countFacet = response.aggregations().filter("sections");
+      TermsAggResult sectionsFacet = countFacet.terms("sections");
 
-          if (!Strings.isNullOrEmpty(query.getSection())) {
-            Option<TermBucket> selectedSection = sectionsFacet.bucketOpt(query.getSection());
+      if (sectionsFacet.getBuckets().size()>1 || !Strings.isNullOrEmpty(query.getSection())) {
+        params.put("sectionFacet", resultsService.buildSectionFacet(countFacet, Option.apply(Strings.emptyToNull(query.getSection()))));
 
-            if (!Strings.isNullOrEmpty(query.getGroup())) {
-              params.put("groupFacet", resultsService.buildGroupFacet(
-                      selectedSection, Option.apply(Tuple2.apply(query.getSection(), query.getGroup()))
-              ));
-            } else {
-              params.put("groupFacet", resultsService.buildGroupFacet(selectedSection, None$.empty()));
-            }
+        if (!Strings.isNullOrEmpty(query.getSection())) {
+          Option<TermBucket> selectedSection = sectionsFacet.bucketOpt(query.getSection());
 
+          if (!Strings.isNullOrEmpty(query.getGroup())) {
+            params.put("groupFacet", resultsService.buildGroupFacet(
+                    selectedSection, Option.apply(Tuple2.apply(query.getSection(), query.getGroup()))
+            ));
+          } else {
+            params.put("groupFacet", resultsService.buildGroupFacet(selectedSection, None$.empty()));
           }
-        } else if (Strings.isNullOrEmpty(query.getSection()) && sectionsFacet.buckets().size()==1) {
-          TermBucket onlySection = sectionsFacet.buckets().head();
-          query.setSection(onlySection.key());
 
-          params.put("groupFacet", resultsService.buildGroupFacet(Option.apply(onlySection), None$.empty()));
         }
+      } else if (Strings.isNullOrEmpty(query.getSection()) && sectionsFacet.buckets().size()==1) {
+        TermBucket onlySection = sectionsFacet.buckets().head();
+        query.setSection(onlySection.key());
 
-        params.put("tags", resultsService.foundTags(response.aggregations()));
+        params.put("groupFacet", resultsService.buildGroupFacet(Option.apply(onlySection), None$.empty()));
       }
 
-      long time = System.currentTimeMillis() - current;
+      params.put("tags", resultsService.foundTags(response.aggregations()));
+    }
 
-      params.put("result", res);
-      params.put("searchTime", response.took());
-      params.put("numFound", response.totalHits());
+    long time = System.currentTimeMillis() - current;
 
-      if (response.totalHits() > query.getOffset() + SearchViewer.SearchRows()) {
-        params.put("nextLink", "/search.jsp?" + query.getQuery(query.getOffset() + SearchViewer.SearchRows()));
-      }
+    params.put("result", res);
+    params.put("searchTime", response.took());
+    params.put("numFound", response.totalHits());
 
-      if (query.getOffset() - SearchViewer.SearchRows() >= 0) {
-        params.put("prevLink", "/search.jsp?" + query.getQuery(query.getOffset() - SearchViewer.SearchRows()));
-      }
+    if (response.totalHits() > query.getOffset() + SearchViewer.SearchRows()) {
+      params.put("nextLink", "/search.jsp?" + query.getQuery(query.getOffset() + SearchViewer.SearchRows()));
+    }
 
-      params.put("time", time);
+    if (query.getOffset() - SearchViewer.SearchRows() >= 0) {
+      params.put("prevLink", "/search.jsp?" + query.getQuery(query.getOffset() - SearchViewer.SearchRows()));
     }
 
-    return "search";
+    params.put("time", time);
+
+    return params;
   }
 
+  @ExceptionHandler(SearchOverloadedException.class)
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  public ModelAndView handleOverloaded() {
+    ModelAndView mav = new ModelAndView("errors/good-penguin");
+    mav.addObject("msgTitle", "Ошибка: поиск перегружен");
+    mav.addObject("msgHeader", "Поиск временно перегружен");
+    mav.addObject("msgMessage", "Попробуйте повторить запрос через несколько секунд");
+    return mav;
+  }
+
+
   private void sanitizeQuery(SearchRequest query) {
     if (!Strings.isNullOrEmpty(query.getSection())) {
       Option<Section> section = sectionService.fuzzyNameToSection().get(query.getSection());
@@ -0,0 +1,136 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.search;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кеш подготовленных страниц результатов поиска.
+ *
+ * Ключ - нормализованные параметры запроса. Запись действительна, пока не изменилось
+ * поколение индекса ({@code ElasticsearchIndexService.indexGeneration}), но не дольше
+ * {@link #TTL_SECONDS} секунд: поиск по интервалам зависит от текущего времени,
+ * а изменения индекса становятся видны в поиске с задержкой.
+ */
+@Component
+@ManagedResource(objectName = "ru.org.linux:type=SearchResultCache")
+public class SearchResultCache {
+  private static final int MAX_SIZE = 1000;
+  private static final int TTL_SECONDS = 30;
+
+  private final Cache<String, Page> cache =
+          CacheBuilder.newBuilder()
+                  .maximumSize(MAX_SIZE)
+                  .expireAfterWrite(TTL_SECONDS, TimeUnit.SECONDS)
+                  .build();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Получить страницу из кеша
+   *
+   * @param key нормализованный запрос
+   * @param generation текущее поколение индекса
+   * @return страницу или null, если её нет в кеше или индекс изменился
+   */
+  @Nullable
+  public Page get(String key, long generation) {
+    Page page = cache.getIfPresent(key);
+
+    if (page == null || page.generation != generation) {
+      misses.incrementAndGet();
+      return null;
+    }
+
+    hits.incrementAndGet();
+
+    return page;
+  }
+
+  /**
+   * Сохранить страницу
+   *
+   * @param key нормализованный запрос
+   * @param generation поколение индекса до начала запроса
+   * @param section раздел, уточненный по результатам поиска
+   * @param params модель страницы
+   */
+  public void put(String key, long generation, @Nullable String section, Map<String, Object> params) {
+    cache.put(key, new Page(generation, section, Collections.unmodifiableMap(new HashMap<>(params))));
+  }
+
+  @ManagedOperation
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @ManagedAttribute
+  public long getSize() {
+    return cache.size();
+  }
+
+  @ManagedAttribute
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  @ManagedAttribute
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  @ManagedAttribute
+  public double getHitRatio() {
+    long h = hits.get();
+    long total = h + misses.get();
+
+    return total == 0 ? 1.0 : (double) h / total;
+  }
+
+  public static final class Page {
+    private final long generation;
+    private final String section;
+    private final Map<String, Object> params;
+
+    private Page(long generation, @Nullable String section, Map<String, Object> params) {
+      this.generation = generation;
+      this.section = section;
+      this.params = params;
+    }
+
+    @Nullable
+    public String getSection() {
+      return section;
+    }
+
+    public Map<String, Object> getParams() {
+      return params;
+    }
+  }
+}
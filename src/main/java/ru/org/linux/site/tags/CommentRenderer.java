@@ -0,0 +1,305 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.site.tags;
+
+import com.google.common.base.Strings;
+import org.apache.commons.lang3.StringEscapeUtils;
+import ru.org.linux.comment.EditSummary;
+import ru.org.linux.comment.PreparedComment;
+import ru.org.linux.comment.ReplyInfo;
+import ru.org.linux.site.ApiDeleteInfo;
+import ru.org.linux.site.DateFormats;
+import ru.org.linux.user.ApiUserRef;
+import ru.org.linux.user.Userpic;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Вывод подписи и комментария без интерпретации jade шаблонов.
+ *
+ * Разметка повторяет template/sign.jade и template/comment.jade байт в байт
+ * (включая порядок атрибутов), шаблоны остаются для клиентского кода.
+ * При изменении шаблонов нужно менять и этот класс, соответствие
+ * проверяет CommentRendererBenchTest.
+ */
+public final class CommentRenderer {
+  private CommentRenderer() {
+  }
+
+  /**
+   * Подпись к посту (mixin sign)
+   *
+   * @param user автор
+   * @param shortMode короткий режим (для новостей)
+   * @param author является ли автором страницы
+   * @param postdate дата написания
+   * @param timeprop атрибут itemprop даты
+   */
+  public static void sign(Writer out, ApiUserRef user, boolean shortMode, boolean author,
+                          Date postdate, @Nullable String timeprop) throws IOException {
+    user(out, user, author ? "author" : null);
+
+    out.write(' ');
+
+    if (!shortMode) {
+      out.write("<span class=\"stars\">");
+      out.write(Strings.nullToEmpty(user.getStars()));
+      out.write("</span>");
+
+      if (user.getScore() != null) {
+        out.write(" (Score: ");
+        out.write(user.getScore().toString());
+        out.write(" MaxScore: ");
+        out.write(Objects.toString(user.getMaxScore(), ""));
+        out.write(')');
+      }
+    }
+
+    out.write(" (");
+    time(out, postdate, Strings.nullToEmpty(timeprop));
+    out.write(')');
+  }
+
+  /**
+   * Комментарий (mixin comment)
+   *
+   * @param enableSchema добавить разметку schema.org
+   * @param showMenu показывать ли меню добавить/удалить/ссылка/тп
+   */
+  public static void comment(Writer out, PreparedComment comment, boolean enableSchema,
+                             int topicId, String topicLink, boolean commentsAllowed,
+                             boolean showMenu) throws IOException {
+    if (enableSchema) {
+      out.write("<article itemscope=\"itemscope\" itemtype=\"http://schema.org/UserComments\" itemprop=\"comment\" id=\"comment-");
+    } else {
+      out.write("<article id=\"comment-");
+    }
+
+    out.write(Integer.toString(comment.getId()));
+    out.write("\" class=\"msg\"><div class=\"title\">");
+
+    if (comment.isDeleted()) {
+      ApiDeleteInfo deleteInfo = comment.getDeleteInfo();
+
+      if (deleteInfo == null) {
+        out.write("<strong>Сообщение удалено</strong>");
+      } else {
+        out.write("<strong>Сообщение удалено ");
+        escape(out, deleteInfo.getNick());
+        out.write(" по причине ");
+        escape(out, deleteInfo.getReason());
+        out.write("</strong>");
+      }
+
+      if (comment.isUndeletable()) {
+        out.write("&emsp;<a href=\"/undelete_comment?msgid=");
+        out.write(Integer.toString(comment.getId()));
+        out.write("\">[Восстановить]</a>");
+      }
+
+      out.write("<br>");
+    }
+
+    ReplyInfo reply = comment.getReply();
+
+    if (reply != null) {
+      if (reply.isDeleted()) {
+        out.write("Ответ на: удаленный комментарий");
+      } else {
+        out.write("Ответ на: <a ");
+
+        if (reply.isSamePage()) {
+          out.write("data-samepage=\"samePage\" ");
+        }
+
+        out.write("href=\"");
+        escape(out, topicLink);
+        out.write("?cid=");
+        out.write(Integer.toString(reply.getId()));
+        out.write("\">");
+
+        if (reply.getTitle() != null) {
+          out.write(reply.getTitle());
+        } else {
+          out.write("комментарий");
+        }
+
+        out.write("</a> от ");
+        escape(out, reply.getAuthor());
+        out.write(' ');
+        time(out, reply.getPostdate(), "false");
+      }
+    }
+
+    out.write("</div><div class=\"msg-container\">");
+
+    Userpic userpic = comment.getUserpic();
+
+    if (userpic != null) {
+      out.write("<div class=\"userpic\"><img class=\"photo\" src=\"");
+      escape(out, userpic.getUrl());
+      out.write("\" width=\"");
+      out.write(Integer.toString(userpic.getWidth()));
+      out.write("\" height=\"");
+      out.write(Integer.toString(userpic.getHeight()));
+      out.write("\"></div><div class=\"msg_body message-w-userpic\">");
+    } else {
+      out.write("<div class=\"msg_body false\">");
+    }
+
+    if (comment.getTitle() != null) {
+      out.write("<h1>");
+      escape(out, comment.getTitle());
+      out.write("</h1>");
+    }
+
+    out.write(comment.getProcessedMessage());
+
+    out.write("<div class=\"sign\">");
+
+    sign(out, comment.getAuthor(), false, false, comment.getPostdate(), "commentTime");
+
+    if (!Strings.isNullOrEmpty(comment.getRemark())) {
+      out.write(" <span class=\"user-remark\">");
+      escape(out, comment.getRemark());
+      out.write("</span>");
+    }
+
+    if (!Strings.isNullOrEmpty(comment.getPostIP())) {
+      out.write(" (<a href=\"sameip.jsp?msgid=");
+      out.write(Integer.toString(comment.getId()));
+      out.write("\">");
+      escape(out, comment.getPostIP());
+      out.write("</a>)");
+    }
+
+    EditSummary editSummary = comment.getEditSummary();
+
+    if (editSummary != null) {
+      out.write("<span class=\"sign_more\"><br>Последнее исправление: ");
+      escape(out, editSummary.getEditNick());
+      out.write(' ');
+      time(out, editSummary.getEditDate(), "false");
+      out.write(" (всего  <a href=\"");
+      escape(out, topicLink);
+      out.write('/');
+      out.write(Integer.toString(comment.getId()));
+      out.write("/history\">исправлений: ");
+      out.write(Integer.toString(editSummary.getEditCount()));
+      out.write("</a>)</span>");
+    }
+
+    if (!Strings.isNullOrEmpty(comment.getUserAgent())) {
+      out.write("<br><span class=\"sign_more\">");
+      escape(out, comment.getUserAgent());
+      out.write("</span>");
+    }
+
+    out.write("</div>");
+
+    if (!comment.isDeleted() && showMenu) {
+      out.write("<div class=\"reply\"><ul>");
+
+      if (commentsAllowed) {
+        out.write("<li><a ");
+
+        if (enableSchema) {
+          out.write("itemprop=\"replyToUrl\" ");
+        }
+
+        out.write("href=\"add_comment.jsp?topic=");
+        out.write(Integer.toString(topicId));
+        out.write("&amp;replyto=");
+        out.write(Integer.toString(comment.getId()));
+        out.write("\">Ответить<span class=\"hideon-phone\"> на это сообщение</span></a></li>");
+      }
+
+      out.write(' ');
+
+      if (comment.isEditable()) {
+        out.write("<li><a href=\"/edit_comment?original=");
+        out.write(Integer.toString(comment.getId()));
+        out.write("&amp;topic=");
+        out.write(Integer.toString(topicId));
+        out.write("\">Править</a></li>");
+      }
+
+      out.write(' ');
+
+      if (comment.isDeletable()) {
+        out.write("<li><a href=\"/delete_comment.jsp?msgid=");
+        out.write(Integer.toString(comment.getId()));
+        out.write("\">Удалить</a></li>");
+      }
+
+      out.write(" <li><a href=\"");
+      escape(out, topicLink);
+      out.write("?cid=");
+      out.write(Integer.toString(comment.getId()));
+      out.write("\">Ссылка</a></li></ul></div>");
+    }
+
+    out.write("</div></div></article>");
+  }
+
+  private static void user(Writer out, ApiUserRef user, @Nullable String rel) throws IOException {
+    if (user.isBlocked()) {
+      out.write("<s>");
+      userLink(out, user, rel);
+      out.write("</s>");
+    } else if (!user.isAnonymous()) {
+      userLink(out, user, rel);
+    } else {
+      escape(out, user.getNick());
+    }
+  }
+
+  private static void userLink(Writer out, ApiUserRef user, @Nullable String rel) throws IOException {
+    out.write("<a ");
+
+    if (rel != null) {
+      out.write("rel=\"");
+      out.write(rel);
+      out.write("\" ");
+    }
+
+    out.write("itemprop=\"creator\" href=\"/people/");
+    escape(out, user.getNick());
+    out.write("/profile\">");
+    escape(out, user.getNick());
+    out.write("</a>");
+  }
+
+  private static void time(Writer out, Date date, String itemprop) throws IOException {
+    out.write("<time datetime=\"");
+    DateFormats.iso8601().printTo(out, date.getTime());
+    out.write("\" itemprop=\"");
+    out.write(itemprop);
+    out.write("\">");
+    DateFormats.getDefault().printTo(out, date.getTime());
+    out.write("</time>");
+  }
+
+  private static void escape(Writer out, @Nullable String text) throws IOException {
+    if (text != null) {
+      StringEscapeUtils.ESCAPE_HTML4.translate(text, out);
+    }
+  }
+}
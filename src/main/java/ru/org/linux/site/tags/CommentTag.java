@@ -15,17 +15,12 @@
 
 package ru.org.linux.site.tags;
 
-import com.google.common.collect.Maps;
-import de.neuland.jade4j.JadeConfiguration;
-import de.neuland.jade4j.template.JadeTemplate;
-import org.springframework.web.context.WebApplicationContext;
-import org.springframework.web.context.support.WebApplicationContextUtils;
-import ru.org.linux.comment.ApiCommentTopicInfo;
 import ru.org.linux.comment.PreparedComment;
 import ru.org.linux.topic.Topic;
 
+import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.tagext.TagSupport;
-import java.util.Map;
+import java.io.IOException;
 
 public class CommentTag extends TagSupport {
   private PreparedComment comment;
@@ -56,38 +51,13 @@ public class CommentTag extends TagSupport {
   }
 
   @Override
-  public int doStartTag() {
-    WebApplicationContext context = WebApplicationContextUtils.getWebApplicationContext(pageContext.getServletContext());
-
-    JadeConfiguration jadeConfiguration = context.getBean(JadeConfiguration.class);
-    JadeTemplate jadeTemplate = context.getBean("TemplateComment", JadeTemplate.class);
-
-    Map<String, Object> data = Maps.newHashMap();
-
-    data.put("comment", comment);
-    data.put("enableSchema", enableSchema);
-    data.put("topic", new ApiCommentTopicInfo(
-            topic.getId(),
-            topic.getLink(),
-            commentsAllowed
-    ));
-
-    data.put("showMenu", showMenu);
-
-    // TODO: move to globals
-    data.put("dateFormat", new SignTag.DateFormatHandler());
-
-    jadeConfiguration.renderTemplate(jadeTemplate, data, pageContext.getOut());
-
-/*
-    ObjectMapper mapper = new ObjectMapper();
+  public int doStartTag() throws JspException {
     try {
-      pageContext.getOut().append(mapper.writer().writeValueAsString(data.get("user")));
-    } catch (Exception e) {
-      e.printStackTrace();
-     // throw new RuntimeException(e);
+      CommentRenderer.comment(pageContext.getOut(), comment, enableSchema,
+              topic.getId(), topic.getLink(), commentsAllowed, showMenu);
+    } catch (IOException ex) {
+      throw new JspException(ex);
     }
-*/
 
     return SKIP_BODY;
   }
@@ -15,17 +15,13 @@
 
 package ru.org.linux.site.tags;
 
-import com.google.common.collect.Maps;
-import de.neuland.jade4j.JadeConfiguration;
-import de.neuland.jade4j.template.JadeTemplate;
-import org.springframework.web.context.WebApplicationContext;
-import org.springframework.web.context.support.WebApplicationContextUtils;
 import ru.org.linux.site.DateFormats;
 import ru.org.linux.user.ApiUserRef;
 
+import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.tagext.TagSupport;
+import java.io.IOException;
 import java.util.Date;
-import java.util.Map;
 
 public class SignTag extends TagSupport {
   private ApiUserRef user;
@@ -55,37 +51,12 @@ public class SignTag extends TagSupport {
   }
 
   @Override
-  public int doStartTag() {
-    WebApplicationContext context = WebApplicationContextUtils.getWebApplicationContext(pageContext.getServletContext());
-
-    JadeConfiguration jadeConfiguration = context.getBean(JadeConfiguration.class);
-    JadeTemplate jadeTemplate = context.getBean("TemplateSign", JadeTemplate.class);
-
-    Map<String, Object> data = Maps.newHashMap();
-
-    data.put("user", user);
-    data.put("shortMode", shortMode);
-    data.put("author", author);
-    data.put("postdate", postdate);
-
-    // TODO: move to globals
-    data.put("dateFormat", new DateFormatHandler());
-
-    if (timeprop!=null) {
-      data.put("timeprop", timeprop);
-    }
-
-    jadeConfiguration.renderTemplate(jadeTemplate, data, pageContext.getOut());
-
-/*
-    ObjectMapper mapper = new ObjectMapper();
+  public int doStartTag() throws JspException {
     try {
-      pageContext.getOut().append(mapper.writer().writeValueAsString(data.get("user")));
-    } catch (Exception e) {
-      e.printStackTrace();
-     // throw new RuntimeException(e);
+      CommentRenderer.sign(pageContext.getOut(), user, shortMode, author, postdate, timeprop);
+    } catch (IOException ex) {
+      throw new JspException(ex);
     }
-*/
 
     return SKIP_BODY;
   }
@@ -87,6 +87,7 @@ public class DelIPController {
     DeleteCommentResult deleteResult = commentDeleteService.deleteCommentsByIPAddress(ip, ts, moderator, reason);
 
     params.put("topics", deleteResult.getDeletedTopicIds().size()); // кол-во удаленных топиков
+    params.put("comments", deleteResult.getDeletedCommentIds().size()); // кол-во удаленных комментариев
     params.put("deleted", deleteResult.getDeleteInfo());
 
     for(int topicId : deleteResult.getDeletedTopicIds()) {
@@ -16,6 +16,7 @@
 package ru.org.linux.spring.dao;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
@@ -27,8 +28,12 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Получение информации кем и почему удален топик
@@ -42,6 +47,9 @@ public class DeleteInfoDao {
   private static final String QUERY_DELETE_INFO_FOR_UPDATE =
           "SELECT reason,delby as userid, deldate, bonus FROM del_info WHERE msgid=? FOR UPDATE";
 
+  private static final String QUERY_DELETE_INFO_BY_IDS =
+          "SELECT msgid, reason,delby as userid, deldate, bonus FROM del_info WHERE msgid = ANY(?)";
+
   private static final String INSERT_DELETE_INFO =
           "INSERT INTO del_info (msgid, delby, reason, deldate, bonus) values(?,?,?, CURRENT_TIMESTAMP, ?)";
 
@@ -68,19 +76,7 @@ public class DeleteInfoDao {
   public DeleteInfo getDeleteInfo(int id, boolean forUpdate) {
     List<DeleteInfo> list = jdbcTemplate.query(
             forUpdate?QUERY_DELETE_INFO_FOR_UPDATE:QUERY_DELETE_INFO,
-            (resultSet, i) -> {
-              Integer bonus = resultSet.getInt("bonus");
-              if (resultSet.wasNull()) {
-                bonus = null;
-              }
-
-              return new DeleteInfo(
-                      resultSet.getInt("userid"),
-                      resultSet.getString("reason"),
-                      resultSet.getTimestamp("deldate"),
-                      Option.apply(bonus)
-              );
-            }, id);
+            DeleteInfoDao::mapDeleteInfo, id);
 
     if (list.isEmpty()) {
       return null;
@@ -89,6 +85,42 @@ public class DeleteInfoDao {
     }
   }
 
+  /**
+   * Кто, когда и почему удалил сообщения, одним запросом
+   * @param ids id проверяемых сообщений
+   * @return информация о удаленных сообщениях по id, сообщений без информации в ответе нет
+   */
+  public Map<Integer, DeleteInfo> getDeleteInfo(Collection<Integer> ids) {
+    if (ids.isEmpty()) {
+      return ImmutableMap.of();
+    }
+
+    Map<Integer, DeleteInfo> result = new HashMap<>();
+
+    jdbcTemplate.query(
+            QUERY_DELETE_INFO_BY_IDS,
+            ps -> ps.setArray(1, ps.getConnection().createArrayOf("int", ids.toArray())),
+            resultSet -> {
+              result.put(resultSet.getInt("msgid"), mapDeleteInfo(resultSet, 0));
+            });
+
+    return result;
+  }
+
+  private static DeleteInfo mapDeleteInfo(ResultSet resultSet, int i) throws SQLException {
+    Integer bonus = resultSet.getInt("bonus");
+    if (resultSet.wasNull()) {
+      bonus = null;
+    }
+
+    return new DeleteInfo(
+            resultSet.getInt("userid"),
+            resultSet.getString("reason"),
+            resultSet.getTimestamp("deldate"),
+            Option.apply(bonus)
+    );
+  }
+
   public void insert(int msgid, User deleter, String reason, int scoreBonus) {
     Preconditions.checkArgument(scoreBonus <= 0, "Score bonus on delete must be non-positive");
 
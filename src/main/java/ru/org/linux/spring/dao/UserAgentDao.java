@@ -15,23 +15,42 @@
 
 package ru.org.linux.spring.dao;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Информация о UA пользователей
+ * Информация о UA пользователей.
+ *
+ * Строки user_agents не меняются, а одни и те же UA встречаются у множества
+ * комментариев, поэтому названия кешируются по id.
  */
 @Repository
 public class UserAgentDao {
+  private static final int CACHE_SIZE = 10000;
 
   private static final String queryUserAgentById = "SELECT name FROM user_agents WHERE id=?";
+  private static final String queryUserAgentsByIds = "SELECT id, name FROM user_agents WHERE id = ANY(?)";
 
   private JdbcTemplate jdbcTemplate;
 
+  private final Cache<Integer, String> cache =
+          CacheBuilder.newBuilder()
+                  .maximumSize(CACHE_SIZE)
+                  .expireAfterAccess(1, TimeUnit.DAYS)
+                  .build();
+
   @Autowired
   public void setDataSource(DataSource dataSource) {
     jdbcTemplate = new JdbcTemplate(dataSource);
@@ -46,10 +65,63 @@ public class UserAgentDao {
     if (id == 0) {
       return null;
     }
+
+    String name = cache.getIfPresent(id);
+
+    if (name != null) {
+      return name;
+    }
+
     try {
-      return jdbcTemplate.queryForObject(queryUserAgentById, String.class, id);
+      name = jdbcTemplate.queryForObject(queryUserAgentById, String.class, id);
     } catch (EmptyResultDataAccessException exception) {
       return null;
     }
+
+    if (name != null) {
+      cache.put(id, name);
+    }
+
+    return name;
+  }
+
+  /**
+   * получить UA по списку id, отсутствующие в кеше загружаются одним запросом
+   * @param ids id UA
+   * @return названия UA по id, отсутствующих UA в ответе нет
+   */
+  public Map<Integer, String> getUserAgentsByIds(Collection<Integer> ids) {
+    Map<Integer, String> result = new HashMap<>();
+    Set<Integer> missing = new HashSet<>();
+
+    for (Integer id : ids) {
+      if (id == 0) {
+        continue;
+      }
+
+      String name = cache.getIfPresent(id);
+
+      if (name != null) {
+        result.put(id, name);
+      } else {
+        missing.add(id);
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      jdbcTemplate.query(
+              queryUserAgentsByIds,
+              ps -> ps.setArray(1, ps.getConnection().createArrayOf("int", missing.toArray())),
+              resultSet -> {
+                String name = resultSet.getString("name");
+
+                if (name != null) {
+                  result.put(resultSet.getInt("id"), name);
+                  cache.put(resultSet.getInt("id"), name);
+                }
+              });
+    }
+
+    return result;
   }
 }
@@ -33,6 +33,7 @@ import ru.org.linux.comment.*;
 import ru.org.linux.edithistory.EditHistoryService;
 import ru.org.linux.edithistory.EditInfoSummary;
 import ru.org.linux.group.Group;
+import ru.org.linux.group.GroupDao;
 import ru.org.linux.markup.MessageTextService;
 import ru.org.linux.paginator.PagesInfo;
 import ru.org.linux.search.MoreLikeThisService;
@@ -117,6 +118,9 @@ public class TopicController {
   @Autowired
   private EditHistoryService editHistoryService;
 
+  @Autowired
+  private GroupDao groupDao;
+
   @RequestMapping("/{section:(?:forum)|(?:news)|(?:polls)|(?:gallery)}/{group}/{id}")
   public ModelAndView getMessageNewMain(
     WebRequest webRequest,
@@ -138,7 +142,7 @@ public class TopicController {
     boolean rss = request.getParameter("output") != null && "rss".equals(request.getParameter("output"));
 
     if (rss) {
-      return getMessageRss(section, request, response, groupName, msgid);
+      return getMessageRss(section, webRequest, request, response, groupName, msgid);
     } else {
       return getMessageNew(section, webRequest, request, response, 0, filter, groupName, msgid);
     }
@@ -200,36 +204,10 @@ public class TopicController {
     String groupName,
     int msgid) throws Exception {
 
-    Deadline deadline = MoreLikeThisTimeout.fromNow();
-
     Topic topic = messageDao.getById(msgid);
-    List<TagRef> tags = topicTagService.getTagRefs(topic);
-
-    Future<List<List<MoreLikeThisTopic>>> moreLikeThis = moreLikeThisService.searchSimilar(topic, tags);
-
-    MessageText messageText = msgbaseDao.getMessageText(topic.getId());
-    String plainText = textService.extractPlainText(messageText);
-
     Template tmpl = Template.getTemplate(request);
 
-    PreparedTopic preparedMessage = topicPrepareService.prepareTopic(
-            topic,
-            tags,
-            tmpl.getCurrentUser(),
-            messageText
-    );
-
-    Map<String, Object> params = new HashMap<>();
-
-    if (tmpl.isSessionAuthorized()) {
-      Option<EditInfoSummary> editInfoSummary = editHistoryService.editInfoSummary(topic.getId(), TOPIC);
-
-      if (editInfoSummary.nonEmpty()) {
-        params.put("editInfo", topicPrepareService.prepareEditInfo(editInfoSummary.get()));
-      }
-    }
-
-    Group group = preparedMessage.getGroup();
+    Group group = groupDao.getGroup(topic.getGroupId());
 
     if (!group.getUrlName().equals(groupName) || group.getSectionId() != section.getId()) {
       return new ModelAndView(new RedirectView(topic.getLink()));
@@ -266,19 +244,57 @@ public class TopicController {
       }
     }
 
-    params.put("showDeleted", showDeleted);
-
     User currentUser = AuthUtil.getCurrentUser();
 
     permissionService.checkView(group, topic, currentUser, showDeleted);
 
-    params.put("message", topic);
-    params.put("preparedMessage", preparedMessage);
-
     if (topic.isExpired()) {
       response.setDateHeader("Expires", System.currentTimeMillis() + 30 * 24 * 60 * 60 * 1000L);
     }
 
+    /*
+     * Для анонимов страница зависит только от lastmod топика, страницы и фильтра,
+     * поэтому 304 можно отдать до загрузки текста, комментариев и похожих тем
+     */
+    if (!tmpl.isSessionAuthorized()) { // because users have IgnoreList and memories
+      String variant = filter != null ? page + "-" + CommentFilter.parseFilterChain(filter) : Integer.toString(page);
+
+      if (checkNotModified(webRequest, request, response, topic, variant)) {
+        return null;
+      }
+    }
+
+    Deadline deadline = MoreLikeThisTimeout.fromNow();
+
+    List<TagRef> tags = topicTagService.getTagRefs(topic);
+
+    Future<List<List<MoreLikeThisTopic>>> moreLikeThis = moreLikeThisService.searchSimilar(topic, tags);
+
+    MessageText messageText = msgbaseDao.getMessageText(topic.getId());
+    String plainText = textService.extractPlainText(messageText);
+
+    PreparedTopic preparedMessage = topicPrepareService.prepareTopic(
+            topic,
+            tags,
+            tmpl.getCurrentUser(),
+            messageText
+    );
+
+    Map<String, Object> params = new HashMap<>();
+
+    if (tmpl.isSessionAuthorized()) {
+      Option<EditInfoSummary> editInfoSummary = editHistoryService.editInfoSummary(topic.getId(), TOPIC);
+
+      if (editInfoSummary.nonEmpty()) {
+        params.put("editInfo", topicPrepareService.prepareEditInfo(editInfoSummary.get()));
+      }
+    }
+
+    params.put("showDeleted", showDeleted);
+
+    params.put("message", topic);
+    params.put("preparedMessage", preparedMessage);
+
     CommentList comments = commentService.getCommentList(topic, showDeleted);
 
     params.put("ogDescription", MessageTextService.trimPlainText(plainText, 250, true));
@@ -287,20 +303,6 @@ public class TopicController {
     params.put("group", group);
     params.put("showAdsense", !tmpl.isSessionAuthorized() || !tmpl.getProf().isHideAdsense());
 
-    if (!tmpl.isSessionAuthorized()) { // because users have IgnoreList and memories
-      String etag = getEtag(topic);
-      response.setHeader("Etag", etag);
-
-      if (request.getHeader("If-None-Match") != null) {
-        if (etag.equals(request.getHeader("If-None-Match"))) {
-          response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-          return null;
-        }
-      } else if (checkLastModified(webRequest, topic)) {
-        return null;
-      }
-    }
-
     params.put("messageMenu", topicPrepareService.getTopicMenu(
             preparedMessage,
             currentUser,
@@ -383,6 +385,7 @@ public class TopicController {
 
   private ModelAndView getMessageRss(
           Section section,
+          WebRequest webRequest,
           HttpServletRequest request,
           HttpServletResponse response,
           String groupName,
@@ -390,20 +393,7 @@ public class TopicController {
     Topic topic = messageDao.getById(msgid);
     Template tmpl = Template.getTemplate(request);
 
-    Map<String, Object> params = new HashMap<>();
-
-    List<TagRef> tags = topicTagService.getTagRefs(topic);
-
-    MessageText messageText = msgbaseDao.getMessageText(topic.getId());
-
-    PreparedTopic preparedMessage = topicPrepareService.prepareTopic(
-            topic,
-            tags,
-            tmpl.getCurrentUser(),
-            messageText
-    );
-
-    Group group = preparedMessage.getGroup();
+    Group group = groupDao.getGroup(topic.getGroupId());
 
     if (!group.getUrlName().equals(groupName) || group.getSectionId() != section.getId()) {
       return new ModelAndView(new RedirectView(topic.getLink()+"?output=rss"));
@@ -417,6 +407,23 @@ public class TopicController {
 
     permissionService.checkView(group, topic, currentUser, false);
 
+    if (!tmpl.isSessionAuthorized() && checkNotModified(webRequest, request, response, topic, "rss")) {
+      return null;
+    }
+
+    Map<String, Object> params = new HashMap<>();
+
+    List<TagRef> tags = topicTagService.getTagRefs(topic);
+
+    MessageText messageText = msgbaseDao.getMessageText(topic.getId());
+
+    PreparedTopic preparedMessage = topicPrepareService.prepareTopic(
+            topic,
+            tags,
+            tmpl.getCurrentUser(),
+            messageText
+    );
+
     params.put("message", topic);
     params.put("preparedMessage", preparedMessage);
 
@@ -531,8 +538,36 @@ public class TopicController {
     }
   }
 
-  private static String getEtag(Topic message) {
-    return "msg-"+message.getId()+ '-' +message.getLastModified().getTime();
+  private static String getEtag(Topic message, String variant) {
+    return "msg-"+message.getId()+ '-' +message.getLastModified().getTime() + '-' + variant;
+  }
+
+  /**
+   * Проверить If-None-Match / If-Modified-Since до подготовки страницы
+   *
+   * @param variant вариант страницы топика (номер страницы, фильтр, rss)
+   * @return true если клиенту отправлен ответ 304
+   */
+  private static boolean checkNotModified(
+          WebRequest webRequest,
+          HttpServletRequest request,
+          HttpServletResponse response,
+          Topic topic,
+          String variant
+  ) {
+    String etag = getEtag(topic, variant);
+    response.setHeader("Etag", etag);
+
+    if (request.getHeader("If-None-Match") != null) {
+      if (etag.equals(request.getHeader("If-None-Match"))) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+      }
+
+      return false;
+    } else {
+      return checkLastModified(webRequest, topic);
+    }
   }
 
   private ModelAndView jumpMessage(
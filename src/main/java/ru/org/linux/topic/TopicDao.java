@@ -16,6 +16,7 @@
 package ru.org.linux.topic;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
@@ -50,6 +51,7 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -86,7 +88,7 @@ public class TopicDao {
   /**
    * Запрос получения полной информации о топике
    */
-  private static final String queryMessage = "SELECT " +
+  private static final String queryMessageBase = "SELECT " +
         "postdate, topics.id as msgid, userid, topics.title, " +
         "topics.groupid as guid, topics.url, topics.linktext, ua_id, " +
         "urlname, section, topics.sticky, topics.postip, " +
@@ -95,8 +97,11 @@ public class TopicDao {
         "topics.resolved, minor, draft, allow_anonymous " +
         "FROM topics " +
         "INNER JOIN groups ON (groups.id=topics.groupid) " +
-        "INNER JOIN sections ON (sections.id=groups.section) " +
-        "WHERE topics.id=?";
+        "INNER JOIN sections ON (sections.id=groups.section) ";
+
+  private static final String queryMessage = queryMessageBase + "WHERE topics.id=?";
+
+  private static final String queryMessagesByIds = queryMessageBase + "WHERE topics.id = ANY(?)";
 
   private static final String queryTopicsIdByTime = "SELECT id FROM topics WHERE postdate>=? AND postdate<?";
 
@@ -106,6 +111,9 @@ public class TopicDao {
   @Autowired
   private UserDao userDao;
 
+  @Autowired
+  private TopicNavigationIndex navigationIndex;
+
   @Autowired
   public void setDataSource(DataSource dataSource) {
     jdbcTemplate = new JdbcTemplate(dataSource);
@@ -151,6 +159,23 @@ public class TopicDao {
     }
   }
 
+  /**
+   * Получить топики по списку id одним запросом
+   * @param ids id нужных топиков
+   * @return найденные топики, отсутствующих в результате нет
+   */
+  public List<Topic> findByIds(Collection<Integer> ids) {
+    if (ids.isEmpty()) {
+      return ImmutableList.of();
+    }
+
+    return jdbcTemplate.query(
+            queryMessagesByIds,
+            ps -> ps.setArray(1, ps.getConnection().createArrayOf("int", ids.toArray())),
+            (resultSet, i) -> new Topic(resultSet)
+    );
+  }
+
   /**
    * Получить group message
    * @param message message
@@ -176,7 +201,11 @@ public class TopicDao {
   }
 
   public boolean delete(int msgid) {
-    return jdbcTemplate.update("UPDATE topics SET deleted='t',sticky='f' WHERE id=? AND NOT deleted", msgid)>0;
+    boolean deleted = jdbcTemplate.update("UPDATE topics SET deleted='t',sticky='f' WHERE id=? AND NOT deleted", msgid)>0;
+
+    navigationIndex.topicChanged(msgid);
+
+    return deleted;
   }
 
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
@@ -189,6 +218,8 @@ public class TopicDao {
 
     jdbcTemplate.update("UPDATE topics SET deleted='f' WHERE id=?", message.getId());
     jdbcTemplate.update("DELETE FROM del_info WHERE msgid=?", message.getId());
+
+    navigationIndex.topicChanged(message.getId());
   }
 
   private int allocateMsgid() {
@@ -236,6 +267,8 @@ public class TopicDao {
 
     msgbaseDao.saveNewMessage(text, msgid);
 
+    navigationIndex.topicChanged(msgid);
+
     return msgid;
   }
 
@@ -353,6 +386,8 @@ public class TopicDao {
             commiter.getId(),
             msg.getId()
     );
+
+    navigationIndex.topicChanged(msg.getId());
   }
 
   public void publish(Topic msg) {
@@ -360,10 +395,14 @@ public class TopicDao {
             "UPDATE topics SET draft='f',postdate=CURRENT_TIMESTAMP,lastmod=CURRENT_TIMESTAMP WHERE id=? AND draft",
             msg.getId()
     );
+
+    navigationIndex.topicChanged(msg.getId());
   }
 
   public void uncommit(Topic msg) {
     jdbcTemplate.update("UPDATE topics SET moderate='f',commitby=NULL,commitdate=NULL WHERE id=?", msg.getId());
+
+    navigationIndex.topicChanged(msg.getId());
   }
 
   public Topic getPreviousMessage(Topic message, User currentUser) {
@@ -371,6 +410,12 @@ public class TopicDao {
       return null;
     }
 
+    int indexed = navigationIndex.getPrevious(message, currentUser);
+
+    if (indexed != TopicNavigationIndex.NOT_INDEXED) {
+      return indexed == TopicNavigationIndex.NOT_FOUND ? null : findById(indexed).orElse(null);
+    }
+
     SectionScrollModeEnum sectionScrollMode;
 
     sectionScrollMode = sectionService.getScrollMode(message.getSectionId());
@@ -439,6 +484,12 @@ public class TopicDao {
       return null;
     }
 
+    int indexed = navigationIndex.getNext(message, currentUser);
+
+    if (indexed != TopicNavigationIndex.NOT_INDEXED) {
+      return indexed == TopicNavigationIndex.NOT_FOUND ? null : findById(indexed).orElse(null);
+    }
+
     SectionScrollModeEnum sectionScrollMode;
 
     sectionScrollMode = sectionService.getScrollMode(message.getSectionId());
@@ -517,10 +568,14 @@ public class TopicDao {
             notop,
             msg.getId()
     );
+
+    navigationIndex.topicChanged(msg.getId());
   }
 
   public void changeGroup(Topic msg, int changeGroupId) {
     jdbcTemplate.update("UPDATE topics SET groupid=?,lastmod=CURRENT_TIMESTAMP WHERE id=?", changeGroupId, msg.getId());
+
+    navigationIndex.topicMoved(msg.getId(), msg.getGroupId());
   }
 
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
@@ -0,0 +1,96 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import ru.org.linux.util.ServletParameterBadValueException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Курсор постраничной навигации по ленте топиков: страница начинается
+ * сразу после (или перед) указанным топиком.
+ *
+ * Ключ сортировки топика (дата, id) выбирается в самом запросе, поэтому
+ * курсор не зависит от режима сортировки ленты и точности дат.
+ */
+public final class TopicListCursor {
+  public static final String AFTER_PARAM = "after";
+  public static final String BEFORE_PARAM = "before";
+
+  private final int topicId;
+  private final boolean before;
+
+  private TopicListCursor(int topicId, boolean before) {
+    this.topicId = topicId;
+    this.before = before;
+  }
+
+  public static TopicListCursor after(int topicId) {
+    return new TopicListCursor(topicId, false);
+  }
+
+  public static TopicListCursor before(int topicId) {
+    return new TopicListCursor(topicId, true);
+  }
+
+  /**
+   * Курсор из параметров запроса
+   *
+   * @return null для первой страницы
+   */
+  @Nullable
+  public static TopicListCursor fromRequest(@Nullable Integer after, @Nullable Integer before)
+          throws ServletParameterBadValueException {
+    if (after != null && before != null) {
+      throw new ServletParameterBadValueException(AFTER_PARAM, "нельзя указывать одновременно с before");
+    }
+
+    if (after != null) {
+      return after(checkId(AFTER_PARAM, after));
+    }
+
+    if (before != null) {
+      return before(checkId(BEFORE_PARAM, before));
+    }
+
+    return null;
+  }
+
+  private static int checkId(String name, int id) throws ServletParameterBadValueException {
+    if (id <= 0) {
+      throw new ServletParameterBadValueException(name, "некорректный номер топика");
+    }
+
+    return id;
+  }
+
+  public int getTopicId() {
+    return topicId;
+  }
+
+  public boolean isBefore() {
+    return before;
+  }
+
+  public String getParamName() {
+    return before ? BEFORE_PARAM : AFTER_PARAM;
+  }
+
+  @Override
+  public String toString() {
+    return getParamName() + '=' + topicId;
+  }
+}
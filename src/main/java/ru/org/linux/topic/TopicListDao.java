@@ -44,6 +44,7 @@ public class TopicListDao {
     Map<String, Object> params = new HashMap<>();
     String sort = makeSortOrder(topicListDto);
     String limit = makeLimitAndOffset(topicListDto);
+    TopicListCursor cursor = topicListDto.getCursor();
 
     StringBuilder query = new StringBuilder();
 
@@ -55,13 +56,7 @@ public class TopicListDao {
       .append("COALESCE(commitdate, postdate)<(CURRENT_TIMESTAMP-sections.expire) as expired, deleted, lastmod, commitby, ")
       .append("commitdate, topics.stat1, postscore, topics.moderate, notop, ")
       .append("topics.resolved, minor, draft, allow_anonymous ")
-      .append("FROM topics ")
-      .append("INNER JOIN groups ON (groups.id=topics.groupid) ")
-      .append("INNER JOIN sections ON (sections.id=groups.section) ");
-    if (topicListDto.isUserFavs()) {
-      query.append("INNER JOIN memories ON (memories.topic = topics.id) ");
-    }
-    query
+      .append(makeFrom(topicListDto))
       .append("WHERE ")
       .append(makeConditions(topicListDto, params))
       .append(sort)
@@ -69,11 +64,45 @@ public class TopicListDao {
 
     logger.trace("SQL query: " + query);
 
-    return namedJdbcTemplate.query(
+    List<Topic> topics = namedJdbcTemplate.query(
             query.toString(),
             params,
             (resultSet, i) -> new Topic(resultSet)
     );
+
+    if (cursor != null && cursor.isBefore()) {
+      Collections.reverse(topics);
+    }
+
+    return topics;
+  }
+
+  /**
+   * Количество топиков выборки, но не больше limit. Сортировка и смещение не учитываются.
+   *
+   * @param topicListDto объект, содержащий условия выборки
+   * @param limit        максимальное количество
+   * @return количество топиков
+   */
+  public int countTopics(TopicListDto topicListDto, int limit) {
+    Map<String, Object> params = new HashMap<>();
+
+    String query = "SELECT count(*) FROM (SELECT topics.id " + makeFrom(topicListDto) +
+            "WHERE " + makeConditions(topicListDto, params) + " LIMIT " + limit + ") AS found";
+
+    return namedJdbcTemplate.queryForObject(query, params, Integer.class);
+  }
+
+  private static String makeFrom(TopicListDto topicListDto) {
+    String from = "FROM topics " +
+            "INNER JOIN groups ON (groups.id=topics.groupid) " +
+            "INNER JOIN sections ON (sections.id=groups.section) ";
+
+    if (topicListDto.isUserFavs()) {
+      from += "INNER JOIN memories ON (memories.topic = topics.id) ";
+    }
+
+    return from;
   }
 
   /**
@@ -198,6 +227,24 @@ public class TopicListDao {
       where.append(" AND topics.draft ");
     }
 
+    TopicListCursor cursor = request.getCursor();
+
+    if (cursor != null) {
+      if (request.isUserFavs()) {
+        throw new IllegalArgumentException("cursor is not supported for favorites");
+      }
+
+      // (дата, id) топика-курсора выбирается по первичному ключу, сравнение строк
+      // использует индекс (дата DESC, id DESC) вместо пропуска OFFSET строк
+      where
+        .append(" AND (").append(sortColumn(request, "topics")).append(", topics.id)")
+        .append(cursor.isBefore() ? " > " : " < ")
+        .append("(SELECT ").append(sortColumn(request, "cursor_topic")).append(", cursor_topic.id ")
+        .append("FROM topics cursor_topic WHERE cursor_topic.id=:cursorTopic) ");
+
+      paramsBuilder.put("cursorTopic", cursor.getTopicId());
+    }
+
     return where;
   }
 
@@ -208,23 +255,34 @@ public class TopicListDao {
    * @return строка, содержащая условия сортировки
    */
   private static String makeSortOrder(TopicListDto topicListDto) {
-    if (topicListDto.isLastmodSort()) {
-      return "ORDER BY lastmod DESC";
+    if (topicListDto.isUserFavs() && !topicListDto.isLastmodSort()) {
+      return " ORDER BY memories.id DESC";
     }
 
-    if (topicListDto.isUserFavs()) {
-      return "ORDER BY memories.id DESC";
+    // при переходе назад выбираем в обратном порядке и переворачиваем результат
+    String direction = topicListDto.getCursor() != null && topicListDto.getCursor().isBefore() ? "ASC" : "DESC";
+
+    return " ORDER BY " + sortColumn(topicListDto, "topics") + ' ' + direction + ", topics.id " + direction;
+  }
+
+  /**
+   * Дата, по которой сортируется лента
+   *
+   * @param table имя или псевдоним таблицы topics
+   */
+  private static String sortColumn(TopicListDto topicListDto, String table) {
+    if (topicListDto.isLastmodSort()) {
+      return table + ".lastmod";
     }
 
     switch (topicListDto.getCommitMode()) {
       case COMMITED_ONLY:
-        return " ORDER BY commitdate DESC";
+        return table + ".commitdate";
       case UNCOMMITED_ONLY:
-        return " ORDER BY postdate DESC";
       case POSTMODERATED_ONLY:
-        return " ORDER BY postdate DESC";
+        return table + ".postdate";
       default:
-        return " ORDER BY COALESCE(commitdate, postdate) DESC";
+        return "COALESCE(" + table + ".commitdate, " + table + ".postdate)";
     }
   }
 
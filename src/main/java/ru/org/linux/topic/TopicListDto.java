@@ -45,6 +45,7 @@ public class TopicListDto {
   private int tag = 0;
   private Integer limit = null;
   private Integer offset = null;
+  private TopicListCursor cursor = null;
   private DateLimitType dateLimitType = DateLimitType.NONE;
   private Date fromDate;
   private Date toDate;
@@ -104,6 +105,14 @@ public class TopicListDto {
     this.offset = offset;
   }
 
+  public TopicListCursor getCursor() {
+    return cursor;
+  }
+
+  public void setCursor(TopicListCursor cursor) {
+    this.cursor = cursor;
+  }
+
   public DateLimitType getDateLimitType() {
     return dateLimitType;
   }
@@ -204,6 +213,7 @@ public class TopicListDto {
       .append("; tag=").append(tag)
       .append("; limit=").append(limit)
       .append("; offset=").append(offset)
+      .append("; cursor=").append(cursor)
       .append("; dateLimitType=").append(dateLimitType)
       .append("; fromDate=").append((fromDate != null) ? fromDate.toString() : "")
       .append("; toDate=").append((toDate != null) ? toDate.toString() : "")
@@ -0,0 +1,123 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Страница ленты топиков с курсорами соседних страниц.
+ *
+ * Если страницу нужно показать по другому адресу (старая ссылка с offset
+ * или начало ленты при переходе назад), то isRedirect() и getRedirectTo()
+ * указывает курсор новой страницы (null - первая страница).
+ */
+public final class TopicListPage {
+  private final List<Topic> topics;
+  @Nullable private final TopicListCursor prev;
+  @Nullable private final TopicListCursor next;
+  private final boolean redirect;
+  @Nullable private final TopicListCursor redirectTo;
+
+  private TopicListPage(List<Topic> topics, @Nullable TopicListCursor prev, @Nullable TopicListCursor next,
+                        boolean redirect, @Nullable TopicListCursor redirectTo) {
+    this.topics = topics;
+    this.prev = prev;
+    this.next = next;
+    this.redirect = redirect;
+    this.redirectTo = redirectTo;
+  }
+
+  public static TopicListPage redirect(@Nullable TopicListCursor redirectTo) {
+    return new TopicListPage(ImmutableList.of(), null, null, true, redirectTo);
+  }
+
+  /**
+   * Страница из результата выборки на один топик больше размера страницы
+   *
+   * @param found топики в порядке ленты, не больше pageSize+1
+   * @param cursor курсор запроса, null для первой страницы
+   */
+  static TopicListPage of(List<Topic> found, @Nullable TopicListCursor cursor, int pageSize) {
+    boolean more = found.size() > pageSize;
+
+    if (cursor != null && cursor.isBefore()) {
+      if (!more) {
+        // до начала ленты меньше страницы
+        return redirect(null);
+      }
+
+      List<Topic> topics = found.subList(1, found.size());
+
+      return new TopicListPage(topics, prevCursor(topics), nextCursor(topics), false, null);
+    } else {
+      if (cursor != null && found.isEmpty()) {
+        // за курсором ничего нет
+        return redirect(null);
+      }
+
+      List<Topic> topics = more ? found.subList(0, pageSize) : found;
+
+      return new TopicListPage(
+              topics,
+              cursor != null ? prevCursor(topics) : null,
+              more ? nextCursor(topics) : null,
+              false,
+              null
+      );
+    }
+  }
+
+  /**
+   * Та же страница без ссылки на следующую
+   */
+  TopicListPage withoutNext() {
+    return new TopicListPage(topics, prev, null, redirect, redirectTo);
+  }
+
+  private static TopicListCursor prevCursor(List<Topic> topics) {
+    return TopicListCursor.before(topics.get(0).getId());
+  }
+
+  private static TopicListCursor nextCursor(List<Topic> topics) {
+    return TopicListCursor.after(topics.get(topics.size() - 1).getId());
+  }
+
+  public List<Topic> getTopics() {
+    return topics;
+  }
+
+  @Nullable
+  public TopicListCursor getPrev() {
+    return prev;
+  }
+
+  @Nullable
+  public TopicListCursor getNext() {
+    return next;
+  }
+
+  public boolean isRedirect() {
+    return redirect;
+  }
+
+  @Nullable
+  public TopicListCursor getRedirectTo() {
+    return redirectTo;
+  }
+}
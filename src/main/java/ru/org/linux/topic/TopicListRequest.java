@@ -20,6 +20,8 @@ package ru.org.linux.topic;
  */
 public class TopicListRequest {
   private Integer offset;
+  private Integer after;
+  private Integer before;
   private String output;
   private Integer month;
   private Integer year;
@@ -32,6 +34,22 @@ public class TopicListRequest {
     this.offset = offset;
   }
 
+  public Integer getAfter() {
+    return after;
+  }
+
+  public void setAfter(Integer after) {
+    this.after = after;
+  }
+
+  public Integer getBefore() {
+    return before;
+  }
+
+  public void setBefore(Integer before) {
+    this.before = before;
+  }
+
   public String getOutput() {
     return output;
   }
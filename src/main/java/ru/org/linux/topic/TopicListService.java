@@ -26,6 +26,7 @@ import ru.org.linux.tag.TagService;
 import ru.org.linux.user.User;
 import ru.org.linux.user.UserErrorException;
 
+import javax.annotation.Nullable;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -34,6 +35,16 @@ import java.util.List;
 public class TopicListService {
   private static final Logger logger = LoggerFactory.getLogger(TopicListService.class);
 
+  /**
+   * Размер страницы лент с навигацией по курсору
+   */
+  public static final int PAGE_SIZE = 20;
+
+  /**
+   * Максимальное смещение страницы от начала ленты
+   */
+  private static final int MAX_OFFSET = 200;
+
   @Autowired
   private TagService tagService;
 
@@ -72,6 +83,51 @@ public class TopicListService {
                     "; month=" + month
     );
 
+    TopicListDto topicListDto = makeTopicsFeedDto(section, group, tag);
+
+    if (month != null && year != null) {
+      topicListDto.setDateLimitType(TopicListDto.DateLimitType.BETWEEN);
+      Calendar calendar = Calendar.getInstance();
+
+      calendar.set(year, month - 1, 1, 0, 0, 0);
+      topicListDto.setFromDate(calendar.getTime());
+
+      calendar.add(Calendar.MONTH, 1);
+      topicListDto.setToDate(calendar.getTime());
+    } else {
+      topicListDto.setLimit(count);
+      topicListDto.setOffset(offset > 0 ? offset : null);
+      limitFeedDate(topicListDto, section, group, tag);
+    }
+    return topicListDao.getTopics(topicListDto);
+  }
+
+  /**
+   * Страница ленты топиков по курсору.
+   *
+   * Старые ссылки с offset перенаправляются на курсор, offset ограничен fixOffset.
+   *
+   * @param section секция
+   * @param group   группа
+   * @param tag     тег
+   * @param offset  смещение из старой ссылки
+   * @param cursor  курсор или null для первой страницы
+   * @return страница топиков
+   */
+  public TopicListPage getTopicsFeedPage(
+    Section section,
+    Group group,
+    String tag,
+    Integer offset,
+    @Nullable TopicListCursor cursor
+  ) throws TagNotFoundException {
+    TopicListDto topicListDto = makeTopicsFeedDto(section, group, tag);
+    limitFeedDate(topicListDto, section, group, tag);
+
+    return getPage(topicListDto, offset, cursor);
+  }
+
+  private TopicListDto makeTopicsFeedDto(Section section, Group group, String tag) throws TagNotFoundException {
     TopicListDto topicListDto = new TopicListDto();
 
     if (section != null) {
@@ -91,27 +147,21 @@ public class TopicListService {
       topicListDto.setTag(tagService.getTagId(tag));
     }
 
-    if (month != null && year != null) {
-      topicListDto.setDateLimitType(TopicListDto.DateLimitType.BETWEEN);
-      Calendar calendar = Calendar.getInstance();
+    return topicListDto;
+  }
 
-      calendar.set(year, month - 1, 1, 0, 0, 0);
+  /**
+   * Ограничение ленты последним полугодием для непремодерируемых разделов,
+   * кроме архива по месяцам
+   */
+  private static void limitFeedDate(TopicListDto topicListDto, Section section, Group group, String tag) {
+    if (tag == null && group == null && !section.isPremoderated()) {
+      topicListDto.setDateLimitType(TopicListDto.DateLimitType.FROM_DATE);
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTime(new Date());
+      calendar.add(Calendar.MONTH, -6);
       topicListDto.setFromDate(calendar.getTime());
-
-      calendar.add(Calendar.MONTH, 1);
-      topicListDto.setToDate(calendar.getTime());
-    } else {
-      topicListDto.setLimit(count);
-      topicListDto.setOffset(offset > 0 ? offset : null);
-      if (tag == null && group == null && !section.isPremoderated()) {
-        topicListDto.setDateLimitType(TopicListDto.DateLimitType.FROM_DATE);
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(new Date());
-        calendar.add(Calendar.MONTH, -6);
-        topicListDto.setFromDate(calendar.getTime());
-      }
     }
-    return topicListDao.getTopics(topicListDto);
   }
 
   /**
@@ -161,6 +211,61 @@ public class TopicListService {
     return topicListDao.getTopics(topicListDto);
   }
 
+  /**
+   * Страница топиков пользователя по курсору.
+   *
+   * @param user    объект пользователя
+   * @param section секция, из которой выбрать сообщения
+   * @param offset  смещение из старой ссылки
+   * @param cursor  курсор или null для первой страницы
+   * @return страница топиков
+   */
+  public TopicListPage getUserTopicsFeedPage(User user, Section section, Integer offset, @Nullable TopicListCursor cursor) {
+    TopicListDto topicListDto = new TopicListDto();
+    topicListDto.setCommitMode(TopicListDao.CommitMode.ALL);
+    topicListDto.setUserId(user.getId());
+    if (section != null) {
+      topicListDto.setSection(section.getId());
+    }
+
+    return getPage(topicListDto, offset, cursor);
+  }
+
+  /**
+   * Выборка страницы по курсору. Выбирается на один топик больше страницы,
+   * чтобы знать, есть ли следующая (или предыдущая при переходе назад).
+   */
+  private TopicListPage getPage(TopicListDto topicListDto, Integer offset, @Nullable TopicListCursor cursor) {
+    int fixedOffset = fixOffset(offset);
+
+    if (cursor == null && fixedOffset > 0) {
+      // старая ссылка: курсором становится последний топик предыдущей страницы
+      topicListDto.setLimit(1);
+      topicListDto.setOffset(fixedOffset - 1);
+
+      List<Topic> anchor = topicListDao.getTopics(topicListDto);
+
+      return TopicListPage.redirect(anchor.isEmpty() ? null : TopicListCursor.after(anchor.get(0).getId()));
+    }
+
+    topicListDto.setLimit(PAGE_SIZE + 1);
+    topicListDto.setCursor(cursor);
+
+    TopicListPage page = TopicListPage.of(topicListDao.getTopics(topicListDto), cursor, PAGE_SIZE);
+
+    if (cursor != null && page.getNext() != null) {
+      // как и со старыми ссылками, дальше MAX_OFFSET топиков от начала ленты не листаем
+      topicListDto.setLimit(null);
+      topicListDto.setCursor(TopicListCursor.before(page.getTopics().get(0).getId()));
+
+      if (topicListDao.countTopics(topicListDto, MAX_OFFSET) >= MAX_OFFSET) {
+        return page.withoutNext();
+      }
+    }
+
+    return page;
+  }
+
   /**
    * Получение списка черновиков пользователя.
    *
@@ -293,8 +398,8 @@ public class TopicListService {
         return 0;
       }
 
-      if (offset > 200) {
-        return 200;
+      if (offset > MAX_OFFSET) {
+        return MAX_OFFSET;
       }
 
       return offset;
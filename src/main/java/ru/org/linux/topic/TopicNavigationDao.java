@@ -0,0 +1,141 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import com.google.common.collect.Iterables;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Загрузка данных для индекса навигации по топикам
+ */
+@Repository
+public class TopicNavigationDao {
+  private static final int CHUNK_SIZE = 50000;
+
+  private static final String queryTopics =
+      "SELECT t.id, t.userid, t.groupid, g.section, t.postdate, t.commitdate, t.moderate, t.sticky, t.deleted, t.draft " +
+      "FROM topics AS t JOIN groups AS g ON t.groupid=g.id ";
+
+  private static final RowMapper<Row> mapper = (rs, rowNum) -> new Row(
+          rs.getInt("id"),
+          rs.getInt("userid"),
+          rs.getInt("groupid"),
+          rs.getInt("section"),
+          rs.getTimestamp("postdate"),
+          rs.getTimestamp("commitdate"),
+          rs.getBoolean("moderate"),
+          rs.getBoolean("sticky"),
+          rs.getBoolean("deleted"),
+          rs.getBoolean("draft")
+  );
+
+  private NamedParameterJdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public void setDataSource(DataSource ds) {
+    jdbcTemplate = new NamedParameterJdbcTemplate(ds);
+  }
+
+  /**
+   * Загрузить все видимые топики разделов. Топики читаются частями по id,
+   * чтобы не держать весь результат запроса в памяти.
+   *
+   * @param sections id разделов
+   * @param consumer обработчик строк
+   */
+  public void loadAll(Collection<Integer> sections, Consumer<Row> consumer) {
+    if (sections.isEmpty()) {
+      return;
+    }
+
+    int after = 0;
+
+    while (true) {
+      List<Row> chunk = jdbcTemplate.query(
+              queryTopics + "WHERE g.section IN (:sections) AND NOT t.deleted AND NOT t.draft AND NOT t.sticky " +
+                      "AND t.id > :after ORDER BY t.id LIMIT :limit",
+              new MapSqlParameterSource()
+                      .addValue("sections", sections)
+                      .addValue("after", after)
+                      .addValue("limit", CHUNK_SIZE),
+              mapper
+      );
+
+      chunk.forEach(consumer);
+
+      if (chunk.size() < CHUNK_SIZE) {
+        break;
+      }
+
+      after = chunk.get(chunk.size() - 1).id;
+    }
+  }
+
+  /**
+   * Загрузить топики по id, включая удаленные и черновики
+   *
+   * @param ids id топиков
+   * @return найденные топики
+   */
+  public List<Row> load(Collection<Integer> ids) {
+    List<Row> result = new ArrayList<>(ids.size());
+
+    for (List<Integer> chunk : Iterables.partition(ids, 1000)) {
+      result.addAll(jdbcTemplate.query(queryTopics + "WHERE t.id IN (:ids)", new MapSqlParameterSource("ids", chunk), mapper));
+    }
+
+    return result;
+  }
+
+  static class Row {
+    final int id;
+    final int author;
+    final int groupId;
+    final int section;
+    final Timestamp postdate;
+    final Timestamp commitdate;
+    final boolean moderate;
+    final boolean sticky;
+    final boolean deleted;
+    final boolean draft;
+
+    Row(int id, int author, int groupId, int section, Timestamp postdate, @Nullable Timestamp commitdate,
+        boolean moderate, boolean sticky, boolean deleted, boolean draft) {
+      this.id = id;
+      this.author = author;
+      this.groupId = groupId;
+      this.section = section;
+      this.postdate = postdate;
+      this.commitdate = commitdate;
+      this.moderate = moderate;
+      this.sticky = sticky;
+      this.deleted = deleted;
+      this.draft = draft;
+    }
+  }
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.org.linux.group.GroupDao;
+import ru.org.linux.section.Section;
+import ru.org.linux.section.SectionScrollModeEnum;
+import ru.org.linux.section.SectionService;
+import ru.org.linux.topic.TopicNavigationDao.Row;
+import ru.org.linux.user.IgnoreListDao;
+import ru.org.linux.user.User;
+
+import javax.annotation.Nullable;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Индекс для ссылок "предыдущий / следующий топик".
+ *
+ * Для разделов с прокруткой по разделу хранится трек топиков раздела, упорядоченный
+ * по дате подтверждения, для разделов с прокруткой по группе - трек каждой группы,
+ * упорядоченный по дате публикации. Трек - отсортированные по (дата, id) массивы
+ * (дата в микросекундах, id, автор) без удаленных, черновиков и прилепленных топиков,
+ * поиск соседа - бинарный поиск.
+ *
+ * Индекс полностью загружается при старте и периодически перезагружается, между
+ * перезагрузками перечитываются только топики, отмеченные {@link #topicChanged(int)}.
+ * Изменения выполняются в потоке планировщика, треки неизменяемы и читаются без блокировок.
+ */
+@Component
+public class TopicNavigationIndex {
+  private static final Logger logger = LoggerFactory.getLogger(TopicNavigationIndex.class);
+
+  /**
+   * Индекс не загружен или ответ нельзя получить из индекса, нужно использовать SQL
+   */
+  public static final int NOT_INDEXED = -1;
+
+  /**
+   * Соседнего топика нет
+   */
+  public static final int NOT_FOUND = 0;
+
+  private static final int REFRESH_DELAY = 5 * 1000;
+  private static final int FULL_RELOAD_INTERVAL = 6 * 60 * 60 * 1000;
+
+  /**
+   * Сколько топиков игнорируемых авторов можно пропустить подряд
+   */
+  private static final int MAX_SKIP = 1000;
+
+  @Autowired
+  private TopicNavigationDao navigationDao;
+
+  @Autowired
+  private SectionService sectionService;
+
+  @Autowired
+  private GroupDao groupDao;
+
+  @Autowired
+  private IgnoreListDao ignoreListDao;
+
+  /**
+   * Треки: id раздела для прокрутки по разделу, -id группы для прокрутки по группе
+   */
+  private final Map<Integer, Track> tracks = new ConcurrentHashMap<>();
+
+  /**
+   * Измененные топики: id топика -> id группы до переноса (0 если группа не менялась)
+   */
+  private final Map<Integer, Integer> dirty = new ConcurrentHashMap<>();
+
+  private volatile boolean loaded;
+  private long lastFullReload;
+
+  /**
+   * Отметить топик как измененный; индекс обновится после фиксации транзакции
+   *
+   * @param topicId id топика
+   */
+  public void topicChanged(int topicId) {
+    topicMoved(topicId, 0);
+  }
+
+  /**
+   * Отметить перенос топика в другую группу
+   *
+   * @param topicId id топика
+   * @param oldGroupId id группы до переноса
+   */
+  public void topicMoved(int topicId, int oldGroupId) {
+    markDirty(topicId, oldGroupId);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          markDirty(topicId, oldGroupId);
+        }
+      });
+    }
+  }
+
+  private void markDirty(int topicId, int oldGroupId) {
+    dirty.merge(topicId, oldGroupId, (current, group) -> current != 0 ? current : group);
+  }
+
+  @Scheduled(fixedDelay = REFRESH_DELAY)
+  public synchronized void refresh() {
+    try {
+      if (!loaded || System.currentTimeMillis() - lastFullReload > FULL_RELOAD_INTERVAL) {
+        fullReload();
+      } else {
+        applyChanges();
+      }
+    } catch (RuntimeException ex) {
+      logger.warn("Topic navigation index refresh failed", ex);
+    }
+  }
+
+  private void fullReload() {
+    dirty.clear();
+
+    List<Integer> sections = new ArrayList<>();
+
+    for (Section section : sectionService.getSectionList()) {
+      if (section.getScrollMode() != SectionScrollModeEnum.NO_SCROLL) {
+        sections.add(section.getId());
+      }
+    }
+
+    Map<Integer, List<Row>> rows = new HashMap<>();
+    int[] count = { 0 };
+
+    navigationDao.loadAll(sections, row -> {
+      int key = trackKey(row.section, row.groupId);
+
+      if (isVisible(row, key)) {
+        rows.computeIfAbsent(key, k -> new ArrayList<>()).add(row);
+        count[0]++;
+      }
+    });
+
+    for (Map.Entry<Integer, List<Row>> entry : rows.entrySet()) {
+      tracks.put(entry.getKey(), Track.build(entry.getValue(), entry.getKey() > 0));
+    }
+
+    tracks.keySet().retainAll(rows.keySet());
+
+    if (!loaded) {
+      logger.info("Topic navigation index loaded: " + count[0] + " topics");
+    }
+
+    loaded = true;
+    lastFullReload = System.currentTimeMillis();
+
+    applyChanges();
+  }
+
+  private void applyChanges() {
+    if (dirty.isEmpty()) {
+      return;
+    }
+
+    Map<Integer, Integer> changes = new HashMap<>();
+
+    for (Integer id : new ArrayList<>(dirty.keySet())) {
+      Integer oldGroup = dirty.remove(id);
+
+      if (oldGroup != null) {
+        changes.put(id, oldGroup);
+      }
+    }
+
+    Map<Integer, Row> rows = new HashMap<>();
+
+    for (Row row : navigationDao.load(changes.keySet())) {
+      rows.put(row.id, row);
+    }
+
+    for (Map.Entry<Integer, Integer> change : changes.entrySet()) {
+      int id = change.getKey();
+      Row row = rows.get(id);
+
+      Set<Integer> keys = new HashSet<>();
+
+      if (row != null) {
+        keys.add(trackKey(row.section, row.groupId));
+      }
+
+      if (change.getValue() != 0) {
+        keys.add(trackKey(groupDao.getGroup(change.getValue()).getSectionId(), change.getValue()));
+      }
+
+      for (int key : keys) {
+        tracks.computeIfPresent(key, (k, track) -> track.without(id));
+      }
+
+      if (row != null) {
+        int key = trackKey(row.section, row.groupId);
+
+        if (isVisible(row, key)) {
+          tracks.compute(key, (k, track) -> (track != null ? track : Track.EMPTY).with(dateOf(row, key), id, row.author));
+        }
+      }
+    }
+  }
+
+  private int trackKey(int sectionId, int groupId) {
+    switch (sectionService.getScrollMode(sectionId)) {
+      case SECTION:
+        return sectionId;
+      case GROUP:
+        return -groupId;
+      default:
+        return 0;
+    }
+  }
+
+  private boolean isVisible(Row row, int key) {
+    if (key == 0 || row.deleted || row.draft || row.sticky) {
+      return false;
+    }
+
+    if (key > 0) {
+      return row.commitdate != null && (row.moderate || !sectionService.getSection(row.section).isPremoderated());
+    } else {
+      return true;
+    }
+  }
+
+  private static long dateOf(Row row, int key) {
+    return micros(key > 0 ? row.commitdate : row.postdate);
+  }
+
+  /**
+   * Дата с точностью до микросекунд, как она хранится в PostgreSQL
+   */
+  static long micros(Timestamp date) {
+    return Math.floorDiv(date.getTime(), 1000) * 1000000 + date.getNanos() / 1000;
+  }
+
+  /**
+   * Предыдущий топик
+   *
+   * @param topic текущий топик
+   * @param currentUser текущий пользователь; при прокрутке по группе учитывается его список игнорирования
+   * @return id топика, {@link #NOT_FOUND} или {@link #NOT_INDEXED}
+   */
+  public int getPrevious(Topic topic, @Nullable User currentUser) {
+    return find(topic, currentUser, false);
+  }
+
+  /**
+   * Следующий топик
+   *
+   * @param topic текущий топик
+   * @param currentUser текущий пользователь; при прокрутке по группе учитывается его список игнорирования
+   * @return id топика, {@link #NOT_FOUND} или {@link #NOT_INDEXED}
+   */
+  public int getNext(Topic topic, @Nullable User currentUser) {
+    return find(topic, currentUser, true);
+  }
+
+  private int find(Topic topic, @Nullable User currentUser, boolean forward) {
+    if (!loaded) {
+      return NOT_INDEXED;
+    }
+
+    int key = trackKey(topic.getSectionId(), topic.getGroupId());
+
+    if (key == 0) {
+      return NOT_FOUND;
+    }
+
+    Timestamp date = key > 0 ? topic.getCommitDate() : topic.getPostdate();
+
+    if (date == null) {
+      return NOT_FOUND;
+    }
+
+    Track track = tracks.get(key);
+
+    if (track == null) {
+      return NOT_FOUND;
+    }
+
+    Set<Integer> ignoreList;
+
+    if (key < 0 && currentUser != null && !currentUser.isAnonymous()) {
+      ignoreList = ignoreListDao.get(currentUser);
+    } else {
+      ignoreList = Collections.emptySet();
+    }
+
+    long micros = micros(date);
+
+    return forward ? track.next(micros, topic.getId(), ignoreList) : track.previous(micros, topic.getId(), ignoreList);
+  }
+
+  /**
+   * Неизменяемый упорядоченный по (дата, id) список топиков
+   */
+  static final class Track {
+    static final Track EMPTY = new Track(new long[0], new int[0], new int[0]);
+
+    private final long[] dates;
+    private final int[] ids;
+    private final int[] authors;
+
+    private Track(long[] dates, int[] ids, int[] authors) {
+      this.dates = dates;
+      this.ids = ids;
+      this.authors = authors;
+    }
+
+    private static Track build(List<Row> rows, boolean byCommitdate) {
+      int key = byCommitdate ? 1 : -1;
+
+      rows.sort(Comparator.comparingLong((Row row) -> dateOf(row, key)).thenComparingInt(row -> row.id));
+
+      long[] dates = new long[rows.size()];
+      int[] ids = new int[rows.size()];
+      int[] authors = new int[rows.size()];
+
+      for (int i = 0; i < rows.size(); i++) {
+        Row row = rows.get(i);
+
+        dates[i] = dateOf(row, key);
+        ids[i] = row.id;
+        authors[i] = row.author;
+      }
+
+      return new Track(dates, ids, authors);
+    }
+
+    int size() {
+      return ids.length;
+    }
+
+    Track with(long date, int id, int author) {
+      int pos = lowerBound(date, id);
+
+      long[] newDates = new long[dates.length + 1];
+      int[] newIds = new int[ids.length + 1];
+      int[] newAuthors = new int[authors.length + 1];
+
+      System.arraycopy(dates, 0, newDates, 0, pos);
+      System.arraycopy(ids, 0, newIds, 0, pos);
+      System.arraycopy(authors, 0, newAuthors, 0, pos);
+
+      newDates[pos] = date;
+      newIds[pos] = id;
+      newAuthors[pos] = author;
+
+      System.arraycopy(dates, pos, newDates, pos + 1, dates.length - pos);
+      System.arraycopy(ids, pos, newIds, pos + 1, ids.length - pos);
+      System.arraycopy(authors, pos, newAuthors, pos + 1, authors.length - pos);
+
+      return new Track(newDates, newIds, newAuthors);
+    }
+
+    Track without(int id) {
+      int pos = -1;
+
+      for (int i = 0; i < ids.length; i++) {
+        if (ids[i] == id) {
+          pos = i;
+          break;
+        }
+      }
+
+      if (pos < 0) {
+        return this;
+      }
+
+      long[] newDates = new long[dates.length - 1];
+      int[] newIds = new int[ids.length - 1];
+      int[] newAuthors = new int[authors.length - 1];
+
+      System.arraycopy(dates, 0, newDates, 0, pos);
+      System.arraycopy(ids, 0, newIds, 0, pos);
+      System.arraycopy(authors, 0, newAuthors, 0, pos);
+
+      System.arraycopy(dates, pos + 1, newDates, pos, dates.length - pos - 1);
+      System.arraycopy(ids, pos + 1, newIds, pos, ids.length - pos - 1);
+      System.arraycopy(authors, pos + 1, newAuthors, pos, authors.length - pos - 1);
+
+      return new Track(newDates, newIds, newAuthors);
+    }
+
+    /**
+     * Последний топик перед (date, id)
+     */
+    int previous(long date, int id, Set<Integer> ignoreList) {
+      int skipped = 0;
+
+      for (int i = lowerBound(date, id) - 1; i >= 0; i--) {
+        if (!ignoreList.contains(authors[i])) {
+          return ids[i];
+        }
+
+        if (++skipped > MAX_SKIP) {
+          return NOT_INDEXED;
+        }
+      }
+
+      return NOT_FOUND;
+    }
+
+    /**
+     * Первый топик после (date, id)
+     */
+    int next(long date, int id, Set<Integer> ignoreList) {
+      int skipped = 0;
+      int start = lowerBound(date, id);
+
+      if (start < ids.length && dates[start] == date && ids[start] == id) {
+        start++;
+      }
+
+      for (int i = start; i < ids.length; i++) {
+        if (!ignoreList.contains(authors[i])) {
+          return ids[i];
+        }
+
+        if (++skipped > MAX_SKIP) {
+          return NOT_INDEXED;
+        }
+      }
+
+      return NOT_FOUND;
+    }
+
+    /**
+     * Индекс первого элемента, не меньшего (date, id)
+     */
+    private int lowerBound(long date, int id) {
+      int low = 0;
+      int high = dates.length;
+
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+
+        if (dates[mid] < date || (dates[mid] == date && ids[mid] < id)) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+
+      return low;
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package ru.org.linux.topic;
 
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -39,6 +40,8 @@ import ru.org.linux.spring.dao.MessageText;
 import ru.org.linux.spring.dao.MsgbaseDao;
 import ru.org.linux.tag.TagRef;
 import ru.org.linux.user.*;
+import ru.org.linux.util.formatter.MessageLinks;
+import ru.org.linux.util.formatter.ToHtmlFormatter;
 import scala.Option;
 
 import javax.annotation.Nonnull;
@@ -91,6 +94,9 @@ public class TopicPrepareService {
 
   @Autowired
   private RemarkDao remarkDao;
+
+  @Autowired
+  private ToHtmlFormatter toHtmlFormatter;
   
   public PreparedTopic prepareTopic(Topic message, User user) {
     return prepareMessage(
@@ -100,7 +106,8 @@ public class TopicPrepareService {
             null,
             user,
             msgbaseDao.getMessageText(message.getId()),
-            null
+            null,
+            toHtmlFormatter.newMessageLinks()
     );
   }
 
@@ -112,7 +119,8 @@ public class TopicPrepareService {
             null,
             user,
             text,
-            null
+            null,
+            toHtmlFormatter.newMessageLinks()
     );
   }
 
@@ -130,7 +138,8 @@ public class TopicPrepareService {
             newPoll != null ? pollPrepareService.preparePollPreview(newPoll) : null,
             null,
             text,
-            image
+            image,
+            toHtmlFormatter.newMessageLinks()
     );
   }
 
@@ -157,7 +166,8 @@ public class TopicPrepareService {
           PreparedPoll poll,
           User user,
           MessageText text,
-          @Nullable Image image) {
+          @Nullable Image image,
+          MessageLinks links) {
     try {
       Group group = groupDao.getGroup(message.getGroupId());
       User author = userDao.getUserCached(message.getUid());
@@ -201,7 +211,7 @@ public class TopicPrepareService {
       String url = siteConfig.getSecureUrlWithoutSlash() + message.getLink();
 
       String processedMessage =
-              textService.renderTopic(text, minimizeCut, !topicPermissionService.followInTopic(message, author), url);
+              textService.renderTopic(text, minimizeCut, !topicPermissionService.followInTopic(message, author), url, links);
 
       PreparedImage preparedImage = null;
 
@@ -267,6 +277,7 @@ public class TopicPrepareService {
     List<PersonalizedPreparedTopic> pm = new ArrayList<>(messages.size());
 
     Map<Integer,MessageText> textMap = loadTexts(messages);
+    MessageLinks links = pageLinks(textMap);
     ImmutableListMultimap<Integer,TagRef> tags = topicTagService.getTagRefs(messages);
 
     for (Topic message : messages) {
@@ -277,7 +288,8 @@ public class TopicPrepareService {
               null,
               user,
               textMap.get(message.getId()),
-              null
+              null,
+              links
       );
 
       TopicMenu topicMenu = getTopicMenu(
@@ -297,6 +309,15 @@ public class TopicPrepareService {
     return msgbaseDao.getMessageText(Lists.transform(messages, Topic::getId));
   }
 
+  /**
+   * Ссылки из всех топиков ленты загружаются вместе при рендеринге первого из них
+   */
+  private MessageLinks pageLinks(Map<Integer, MessageText> texts) {
+    MessageLinks links = toHtmlFormatter.newMessageLinks();
+    links.addTexts(Iterables.transform(texts.values(), MessageText::text));
+    return links;
+  }
+
   /**
    * Подготовка ленты топиков, используется в TopicListController например
    * сообщения рендерятся со свернутым cut
@@ -307,6 +328,7 @@ public class TopicPrepareService {
     List<PreparedTopic> pm = new ArrayList<>(messages.size());
 
     Map<Integer,MessageText> textMap = loadTexts(messages);
+    MessageLinks links = pageLinks(textMap);
     ImmutableListMultimap<Integer,TagRef> tags = topicTagService.getTagRefs(messages);
 
     for (Topic message : messages) {
@@ -317,7 +339,8 @@ public class TopicPrepareService {
               null,
               null,
               textMap.get(message.getId()),
-              null
+              null,
+              links
       );
 
       pm.add(preparedMessage);
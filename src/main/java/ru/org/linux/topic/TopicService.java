@@ -36,6 +36,7 @@ import ru.org.linux.site.ScriptErrorException;
 import ru.org.linux.spring.dao.DeleteInfoDao;
 import ru.org.linux.spring.dao.MessageText;
 import ru.org.linux.tag.TagName;
+import ru.org.linux.tracker.TrackerIndex;
 import ru.org.linux.user.*;
 import ru.org.linux.util.LorHttpUtils;
 
@@ -85,6 +86,12 @@ public class TopicService {
   @Autowired
   private MessageTextService textService;
 
+  @Autowired
+  private TrackerIndex trackerIndex;
+
+  @Autowired
+  private MemoriesDao memoriesDao;
+
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
   public int addMessage(
           HttpServletRequest request,
@@ -103,6 +110,9 @@ public class TopicService {
             group
     );
 
+    // триггер topins добавляет автора в отслеживающие топик
+    memoriesDao.userMemoriesChanged(user.getId());
+
     Section section = sectionService.getSection(group.getSectionId());
 
     if (section.isImagepost() && imagePreview == null) {
@@ -197,6 +207,7 @@ public class TopicService {
     if (deleted) {
       deleteInfoDao.insert(mid, moderator, reason, bonus);
       userEventService.processTopicDeleted(ImmutableList.of(mid));
+      trackerIndex.topicChanged(mid);
     }
 
     return deleted;
@@ -237,6 +248,7 @@ public class TopicService {
     }
 
     userEventService.processTopicDeleted(deletedTopics);
+    trackerIndex.topicsChanged(deletedTopics);
 
     return deletedTopics;
   }
@@ -297,6 +309,8 @@ public class TopicService {
       commit(oldMsg, user, bonus, editorBonus);
     }
 
+    trackerIndex.topicChanged(oldMsg.getId());
+
     if (modified) {
       logger.info("сообщение " + oldMsg.getId() + " исправлено " + user.getNick());
     }
@@ -0,0 +1,243 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.tracker;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.org.linux.tracker.TrackerTopic.TrackerComment;
+import ru.org.linux.util.StringUtil;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * Загрузка данных для индекса трекера
+ */
+@Repository
+public class TrackerDao {
+  /**
+   * Сколько последних комментариев топика хранить в индексе
+   */
+  static final int MAX_COMMENTS = 20;
+
+  private static final int CHUNK_SIZE = 1000;
+
+  private static final String queryTopics =
+      "SELECT t.id, t.userid, t.lastmod, t.postdate, t.stat1, t.title, t.resolved, t.sticky, " +
+        "t.moderate, g.id AS gid, g.title AS gtitle, g.urlname, g.section, sections.moderate AS smod " +
+      "FROM topics AS t, groups AS g, sections " +
+      "WHERE t.groupid=g.id AND g.section=sections.id AND NOT t.deleted AND NOT t.draft " +
+        "AND (t.lastmod > :since OR t.postdate > :since) ";
+
+  private static final String queryComments =
+      "SELECT topic, id, userid, postdate, cnt, ARRAY(SELECT get_branch_authors(id)) AS authors FROM (" +
+        "SELECT topic, id, userid, postdate, " +
+          "row_number() OVER (PARTITION BY topic ORDER BY postdate DESC) AS rn, " +
+          "count(*) OVER (PARTITION BY topic) AS cnt " +
+        "FROM comments WHERE NOT deleted AND postdate > :since AND topic IN (:ids)) AS c " +
+      "WHERE rn <= :limit ORDER BY topic, postdate DESC";
+
+  private static final String queryTags =
+      "SELECT tags.msgid, tags_values.value FROM tags, tags_values " +
+      "WHERE tags.msgid IN (:ids) AND tags_values.id=tags.tagid ORDER BY value";
+
+  private NamedParameterJdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public void setDataSource(DataSource ds) {
+    jdbcTemplate = new NamedParameterJdbcTemplate(ds);
+  }
+
+  /**
+   * Загрузить топики, активные после указанной даты
+   *
+   * @param since начало окна индекса
+   * @param ids загрузить только указанные топики; null - все активные
+   * @return топики по id; удаленные и вышедшие из окна топики отсутствуют
+   */
+  public Map<Integer, TrackerTopic> load(Date since, @Nullable Collection<Integer> ids) {
+    Map<Integer, TrackerTopic> result = new HashMap<>();
+
+    if (ids == null) {
+      loadChunk(since, null, result);
+    } else {
+      for (List<Integer> chunk : Iterables.partition(ids, CHUNK_SIZE)) {
+        loadChunk(since, chunk, result);
+      }
+    }
+
+    return result;
+  }
+
+  private void loadChunk(Date since, @Nullable List<Integer> ids, Map<Integer, TrackerTopic> result) {
+    MapSqlParameterSource params = new MapSqlParameterSource();
+    params.addValue("since", since);
+
+    List<TopicRow> topics = jdbcTemplate.query(
+            ids != null ? queryTopics + "AND t.id IN (:ids)" : queryTopics,
+            params.addValue("ids", ids),
+            (rs, rowNum) -> new TopicRow(
+                    rs.getInt("id"),
+                    rs.getInt("userid"),
+                    rs.getTimestamp("lastmod"),
+                    rs.getTimestamp("postdate"),
+                    rs.getInt("stat1"),
+                    rs.getInt("gid"),
+                    rs.getString("gtitle"),
+                    rs.getString("urlname"),
+                    rs.getInt("section"),
+                    StringUtil.makeTitle(rs.getString("title")),
+                    rs.getBoolean("resolved"),
+                    rs.getBoolean("sticky"),
+                    rs.getBoolean("smod") && !rs.getBoolean("moderate")
+            )
+    );
+
+    for (List<TopicRow> chunk : Iterables.partition(topics, CHUNK_SIZE)) {
+      List<Integer> topicIds = new ArrayList<>(chunk.size());
+
+      for (TopicRow row : chunk) {
+        topicIds.add(row.msgid);
+      }
+
+      ListMultimap<Integer, TrackerComment> comments = ArrayListMultimap.create();
+      Map<Integer, Integer> commentCount = new HashMap<>();
+
+      jdbcTemplate.query(queryComments, new MapSqlParameterSource()
+              .addValue("since", since)
+              .addValue("ids", topicIds)
+              .addValue("limit", MAX_COMMENTS), rs -> {
+        Integer[] authors = (Integer[]) rs.getArray("authors").getArray();
+
+        comments.put(rs.getInt("topic"), new TrackerComment(
+                rs.getInt("id"),
+                rs.getInt("userid"),
+                rs.getTimestamp("postdate"),
+                ImmutableSet.copyOf(authors)
+        ));
+
+        commentCount.put(rs.getInt("topic"), rs.getInt("cnt"));
+      });
+
+      ListMultimap<Integer, String> tags = ArrayListMultimap.create();
+
+      jdbcTemplate.query(queryTags, new MapSqlParameterSource("ids", topicIds), rs -> {
+        tags.put(rs.getInt("msgid"), rs.getString("value"));
+      });
+
+      for (TopicRow row : chunk) {
+        List<TrackerComment> topicComments = comments.get(row.msgid);
+
+        result.put(row.msgid, new TrackerTopic(
+                row.msgid, row.author, row.lastmod, row.postdate, row.stat1,
+                row.groupId, row.groupTitle, row.groupUrlName, row.section, row.title,
+                row.resolved, row.sticky, row.uncommited,
+                ImmutableList.copyOf(tags.get(row.msgid)),
+                ImmutableList.copyOf(topicComments),
+                commentCount.getOrDefault(row.msgid, 0) > topicComments.size()
+        ));
+      }
+    }
+  }
+
+  /**
+   * Топики, измененные после указанного времени
+   *
+   * @param since время последнего просмотренного изменения
+   * @return id топиков и новое время последнего изменения
+   */
+  public Changes changedSince(Timestamp since) {
+    List<Integer> ids = new ArrayList<>();
+    Timestamp[] last = { since };
+
+    jdbcTemplate.query(
+            "SELECT id, lastmod FROM topics WHERE lastmod > :since",
+            new MapSqlParameterSource("since", since),
+            rs -> {
+              ids.add(rs.getInt("id"));
+
+              Timestamp lastmod = rs.getTimestamp("lastmod");
+
+              if (lastmod.after(last[0])) {
+                last[0] = lastmod;
+              }
+            }
+    );
+
+    return new Changes(ids, last[0]);
+  }
+
+  public static class Changes {
+    private final List<Integer> ids;
+    private final Timestamp lastmod;
+
+    Changes(List<Integer> ids, Timestamp lastmod) {
+      this.ids = ids;
+      this.lastmod = lastmod;
+    }
+
+    public List<Integer> getIds() {
+      return ids;
+    }
+
+    public Timestamp getLastmod() {
+      return lastmod;
+    }
+  }
+
+  private static class TopicRow {
+    private final int msgid;
+    private final int author;
+    private final Timestamp lastmod;
+    private final Timestamp postdate;
+    private final int stat1;
+    private final int groupId;
+    private final String groupTitle;
+    private final String groupUrlName;
+    private final int section;
+    private final String title;
+    private final boolean resolved;
+    private final boolean sticky;
+    private final boolean uncommited;
+
+    private TopicRow(int msgid, int author, Timestamp lastmod, Timestamp postdate, int stat1, int groupId,
+                     String groupTitle, String groupUrlName, int section, String title, boolean resolved,
+                     boolean sticky, boolean uncommited) {
+      this.msgid = msgid;
+      this.author = author;
+      this.lastmod = lastmod;
+      this.postdate = postdate;
+      this.stat1 = stat1;
+      this.groupId = groupId;
+      this.groupTitle = groupTitle;
+      this.groupUrlName = groupUrlName;
+      this.section = section;
+      this.title = title;
+      this.resolved = resolved;
+      this.sticky = sticky;
+      this.uncommited = uncommited;
+    }
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.tracker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.org.linux.group.TopicsListItem;
+import ru.org.linux.topic.Topic;
+import ru.org.linux.topic.TopicTagService;
+import ru.org.linux.tracker.TrackerTopic.TrackerComment;
+import ru.org.linux.user.*;
+
+import javax.annotation.Nullable;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Индекс недавно активных топиков для трекера.
+ *
+ * Индекс полностью загружается при старте и периодически перезагружается,
+ * между перезагрузками обновляются только измененные топики (по lastmod и по
+ * явным уведомлениям {@link #topicChanged(int)}). Все изменения индекса выполняются
+ * в потоке планировщика, запросы читают его без блокировок.
+ *
+ * Пока индекс не загружен или запрос выходит за окно индекса, используется SQL.
+ */
+@Component
+public class TrackerIndex {
+  private static final Logger logger = LoggerFactory.getLogger(TrackerIndex.class);
+
+  /**
+   * Окно индекса; трекер показывает последние 4 дня
+   */
+  private static final int WINDOW_DAYS = 5;
+
+  private static final int REFRESH_DELAY = 5 * 1000;
+  private static final int FULL_RELOAD_INTERVAL = 30 * 60 * 1000;
+
+  /**
+   * lastmod выставляется до фиксации транзакции, поэтому изменения перечитываются с запасом
+   */
+  private static final int LASTMOD_SLACK = 60 * 1000;
+
+  @Autowired
+  private TrackerDao trackerDao;
+
+  @Autowired
+  private UserService userService;
+
+  @Autowired
+  private IgnoreListDao ignoreListDao;
+
+  @Autowired
+  private UserTagDao userTagDao;
+
+  /**
+   * Топики индекса; при полной перезагрузке заменяется целиком
+   */
+  private volatile Map<Integer, TrackerTopic> topics = new ConcurrentHashMap<>();
+  private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+
+  private volatile Date windowStart;
+  private Timestamp lastSeenLastmod;
+  private long lastFullReload;
+
+  /**
+   * Отметить топик как измененный; индекс обновится после фиксации транзакции
+   *
+   * @param topicId id топика
+   */
+  public void topicChanged(int topicId) {
+    dirty.add(topicId);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          dirty.add(topicId);
+        }
+      });
+    }
+  }
+
+  public void topicsChanged(Collection<Integer> topicIds) {
+    topicIds.forEach(this::topicChanged);
+  }
+
+  @Scheduled(fixedDelay = REFRESH_DELAY)
+  public synchronized void refresh() {
+    try {
+      if (windowStart == null || System.currentTimeMillis() - lastFullReload > FULL_RELOAD_INTERVAL) {
+        fullReload();
+      } else {
+        incrementalUpdate();
+      }
+    } catch (RuntimeException ex) {
+      logger.warn("Tracker index refresh failed", ex);
+    }
+  }
+
+  private void fullReload() {
+    Date start = DateTime.now().minusDays(WINDOW_DAYS).toDate();
+    Timestamp lastmod = lastSeenLastmod != null ? lastSeenLastmod : new Timestamp(start.getTime());
+
+    dirty.clear();
+
+    Map<Integer, TrackerTopic> loaded = trackerDao.load(start, null);
+
+    // новый индекс подменяет старый целиком, чтобы запросы не видели его частично очищенным
+    topics = new ConcurrentHashMap<>(loaded);
+
+    for (TrackerTopic topic : loaded.values()) {
+      if (topic.getLastmod().after(lastmod)) {
+        lastmod = topic.getLastmod();
+      }
+    }
+
+    lastSeenLastmod = lastmod;
+    lastFullReload = System.currentTimeMillis();
+
+    if (windowStart == null) {
+      logger.info("Tracker index loaded: " + loaded.size() + " topics");
+    }
+
+    windowStart = start;
+
+    incrementalUpdate();
+  }
+
+  private void incrementalUpdate() {
+    Date start = DateTime.now().minusDays(WINDOW_DAYS).toDate();
+
+    TrackerDao.Changes changes =
+            trackerDao.changedSince(new Timestamp(lastSeenLastmod.getTime() - LASTMOD_SLACK));
+
+    Set<Integer> ids = new HashSet<>(changes.getIds());
+
+    for (Iterator<Integer> it = dirty.iterator(); it.hasNext(); ) {
+      ids.add(it.next());
+      it.remove();
+    }
+
+    if (!ids.isEmpty()) {
+      Map<Integer, TrackerTopic> loaded = trackerDao.load(start, ids);
+
+      for (Integer id : ids) {
+        TrackerTopic topic = loaded.get(id);
+
+        if (topic != null) {
+          topics.put(id, topic);
+        } else {
+          topics.remove(id);
+        }
+      }
+    }
+
+    if (changes.getLastmod().after(lastSeenLastmod)) {
+      lastSeenLastmod = changes.getLastmod();
+    }
+  }
+
+  /**
+   * Получить трекер из индекса
+   *
+   * @param filter фильтр топиков (группы, разделы)
+   * @param currentUser текущий пользователь
+   * @param startDate начало периода трекера
+   * @return список топиков или null, если запрос нельзя обслужить из индекса
+   */
+  @Nullable
+  public List<TopicsListItem> getTrackerTopics(Predicate<TrackerTopic> filter, @Nullable User currentUser,
+                                               Date startDate, int count, int offset, int messagesInPage) {
+    Date start = windowStart;
+
+    if (start == null || startDate.before(start)) {
+      return null;
+    }
+
+    Set<Integer> ignoreList;
+    Set<String> ignoredTags;
+    Set<String> favoriteTags;
+
+    if (currentUser != null) {
+      ignoreList = ignoreListDao.get(currentUser);
+      ignoredTags = ImmutableSet.copyOf(userTagDao.getTags(currentUser.getId(), false));
+      favoriteTags = ImmutableSet.copyOf(userTagDao.getTags(currentUser.getId(), true));
+    } else {
+      ignoreList = ImmutableSet.of();
+      ignoredTags = ImmutableSet.of();
+      favoriteTags = ImmutableSet.of();
+    }
+
+    boolean showUncommited = currentUser != null && (currentUser.isModerator() || currentUser.isCorrector());
+
+    List<Row> rows = new ArrayList<>();
+
+    for (TrackerTopic topic : topics.values()) {
+      if (!filter.test(topic)) {
+        continue;
+      }
+
+      if (topic.isUncommited() && !showUncommited) {
+        continue;
+      }
+
+      if (ignoreList.contains(topic.getAuthor())) {
+        continue;
+      }
+
+      if (!ignoredTags.isEmpty() && hasAny(topic.getTags(), ignoredTags) && !hasAny(topic.getTags(), favoriteTags)) {
+        continue;
+      }
+
+      TrackerComment lastComment = null;
+      boolean found = false;
+
+      for (TrackerComment comment : topic.getComments()) {
+        if (ignoreList.isEmpty() || Collections.disjoint(comment.getBranchAuthors(), ignoreList)) {
+          lastComment = comment;
+          found = true;
+          break;
+        }
+      }
+
+      if (!found && topic.isTruncated()) {
+        // последний видимый комментарий старше сохраненных в индексе
+        return null;
+      }
+
+      if (lastComment != null && lastComment.getPostdate().after(startDate) && topic.getLastmod().after(startDate)) {
+        rows.add(new Row(topic, lastComment, lastComment.getPostdate()));
+      } else if (topic.getPostdate().after(startDate)) {
+        rows.add(new Row(topic, null, topic.getPostdate()));
+      }
+    }
+
+    rows.sort(Comparator.comparing((Row row) -> row.postdate).reversed());
+
+    List<Row> page = rows.subList(Math.min(offset, rows.size()), Math.min(offset + count, rows.size()));
+
+    Set<Integer> userIds = new HashSet<>();
+
+    for (Row row : page) {
+      userIds.add(row.topic.getAuthor());
+
+      if (row.comment != null) {
+        userIds.add(row.comment.getUserid());
+      }
+    }
+
+    Map<Integer, User> users = userService.getUsersCachedMap(userIds);
+
+    List<TopicsListItem> result = new ArrayList<>(page.size());
+
+    for (Row row : page) {
+      result.add(makeItem(row, users, messagesInPage));
+    }
+
+    return result;
+  }
+
+  private static boolean hasAny(List<String> tags, Set<String> set) {
+    for (String tag : tags) {
+      if (set.contains(tag)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static TopicsListItem makeItem(Row row, Map<Integer, User> users, int messagesInPage) {
+    TrackerTopic topic = row.topic;
+
+    User author = users.get(topic.getAuthor());
+    User lastCommentBy = row.comment != null ? users.get(row.comment.getUserid()) : null;
+
+    ImmutableList<String> tags = topic.getTags().size() > TopicTagService.MaxTagsInTitle() ?
+            topic.getTags().subList(0, TopicTagService.MaxTagsInTitle()) : topic.getTags();
+
+    return new TopicsListItem(author, topic.getMsgid(), topic.getLastmod(), topic.getStat1(),
+            topic.getGroupId(), topic.getGroupTitle(), topic.getTitle(),
+            row.comment != null ? row.comment.getId() : 0, lastCommentBy, topic.isResolved(),
+            topic.getSection(), topic.getGroupUrlName(), row.postdate, topic.isUncommited(),
+            Topic.getPageCount(topic.getStat1(), messagesInPage), tags, false, topic.isSticky());
+  }
+
+  private static class Row {
+    private final TrackerTopic topic;
+    private final TrackerComment comment;
+    private final Timestamp postdate;
+
+    private Row(TrackerTopic topic, @Nullable TrackerComment comment, Timestamp postdate) {
+      this.topic = topic;
+      this.comment = comment;
+      this.postdate = postdate;
+    }
+  }
+}
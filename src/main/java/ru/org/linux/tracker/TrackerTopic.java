@@ -0,0 +1,171 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.tracker;
+
+import com.google.common.collect.ImmutableList;
+
+import java.sql.Timestamp;
+import java.util.Set;
+
+/**
+ * Состояние топика в индексе трекера
+ */
+public class TrackerTopic {
+  private final int msgid;
+  private final int author;
+  private final Timestamp lastmod;
+  private final Timestamp postdate;
+  private final int stat1;
+  private final int groupId;
+  private final String groupTitle;
+  private final String groupUrlName;
+  private final int section;
+  private final String title;
+  private final boolean resolved;
+  private final boolean sticky;
+  private final boolean uncommited;
+  private final ImmutableList<String> tags;
+
+  /**
+   * последние неудаленные комментарии в окне индекса, от новых к старым
+   */
+  private final ImmutableList<TrackerComment> comments;
+
+  /**
+   * в окне индекса есть комментарии, не попавшие в comments
+   */
+  private final boolean truncated;
+
+  public TrackerTopic(int msgid, int author, Timestamp lastmod, Timestamp postdate, int stat1,
+                      int groupId, String groupTitle, String groupUrlName, int section, String title,
+                      boolean resolved, boolean sticky, boolean uncommited, ImmutableList<String> tags,
+                      ImmutableList<TrackerComment> comments, boolean truncated) {
+    this.msgid = msgid;
+    this.author = author;
+    this.lastmod = lastmod;
+    this.postdate = postdate;
+    this.stat1 = stat1;
+    this.groupId = groupId;
+    this.groupTitle = groupTitle;
+    this.groupUrlName = groupUrlName;
+    this.section = section;
+    this.title = title;
+    this.resolved = resolved;
+    this.sticky = sticky;
+    this.uncommited = uncommited;
+    this.tags = tags;
+    this.comments = comments;
+    this.truncated = truncated;
+  }
+
+  public int getMsgid() {
+    return msgid;
+  }
+
+  public int getAuthor() {
+    return author;
+  }
+
+  public Timestamp getLastmod() {
+    return lastmod;
+  }
+
+  public Timestamp getPostdate() {
+    return postdate;
+  }
+
+  public int getStat1() {
+    return stat1;
+  }
+
+  public int getGroupId() {
+    return groupId;
+  }
+
+  public String getGroupTitle() {
+    return groupTitle;
+  }
+
+  public String getGroupUrlName() {
+    return groupUrlName;
+  }
+
+  public int getSection() {
+    return section;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public boolean isResolved() {
+    return resolved;
+  }
+
+  public boolean isSticky() {
+    return sticky;
+  }
+
+  public boolean isUncommited() {
+    return uncommited;
+  }
+
+  public ImmutableList<String> getTags() {
+    return tags;
+  }
+
+  public ImmutableList<TrackerComment> getComments() {
+    return comments;
+  }
+
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  public static class TrackerComment {
+    private final int id;
+    private final int userid;
+    private final Timestamp postdate;
+
+    /**
+     * авторы ветки комментария (см. get_branch_authors)
+     */
+    private final Set<Integer> branchAuthors;
+
+    public TrackerComment(int id, int userid, Timestamp postdate, Set<Integer> branchAuthors) {
+      this.id = id;
+      this.userid = userid;
+      this.postdate = postdate;
+      this.branchAuthors = branchAuthors;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public int getUserid() {
+      return userid;
+    }
+
+    public Timestamp getPostdate() {
+      return postdate;
+    }
+
+    public Set<Integer> getBranchAuthors() {
+      return branchAuthors;
+    }
+  }
+}
@@ -110,10 +110,9 @@ public class DeregisterController {
     // Move messages
 /*
     List<Integer> movedComments = commentDao.getAllByUser(user);
-    List<Integer> movedTopics = topicDao.getAllByUser(user);
-
-    userDao.moveMessages(user.getId(), userDao.findUserId("Deleted"));
+    List<Integer> movedTopics = userDao.moveMessages(user.getId(), userDao.findUserId("Deleted"));
 
+    movedTopics.forEach(navigationIndex::topicChanged);
     indexService.reindexComments(movedComments);
     indexService.reindexTopics(movedTopics);
 */
@@ -15,56 +15,86 @@
 
 package ru.org.linux.user;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import ru.org.linux.site.DefaultProfile;
+import ru.org.linux.util.InvalidationStamps;
 import ru.org.linux.util.ProfileHashtable;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.sql.DataSource;
 import javax.validation.constraints.NotNull;
 import java.sql.Array;
 import java.sql.PreparedStatement;
 import java.sql.Types;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Repository
 public class ProfileDao {
+  private static final int CACHE_SIZE = 10000;
+
   private JdbcTemplate jdbcTemplate;
 
+  private final Cache<Integer, StoredProfile> cache =
+          CacheBuilder.newBuilder()
+                  .maximumSize(CACHE_SIZE)
+                  .expireAfterWrite(1, TimeUnit.HOURS)
+                  .build();
+
+  private final InvalidationStamps stamps = new InvalidationStamps(4096);
+
   @Autowired
   private void setDataSource(DataSource ds) {
     jdbcTemplate = new JdbcTemplate(ds);
   }
 
+  /**
+   * Прочитать настройки пользователя. Сохраненные настройки кешируются,
+   * каждый вызов возвращает новый объект Profile.
+   */
   @Nonnull
   public Profile readProfile(@NotNull User user) {
-    List<Profile> profiles = jdbcTemplate.query(
+    StoredProfile stored = cache.getIfPresent(user.getId());
+
+    if (stored == null || stored.stamp != stamps.get(user.getId())) {
+      stored = loadProfile(user.getId());
+      cache.put(user.getId(), stored);
+    }
+
+    return new Profile(
+            new ProfileHashtable(DefaultProfile.getDefaultProfile(), new HashMap<>(stored.settings)),
+            stored.boxes != null ? new ArrayList<>(stored.boxes) : null
+    );
+  }
+
+  private StoredProfile loadProfile(int id) {
+    long stamp = stamps.get(id);
+
+    List<StoredProfile> profiles = jdbcTemplate.query(
             "SELECT settings, main FROM user_settings WHERE id=?",
             (resultSet, i) -> {
               Array boxes = resultSet.getArray("main");
 
               if (boxes != null) {
-                return new Profile(
-                        new ProfileHashtable(DefaultProfile.getDefaultProfile(), (Map<String, String>) resultSet.getObject("settings")),
+                return new StoredProfile(
+                        stamp,
+                        (Map<String, String>) resultSet.getObject("settings"),
                         Arrays.asList((String[]) boxes.getArray())
                 );
               } else {
-                return new Profile(
-                        new ProfileHashtable(DefaultProfile.getDefaultProfile(), (Map<String, String>) resultSet.getObject("settings")),
-                        null
-                );
+                return new StoredProfile(stamp, (Map<String, String>) resultSet.getObject("settings"), null);
               }
             },
-            user.getId()
+            id
     );
 
     if (profiles.isEmpty()) {
-      return new Profile(new ProfileHashtable(DefaultProfile.getDefaultProfile(), new HashMap<>()), null);
+      return new StoredProfile(stamp, new HashMap<>(), null);
     } else {
       return profiles.get(0);
     }
@@ -72,9 +102,22 @@ public class ProfileDao {
 
   public void deleteProfile(@Nonnull User user) {
     jdbcTemplate.update("DELETE FROM user_settings WHERE id=?", user.getId());
+    invalidate(user.getId());
+  }
+
+  private void invalidate(int id) {
+    stamps.invalidate(id, () -> cache.invalidate(id));
   }
 
   public void writeProfile(@Nonnull final User user, @Nonnull final Profile profile) {
+    try {
+      doWriteProfile(user, profile);
+    } finally {
+      invalidate(user.getId());
+    }
+  }
+
+  private void doWriteProfile(final User user, final Profile profile) {
     String[] boxlets = null;
 
     List<String> customBoxlets = profile.getCustomBoxlets();
@@ -119,4 +162,17 @@ public class ProfileDao {
       );
     }
   }
+
+  private static class StoredProfile {
+    private final long stamp;
+    private final Map<String, String> settings;
+    @Nullable
+    private final List<String> boxes;
+
+    private StoredProfile(long stamp, Map<String, String> settings, @Nullable List<String> boxes) {
+      this.stamp = stamp;
+      this.settings = settings;
+      this.boxes = boxes;
+    }
+  }
 }
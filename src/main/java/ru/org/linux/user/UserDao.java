@@ -15,11 +15,14 @@
 
 package ru.org.linux.user;
 
+import com.google.common.cache.CacheBuilder;
 import org.jasypt.util.password.BasicPasswordEncryptor;
 import org.jasypt.util.password.PasswordEncryptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
@@ -28,6 +31,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import ru.org.linux.util.InvalidationStamps;
 import ru.org.linux.util.StringUtil;
 import ru.org.linux.util.URLUtil;
 import scala.Tuple2;
@@ -38,7 +42,8 @@ import javax.mail.internet.InternetAddress;
 import javax.sql.DataSource;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Repository
 public class UserDao {
@@ -49,11 +54,25 @@ public class UserDao {
   @Autowired
   private UserLogDao userLogDao;
 
+  @Autowired
+  private CacheManager cacheManager;
+
+  private static final int TOKEN_GENERATION_CACHE_SIZE = 10000;
+
+  private final com.google.common.cache.Cache<String, TokenGeneration> tokenGenerationCache =
+          CacheBuilder.newBuilder()
+                  .maximumSize(TOKEN_GENERATION_CACHE_SIZE)
+                  .expireAfterWrite(1, TimeUnit.HOURS)
+                  .build();
+
+  private final InvalidationStamps tokenGenerationStamps = new InvalidationStamps(4096);
+
   /**
    * изменение score пользователю
    */
   private static final String queryChangeScore = "UPDATE users SET score=score+? WHERE id=?";
   private static final String queryUserById = "SELECT id,nick,score,max_score,candel,canmod,corrector,passwd,blocked,activated,photo,email,name,unread_events,style FROM users where id=?";
+  private static final String queryUsersByIds = "SELECT id,nick,score,max_score,candel,canmod,corrector,passwd,blocked,activated,photo,email,name,unread_events,style FROM users where id = ANY(?)";
   private static final String queryUserIdByNick = "SELECT id FROM users where nick=?";
   private static final String updateUserStyle = "UPDATE users SET style=? WHERE id=?";
 
@@ -104,6 +123,45 @@ public class UserDao {
     return getUserInternal(id);
   }
 
+  /**
+   * Загружает пользователей через кеш "Users"; все отсутствующие в кеше
+   * пользователи загружаются одним запросом и помещаются в кеш.
+   *
+   * @param ids идентификаторы пользователей
+   * @return пользователи по id, не найденных пользователей в ответе нет
+   */
+  public Map<Integer, User> getUsersCached(Collection<Integer> ids) {
+    Cache cache = cacheManager.getCache("Users");
+
+    Map<Integer, User> result = new HashMap<>(ids.size());
+    Set<Integer> missing = new HashSet<>();
+
+    for (Integer id : ids) {
+      Cache.ValueWrapper cached = cache.get(id);
+
+      if (cached != null) {
+        result.put(id, (User) cached.get());
+      } else {
+        missing.add(id);
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      List<User> loaded = jdbcTemplate.query(
+              queryUsersByIds,
+              ps -> ps.setArray(1, ps.getConnection().createArrayOf("int", missing.toArray())),
+              (rs, rowNum) -> new User(rs)
+      );
+
+      for (User user : loaded) {
+        cache.put(user.getId(), user);
+        result.put(user.getId(), user);
+      }
+    }
+
+    return result;
+  }
+
   /**
    * Загружает пользователя из БД не используя кеш (всегда обновляет кеш).
    * Метод используется там, где нужно проверить права пользователя, совершить какой-то
@@ -515,26 +573,91 @@ public class UserDao {
     }
   }
 
+  /**
+   * Обновить время последнего входа для нескольких пользователей одним запросом.
+   * Время обновляется только если прошло больше часа с предыдущего входа.
+   *
+   * @param lastlogin время последнего запроса пользователя по его id
+   */
+  public void updateLastlogin(Map<Integer, Timestamp> lastlogin) {
+    Integer[] ids = new Integer[lastlogin.size()];
+    Timestamp[] times = new Timestamp[lastlogin.size()];
+
+    int i = 0;
+    for (Map.Entry<Integer, Timestamp> entry : lastlogin.entrySet()) {
+      ids[i] = entry.getKey();
+      times[i] = entry.getValue();
+      i++;
+    }
+
+    jdbcTemplate.update(
+            "UPDATE users SET lastlogin=v.ts FROM unnest(?::int[], ?::timestamptz[]) AS v(id, ts) " +
+                    "WHERE users.id=v.id AND v.ts-users.lastlogin > '1 hour'::interval",
+            ps -> {
+              ps.setArray(1, ps.getConnection().createArrayOf("int", ids));
+              ps.setArray(2, ps.getConnection().createArrayOf("timestamptz", times));
+            }
+    );
+  }
+
   /**
    * Sign out from all sessions
    * @param user logged user
    */
   public void unloginAllSessions(User user) {
     jdbcTemplate.update("UPDATE users SET token_generation=token_generation+1 WHERE id=?", user.getId());
+
+    String nick = user.getNick();
+    tokenGenerationStamps.invalidate(nick, () -> tokenGenerationCache.invalidate(nick));
   }
 
+  /**
+   * Поколение remember-me токенов пользователя; кешируется, так как проверяется
+   * при каждом автоматическом входе
+   *
+   * @param nick имя пользователя
+   */
   public int getTokenGeneration(String nick) {
-    return jdbcTemplate.queryForObject("SELECT token_generation FROM users WHERE nick=?", Integer.class, nick);
+    TokenGeneration cached = tokenGenerationCache.getIfPresent(nick);
+
+    if (cached != null && cached.stamp == tokenGenerationStamps.get(nick)) {
+      return cached.generation;
+    }
+
+    long stamp = tokenGenerationStamps.get(nick);
+
+    int generation = jdbcTemplate.queryForObject("SELECT token_generation FROM users WHERE nick=?", Integer.class, nick);
+
+    tokenGenerationCache.put(nick, new TokenGeneration(stamp, generation));
+
+    return generation;
+  }
+
+  private static class TokenGeneration {
+    private final long stamp;
+    private final int generation;
+
+    private TokenGeneration(long stamp, int generation) {
+      this.stamp = stamp;
+      this.generation = generation;
+    }
   }
 
   /**
    * Move all comments and topics to another user
+   *
+   * @return id перенесенных топиков
    */
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
-  public void moveMessages(int user, int targetUser) {
+  public List<Integer> moveMessages(int user, int targetUser) {
     jdbcTemplate.update("UPDATE comments SET userid=? WHERE userid=?", targetUser, user);
     jdbcTemplate.update("UPDATE comments SET editor_id=? WHERE editor_id=?", targetUser, user);
     jdbcTemplate.update("UPDATE edit_info SET editor=? WHERE editor=?", targetUser, user);
-    jdbcTemplate.update("UPDATE topics SET userid=? WHERE userid=?", targetUser, user);
+    return jdbcTemplate.queryForList(
+            "UPDATE topics SET userid=? WHERE userid=? RETURNING id",
+            Integer.class,
+            targetUser,
+            user
+    );
   }
 }
@@ -15,7 +15,6 @@
 
 package ru.org.linux.user;
 
-import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
@@ -31,6 +30,7 @@ import ru.org.linux.util.StringUtil;
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -73,8 +73,9 @@ public class UserEventDao {
       " ORDER BY id DESC LIMIT ?" +
       " OFFSET ?";
 
+  private static final int BATCH_SIZE = 5000;
+
   private SimpleJdbcInsert insert;
-  private SimpleJdbcInsert insertTopicUsersNotified;
 
   private JdbcTemplate jdbcTemplate;
   private NamedParameterJdbcTemplate namedJdbcTemplate;
@@ -86,10 +87,6 @@ public class UserEventDao {
     insert.setTableName("user_events");
     insert.usingColumns("userid", "type", "private", "message_id", "comment_id", "message");
 
-    insertTopicUsersNotified = new SimpleJdbcInsert(ds);
-    insertTopicUsersNotified.setTableName("topic_users_notified");
-    insertTopicUsersNotified.usingColumns("topic", "userid");
-
     jdbcTemplate = new JdbcTemplate(ds);
     namedJdbcTemplate = new NamedParameterJdbcTemplate(ds);
   }
@@ -129,26 +126,71 @@ public class UserEventDao {
     insert.execute(params);
   }
 
-  public void insertTopicNotification(final int topicId, Iterable<Integer> userIds) {
-    @SuppressWarnings("unchecked") Map<String, Object>[] batch = Iterables.toArray(
-            Iterables.transform(
-                    userIds,
-                    new Function<Integer, Map<String, Object>>() {
-                      @Nullable
-                      @Override
-                      public Map<String, Object> apply(Integer userId) {
-                        return ImmutableMap.<String, Object>of("topic", topicId, "userid", userId);
-                      }
-                    }
-            ), Map.class);
-
-    insertTopicUsersNotified.executeBatch(batch);
+  /**
+   * Добавление одинаковых уведомлений нескольким пользователям.
+   * Уведомления вставляются одним запросом на каждые {@link #BATCH_SIZE} пользователей.
+   *
+   * @param eventType тип уведомления
+   * @param userIds   идентификационные номера пользователей
+   * @param isPrivate приватное ли уведомление
+   * @param topicId   идентификационный номер топика (null если нет)
+   * @param commentId идентификационный номер комментария (null если нет)
+   * @param message   дополнительное сообщение уведомления (null если нет)
+   */
+  public void addEvents(
+    String eventType,
+    Collection<Integer> userIds,
+    boolean isPrivate,
+    @Nullable Integer topicId,
+    @Nullable Integer commentId,
+    @Nullable String message
+  ) {
+    for (List<Integer> chunk : Iterables.partition(userIds, BATCH_SIZE)) {
+      jdbcTemplate.update(
+              "INSERT INTO user_events (userid, type, private, message_id, comment_id, message) " +
+                      "SELECT unnest(?::int[]), ?::event_type, ?, ?::int, ?::int, ?::text",
+              ps -> {
+                ps.setArray(1, ps.getConnection().createArrayOf("int", chunk.toArray()));
+                ps.setString(2, eventType);
+                ps.setBoolean(3, isPrivate);
+                ps.setObject(4, topicId, Types.INTEGER);
+                ps.setObject(5, commentId, Types.INTEGER);
+                ps.setString(6, message);
+              }
+      );
+    }
+  }
+
+  public void insertTopicNotification(int topicId, Iterable<Integer> userIds) {
+    for (List<Integer> chunk : Iterables.partition(userIds, BATCH_SIZE)) {
+      jdbcTemplate.update(
+              "INSERT INTO topic_users_notified (topic, userid) SELECT ?, unnest(?::int[])",
+              ps -> {
+                ps.setInt(1, topicId);
+                ps.setArray(2, ps.getConnection().createArrayOf("int", chunk.toArray()));
+              }
+      );
+    }
   }
 
   public List<Integer> getNotifiedUsers(int topicId) {
     return jdbcTemplate.queryForList("SELECT userid FROM topic_users_notified WHERE topic=?", Integer.class, topicId);
   }
 
+  /**
+   * Пользователи, которым триггер event_comment добавил уведомления о новом комментарии
+   * в отслеживаемом топике.
+   *
+   * @param commentId идентификационный номер комментария
+   */
+  public List<Integer> getWatchEventUsers(int commentId) {
+    return jdbcTemplate.queryForList(
+            "SELECT userid FROM user_events WHERE comment_id=? AND type='WATCH'",
+            Integer.class,
+            commentId
+    );
+  }
+
   /**
    * Сброс уведомлений.
    *
@@ -172,6 +214,30 @@ public class UserEventDao {
     );
   }
 
+  /**
+   * Количество непрочитанных уведомлений пользователей
+   *
+   * @param userIds идентификационные номера пользователей
+   * @return id пользователя -> количество уведомлений
+   */
+  public Map<Integer, Integer> getUnreadEventsCount(Collection<Integer> userIds) {
+    Map<Integer, Integer> result = new HashMap<>();
+
+    if (userIds.isEmpty()) {
+      return result;
+    }
+
+    namedJdbcTemplate.query(
+            "SELECT id, unread_events FROM users WHERE id IN (:list)",
+            ImmutableMap.of("list", userIds),
+            rs -> {
+              result.put(rs.getInt("id"), rs.getInt("unread_events"));
+            }
+    );
+
+    return result;
+  }
+
   /**
    * Получение списка первых 20 идентификационных номеров пользователей,
    * количество уведомлений которых превышает максимально допустимое значение.
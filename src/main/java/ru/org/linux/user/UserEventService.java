@@ -15,14 +15,21 @@
 
 package ru.org.linux.user;
 
+import akka.actor.ActorRef;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.org.linux.realtime.RealtimeEventHub;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -36,6 +43,10 @@ public class UserEventService {
   @Autowired
   private UserEventDao userEventDao;
 
+  @Autowired
+  @Qualifier("realtimeHubWS")
+  private ActorRef realtimeHub;
+
   /**
    * Добавление уведомления об упоминании пользователей в комментарии.
    *
@@ -44,16 +55,14 @@ public class UserEventService {
    * @param commentId идентификационный номер комментария
    */
   public void addUserRefEvent(Iterable<User> users, int topicId, int commentId) {
+    List<Integer> userIds = new ArrayList<>();
+
     for (User user : users) {
-      userEventDao.addEvent(
-        REFERENCE.getType(),
-        user.getId(),
-        false,
-        topicId,
-        commentId,
-        null
-      );
+      userIds.add(user.getId());
     }
+
+    userEventDao.addEvents(REFERENCE.getType(), userIds, false, topicId, commentId, null);
+    unreadEventsChanged(userIds);
   }
 
   /**
@@ -65,17 +74,20 @@ public class UserEventService {
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
   public void addUserRefEvent(Iterable<Integer> users, int topicId) {
     userEventDao.insertTopicNotification(topicId, users);
+    List<Integer> userIds = ImmutableList.copyOf(users);
 
-    for (int user : users) {
-      userEventDao.addEvent(
-        REFERENCE.getType(),
-        user,
-        false,
-        topicId,
-        null,
-        null
-      );
-    }
+    userEventDao.addEvents(REFERENCE.getType(), userIds, false, topicId, null, null);
+    unreadEventsChanged(userIds);
+  }
+
+  /**
+   * Оповестить realtime сессии пользователей, отслеживающих топик, о новом комментарии.
+   * Сами уведомления добавляет триггер event_comment при вставке комментария.
+   *
+   * @param commentId идентификационный номер нового комментария
+   */
+  public void watchEventsAdded(int commentId) {
+    unreadEventsChanged(userEventDao.getWatchEventUsers(commentId));
   }
 
   public Set<Integer> getNotifiedUsers(int topicId) {
@@ -98,6 +110,8 @@ public class UserEventService {
       commentId,
       null
     );
+
+    unreadEventsChanged(ImmutableList.of(parentAuthor.getId()));
   }
 
   /**
@@ -108,17 +122,35 @@ public class UserEventService {
    */
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
   public void addUserTagEvent(Iterable<Integer> userIdList, int topicId) {
-    userEventDao.insertTopicNotification(topicId, userIdList);
-
-    for (int userId : userIdList) {
-      userEventDao.addEvent(
-        TAG.getType(),
-        userId,
-        false,
-        topicId,
-        null,
-        null
-      );
+    List<Integer> userIds = ImmutableList.copyOf(userIdList);
+
+    userEventDao.insertTopicNotification(topicId, userIds);
+    userEventDao.addEvents(TAG.getType(), userIds, false, topicId, null, null);
+    unreadEventsChanged(userIds);
+  }
+
+  /**
+   * Отправить новое количество уведомлений в открытые realtime сессии пользователей.
+   * Внутри транзакции отправка выполняется после её фиксации.
+   *
+   * @param userIds пользователи, у которых изменились уведомления
+   */
+  private void unreadEventsChanged(Collection<Integer> userIds) {
+    if (userIds.isEmpty()) {
+      return;
+    }
+
+    RealtimeEventHub.UnreadEventsChanged message = RealtimeEventHub.unreadEventsChanged(userIds);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          realtimeHub.tell(message, ActorRef.noSender());
+        }
+      });
+    } else {
+      realtimeHub.tell(message, ActorRef.noSender());
     }
   }
 
@@ -163,6 +195,7 @@ public class UserEventService {
    */
   public void resetUnreadReplies(User user, int topId) {
     userEventDao.resetUnreadReplies(user.getId(), topId);
+    unreadEventsChanged(ImmutableList.of(user.getId()));
   }
 
   /**
@@ -172,7 +205,10 @@ public class UserEventService {
    */
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
   public void processTopicDeleted(Collection<Integer> msgids) {
-    userEventDao.recalcEventCount(userEventDao.deleteTopicEvents(msgids));
+    List<Integer> users = userEventDao.deleteTopicEvents(msgids);
+
+    userEventDao.recalcEventCount(users);
+    unreadEventsChanged(users);
   }
 
   /**
@@ -182,6 +218,9 @@ public class UserEventService {
    */
   @Transactional(rollbackFor = Exception.class, propagation = Propagation.REQUIRED)
   public void processCommentsDeleted(List<Integer> msgids) {
-    userEventDao.recalcEventCount(userEventDao.deleteCommentEvents(msgids));
+    List<Integer> users = userEventDao.deleteCommentEvents(msgids);
+
+    userEventDao.recalcEventCount(users);
+    unreadEventsChanged(users);
   }
 }
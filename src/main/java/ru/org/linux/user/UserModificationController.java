@@ -151,7 +151,8 @@ public class UserModificationController {
   }
 
   /**
-   * Контроллер блокирования и полного удаления комментариев и топиков пользователя
+   * Контроллер блокирования и полного удаления комментариев и топиков пользователя.
+   * Для уже заблокированного пользователя удаляет оставшиеся сообщения.
    * @param request http запрос
    * @param user блокируемый пользователь
    * @return возвращаемся в профиль
@@ -167,15 +168,15 @@ public class UserModificationController {
       throw new AccessViolationException("Пользователя " + user.getNick() + " нельзя заблокировать");
     }
 
-    if (user.isBlocked()) {
-      throw new UserErrorException("Пользователь уже блокирован");
-    }
-
     Map<String, Object> params = new HashMap<>();
     params.put("message", "Удалено");
     DeleteCommentResult deleteCommentResult = commentService.deleteAllCommentsAndBlock(user, moderator, reason);
 
-    logger.info("User " + user.getNick() + " blocked by " + moderator.getNick());
+    if (user.isBlocked()) {
+      logger.info("Messages of blocked user " + user.getNick() + " deleted by " + moderator.getNick());
+    } else {
+      logger.info("User " + user.getNick() + " blocked by " + moderator.getNick());
+    }
 
     params.put("bigMessage",
             "Удалено комментариев: "+deleteCommentResult.getDeletedCommentIds().size()+"<br>"+
@@ -172,7 +172,11 @@ public class WhoisController {
     User user = userService.getUser(nick);
 
     user.checkAnonymous();
-    user.checkBlocked();
+
+    // у заблокированного пользователя можно удалить оставшиеся сообщения
+    if (!user.isBlocked()) {
+      user.checkBlocked();
+    }
 
     if (!user.isBlockable()) {
       throw new AccessViolationException("Пользователя нельзя заблокировать");
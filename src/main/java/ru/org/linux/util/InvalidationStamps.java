@@ -0,0 +1,64 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Счетчики сбросов кеша для групп ключей.
+ *
+ * Загрузка запоминает отметку до чтения из базы и хранит ее вместе со значением;
+ * значение, загруженное параллельно со сбросом, отличается по отметке и считается устаревшим.
+ */
+public class InvalidationStamps {
+  private final AtomicLongArray stamps;
+
+  public InvalidationStamps(int stripes) {
+    stamps = new AtomicLongArray(stripes);
+  }
+
+  private int stripe(Object key) {
+    return (key.hashCode() & Integer.MAX_VALUE) % stamps.length();
+  }
+
+  public long get(Object key) {
+    return stamps.get(stripe(key));
+  }
+
+  /**
+   * Сбросить ключ сразу и, если есть транзакция, еще раз после ее коммита:
+   * до коммита другие запросы могут загрузить старое значение.
+   *
+   * @param evict удаление ключа из кеша
+   */
+  public void invalidate(Object key, Runnable evict) {
+    stamps.incrementAndGet(stripe(key));
+    evict.run();
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          stamps.incrementAndGet(stripe(key));
+          evict.run();
+        }
+      });
+    }
+  }
+}
@@ -278,8 +278,17 @@ public class LorURL {
     if(_topic_id != -1) {
       Topic message = messageDao.getById(_topic_id);
 
-      Group group = messageDao.getGroup(message);
+      return formatJump(messageDao.getGroup(message), canonical);
+    }
+
+    return "";
+  }
 
+  /**
+   * Ссылка для перехода на топик, группа которого уже известна
+   */
+  public String formatJump(Group group, URI canonical) throws URIException {
+    if(_topic_id != -1) {
       String scheme = canonical.getScheme();
 
       String host = canonical.getHost();
@@ -22,7 +22,6 @@ import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.util.Random;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public final class StringUtil {
@@ -91,11 +90,53 @@ public final class StringUtil {
     return builder.toString();
   }
 
+  private static final int ENTITY_MAX_DIGITS = 5;
+  private static final int ENTITY_MAX_NAME = 8;
+
   /**
-   * Convert special SGML (HTML) chars to
-   * SGML entities
+   * Длина entity вида &amp;#NNNNN; или &amp;name; в позиции start или 0, если его там нет.
+   * То же, что и регулярное выражение ^&amp;((#[1-9]\d{1,4})|(\w{1,8}));
+   * но без копирования хвоста строки на каждый &amp;
    */
-  private static final Pattern uniRE = Pattern.compile("^&((#[1-9]\\d{1,4})|(\\w{1,8}));");
+  static int entityLength(String str, int start) {
+    int length = str.length();
+    int i = start + 1;
+
+    if (i < length && str.charAt(i) == '#') {
+      int digitsStart = i + 1;
+      int j = digitsStart;
+
+      while (j < length && j - digitsStart < ENTITY_MAX_DIGITS && isAsciiDigit(str.charAt(j))) {
+        j++;
+      }
+
+      if (j - digitsStart >= 2 && str.charAt(digitsStart) != '0' && j < length && str.charAt(j) == ';') {
+        return j + 1 - start;
+      }
+
+      return 0;
+    }
+
+    int j = i;
+
+    while (j < length && j - i < ENTITY_MAX_NAME && isWordChar(str.charAt(j))) {
+      j++;
+    }
+
+    if (j > i && j < length && str.charAt(j) == ';') {
+      return j + 1 - start;
+    }
+
+    return 0;
+  }
+
+  private static boolean isAsciiDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isWordChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isAsciiDigit(c) || c == '_';
+  }
 
   /**
    * Экранируем управляющие html символьные последовательности, кроме &#NNNN;
@@ -117,11 +158,10 @@ public final class StringUtil {
           res.append("&quot;");
           break;
         case '&':
-          Matcher m = uniRE.matcher(str.substring(i));
-          if (m.find()) {
-              String s = m.group();
-              res.append(s);
-              i+=s.length()-1;
+          int entity = entityLength(str, i);
+          if (entity > 0) {
+              res.append(str, i, i + entity);
+              i += entity - 1;
               continue;
           } else {
             res.append("&amp;");
@@ -159,17 +199,15 @@ public final class StringUtil {
           res.append("&quot;");
           break;
         case '&':
-          Matcher m = uniRE.matcher(str.substring(i));
-          if (m.find()) {
-            String s = m.group();
-
-            if ("&nbsp;".equals(s)) {
+          int entity = entityLength(str, i);
+          if (entity > 0) {
+            if (str.startsWith("&nbsp;", i)) {
               res.append("&#160;");
             } else {
-              res.append(s);
+              res.append(str, i, i + entity);
             }
 
-            i += s.length() - 1;
+            i += entity - 1;
 
             continue;
           } else {
@@ -19,10 +19,14 @@ import org.apache.commons.httpclient.URI;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.org.linux.user.User;
+import ru.org.linux.user.UserNotFoundException;
 import ru.org.linux.user.UserService;
 import ru.org.linux.util.bbcode.nodes.RootNode;
+import ru.org.linux.util.formatter.MessageLinks;
 import ru.org.linux.util.formatter.ToHtmlFormatter;
 
+import javax.annotation.Nullable;
+import java.util.HashSet;
 import java.util.Set;
 
 import static ru.org.linux.util.bbcode.Parser.DEFAULT_PARSER;
@@ -51,7 +55,22 @@ public class LorCodeService {
    * @return HTML
    */
   public String parseComment(String text, boolean nofollow) {
-    return DEFAULT_PARSER.parseRoot(prepareCommentRootNode(false, nofollow), text).renderXHtml();
+    return parseComment(text, nofollow, null);
+  }
+
+  /**
+   * Преобразует LORCODE в HTML для комментариев
+   *
+   * @param text LORCODE
+   * @param nofollow add rel=nofollow to links
+   * @param links ссылки на топики и комментарии страницы, null - загрузить для этого текста
+   * @return HTML
+   */
+  public String parseComment(String text, boolean nofollow, @Nullable MessageLinks links) {
+    RootNode rootNode = prepareCommentRootNode(false, nofollow);
+    rootNode.setMessageLinks(links);
+
+    return DEFAULT_PARSER.parseRoot(rootNode, text).renderXHtml();
   }
 
   public String parseCommentRSS(String text) {
@@ -75,8 +94,24 @@ public class LorCodeService {
    */
   public Set<User> getReplierFromMessage(String text) {
     RootNode rootNode = DEFAULT_PARSER.parseRoot(prepareCommentRootNode(false, false), text);
-    rootNode.renderXHtml();
-    return rootNode.getReplier();
+
+    MentionVisitor visitor = new MentionVisitor();
+    rootNode.accept(visitor);
+
+    Set<User> replier = new HashSet<>();
+
+    for (String nick : visitor.getMentions()) {
+      try {
+        User user = userService.getUserCached(nick);
+
+        if (!user.isBlocked()) {
+          replier.add(user);
+        }
+      } catch (UserNotFoundException ignored) {
+      }
+    }
+
+    return replier;
   }
   /**
    * Преобразует LORCODE в HTML для топиков со свернутым содержимым тэга cut
@@ -86,7 +121,14 @@ public class LorCodeService {
    * @return HTML
    */
   public String parseTopicWithMinimizedCut(String text, String cutURL, boolean nofollow) {
-    return DEFAULT_PARSER.parseRoot(prepareTopicRootNode(true, cutURL, nofollow), text).renderXHtml();
+    return parseTopicWithMinimizedCut(text, cutURL, nofollow, null);
+  }
+
+  public String parseTopicWithMinimizedCut(String text, String cutURL, boolean nofollow, @Nullable MessageLinks links) {
+    RootNode rootNode = prepareTopicRootNode(true, cutURL, nofollow);
+    rootNode.setMessageLinks(links);
+
+    return DEFAULT_PARSER.parseRoot(rootNode, text).renderXHtml();
   }
   /**
    * Преобразует LORCODE в HTML для топиков со развернутым содержимым тэга cut
@@ -96,7 +138,14 @@ public class LorCodeService {
    * @return HTML
    */
   public String parseTopic(String text, boolean nofollow) {
-    return DEFAULT_PARSER.parseRoot(prepareTopicRootNode(false, null, nofollow), text).renderXHtml();
+    return parseTopic(text, nofollow, null);
+  }
+
+  public String parseTopic(String text, boolean nofollow, @Nullable MessageLinks links) {
+    RootNode rootNode = prepareTopicRootNode(false, null, nofollow);
+    rootNode.setMessageLinks(links);
+
+    return DEFAULT_PARSER.parseRoot(rootNode, text).renderXHtml();
   }
 
   private RootNode prepareCommentRootNode(boolean rss, boolean nofollow) {
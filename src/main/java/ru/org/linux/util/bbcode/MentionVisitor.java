@@ -0,0 +1,55 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util.bbcode;
+
+import com.google.common.base.Strings;
+import ru.org.linux.util.bbcode.nodes.NodeVisitor;
+import ru.org.linux.util.bbcode.nodes.TagNode;
+import ru.org.linux.util.bbcode.nodes.TextNode;
+import ru.org.linux.util.bbcode.tags.MemberTag;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Сбор ников из тэгов [user] в порядке упоминания
+ */
+public class MentionVisitor implements NodeVisitor {
+  private final Set<String> mentions = new LinkedHashSet<>();
+
+  @Override
+  public boolean visitTag(TagNode node) {
+    if (node.getBbtag() instanceof MemberTag) {
+      String memberName = MemberTag.getMemberName(node);
+
+      if (!Strings.isNullOrEmpty(memberName)) {
+        mentions.add(memberName);
+      }
+
+      return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public void visitText(TextNode node) {
+  }
+
+  public Set<String> getMentions() {
+    return mentions;
+  }
+}
@@ -61,8 +61,6 @@ import ru.org.linux.util.formatter.RuTypoChanger;
 
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Основной класс преобразования LORCODE в html
@@ -70,16 +68,6 @@ import java.util.regex.Pattern;
 public class Parser {
   public static final Parser DEFAULT_PARSER = new Parser(new DefaultParserParameters());
 
-  /**
-   * Регулярное выражение поиска тэга
-   */
-  private static final Pattern BBTAG_REGEXP = Pattern.compile("\\[\\[?/?([A-Za-z\\*]+)(:[a-f0-9]+)?(=[^\\]]+)?\\]?\\]");
-
-  /**
-   * Регулярное выражения поиска двойного перевода строки
-   */
-  private static final Pattern P_REGEXP = Pattern.compile("(\r?\n){2,}");
-
   private final ParserParameters parserParameters;
 
   /**
@@ -108,17 +96,17 @@ public class Parser {
    */
   public RootNode parseRoot(RootNode rootNode, String bbcode) {
     Node currentNode = rootNode;
-    ParserAutomatonState automatonState = new ParserAutomatonState(rootNode, parserParameters);
+    ParserAutomatonState automatonState = new ParserAutomatonState(rootNode, parserParameters, bbcode);
+    TagToken match = automatonState.getToken();
 
     while (automatonState.getPos() < bbcode.length()) {
-      Matcher match = BBTAG_REGEXP.matcher(bbcode).region(automatonState.getPos(), bbcode.length());
-      if (match.find()) {
+      if (match.find(bbcode, automatonState.getPos())) {
         if (!automatonState.isFirstCode()) {
-          currentNode = pushTextNode(automatonState, currentNode, bbcode.substring(automatonState.getPos(), match.start()));
+          currentNode = pushTextNode(automatonState, currentNode, bbcode, automatonState.getPos(), match.start);
         } else {
-          currentNode = trimNewLine(automatonState, currentNode, bbcode, match);
+          currentNode = trimNewLine(automatonState, currentNode, bbcode, match.start);
         }
-        automatonState.processTagMatcher(match);
+        automatonState.processTagToken();
 
         if (automatonState.isTagEscaped()) {
           currentNode = processEscapedTag(currentNode, automatonState);
@@ -129,15 +117,27 @@ public class Parser {
             currentNode = pushTextNode(automatonState, currentNode, automatonState.getWholematch());
           }
         }
-        automatonState.setPos(match.end());
+        automatonState.setPos(match.end);
       } else {
-        currentNode = pushTextNode(automatonState, currentNode, bbcode.substring(automatonState.getPos()));
+        currentNode = pushTextNode(automatonState, currentNode, bbcode, automatonState.getPos(), bbcode.length());
         automatonState.setPos(bbcode.length());
       }
     }
     return automatonState.getRootNode();
   }
 
+  /**
+   * Добавление текстового узла из части исходного текста;
+   * пробельный текст там, где текст не разрешен, пропускается без копирования
+   */
+  private Node pushTextNode(ParserAutomatonState automatonState, Node currentNode, String bbcode, int start, int end) {
+    if (isBlank(bbcode, start, end) && !currentNode.allows("text")) {
+      return currentNode;
+    }
+
+    return pushTextNode(automatonState, currentNode, bbcode.substring(start, end));
+  }
+
   /**
    * Добавление текстового узда
    *
@@ -147,7 +147,7 @@ public class Parser {
    * @return возвращает новый текущий узел
    */
   private Node pushTextNode(ParserAutomatonState automatonState, Node currentNode, String text) {
-    if (text.trim().isEmpty() && !currentNode.allows("text")) {
+    if (isBlank(text, 0, text.length()) && !currentNode.allows("text")) {
       return currentNode;
     }
 
@@ -191,11 +191,11 @@ public class Parser {
      * за исключеним, если текущий тэг p, тогда поднимаемся на уровень
      * выше в дереве и вставляем p с текстом
      */
-    Matcher matcher = P_REGEXP.matcher(text);
+    int breakStart = isAllow ? findParagraphBreak(text, 0) : -1;
 
-    if (isAllow && matcher.find()) {
-      String head = text.substring(0, matcher.start());
-      String tail = text.substring(matcher.end());
+    if (breakStart >= 0) {
+      String head = text.substring(0, breakStart);
+      String tail = text.substring(paragraphBreakEnd(text, breakStart));
 
       if (!head.isEmpty()) {
         currentNode.addChildren(rawPushTextNode(automatonState, currentNode, head));
@@ -213,13 +213,92 @@ public class Parser {
       if (isParagraphed) {
         currentNode.addChildren(rawPushTextNode(automatonState, currentNode, text));
       } else {
-        currentNode.addChildren(rawPushTextNode(automatonState, currentNode, matcher.replaceAll("")));
+        currentNode.addChildren(rawPushTextNode(automatonState, currentNode, removeParagraphBreaks(text)));
       }
     }
 
     return currentNode;
   }
 
+  /**
+   * Состоит ли часть текста только из пробельных символов (как в {@link String#trim()})
+   */
+  private static boolean isBlank(String text, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (text.charAt(i) > ' ') {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Поиск двойного перевода строки, эквивалент (\r?\n){2,}
+   *
+   * @return позиция начала или -1
+   */
+  static int findParagraphBreak(String text, int from) {
+    for (int i = text.indexOf('\n', from); i >= 0; i = text.indexOf('\n', i + 1)) {
+      if (newLineEnd(text, i + 1) >= 0) {
+        return i > from && text.charAt(i - 1) == '\r' ? i - 1 : i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Конец двойного перевода строки, начинающегося в start
+   */
+  static int paragraphBreakEnd(String text, int start) {
+    int pos = start;
+
+    for (int end = newLineEnd(text, pos); end >= 0; end = newLineEnd(text, pos)) {
+      pos = end;
+    }
+
+    return pos;
+  }
+
+  private static int newLineEnd(String text, int pos) {
+    if (pos < text.length() && text.charAt(pos) == '\n') {
+      return pos + 1;
+    }
+
+    if (pos + 1 < text.length() && text.charAt(pos) == '\r' && text.charAt(pos + 1) == '\n') {
+      return pos + 2;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Удалить все двойные переводы строки
+   *
+   * @return исходную строку, если удалять нечего
+   */
+  static String removeParagraphBreaks(String text) {
+    int start = findParagraphBreak(text, 0);
+
+    if (start < 0) {
+      return text;
+    }
+
+    StringBuilder out = new StringBuilder(text.length());
+    int pos = 0;
+
+    while (start >= 0) {
+      out.append(text, pos, start);
+      pos = paragraphBreakEnd(text, start);
+      start = findParagraphBreak(text, pos);
+    }
+
+    out.append(text, pos, text.length());
+
+    return out.toString();
+  }
+
   private TextNode rawPushTextNode(ParserAutomatonState automatonState, Node currentNode, String text) {
     if (!automatonState.isCode()) {
       return new TextNode(currentNode, parserParameters, text, automatonState);
@@ -299,7 +378,7 @@ public class Parser {
   }
 
   private Node processKnownTag(Node currentNode, ParserAutomatonState automatonState) {
-    if (automatonState.getWholematch().startsWith("[[")) {
+    if (automatonState.isOpenEscaped()) {
       currentNode = pushTextNode(automatonState, currentNode, "[");
     }
 
@@ -311,7 +390,7 @@ public class Parser {
       currentNode = processTag(automatonState, currentNode, tagNameIsCode);
     }
 
-    if (automatonState.getWholematch().endsWith("]]")) {
+    if (automatonState.isCloseEscaped()) {
       currentNode = pushTextNode(automatonState, currentNode, "]");
     }
 
@@ -320,17 +399,12 @@ public class Parser {
 
   private Node processTag(ParserAutomatonState automatonState, Node currentNode, boolean tagNameIsCode) {
     if (automatonState.isCode() && !tagNameIsCode) {
-      String text = automatonState.getWholematch();
+      TagToken match = automatonState.getToken();
 
-      if (text.startsWith("[[")) {
-        text = text.substring(1);
-      }
+      int start = automatonState.isOpenEscaped() ? match.start + 1 : match.start;
+      int end = automatonState.isCloseEscaped() ? match.end - 1 : match.end;
 
-      if (text.endsWith("]]")) {
-        text = text.substring(0, text.length()-1);
-      }
-
-      currentNode = pushTextNode(automatonState, currentNode, text);
+      currentNode = pushTextNode(automatonState, currentNode, automatonState.getSource(), start, end);
     } else if (tagNameIsCode) {
       automatonState.setCode(true);
       automatonState.setFirstCode(true);
@@ -347,14 +421,13 @@ public class Parser {
   }
 
   private Node processEscapedTag(Node currentNode, ParserAutomatonState automatonState) {
-    String textNode;
+    TagToken match = automatonState.getToken();
+
     if (automatonState.getAllTagsNames().contains(automatonState.getTagname()) && !automatonState.isCode()) {
-      textNode = automatonState.getWholematch().substring(1, automatonState.getWholematch().length() - 1);
+      return pushTextNode(automatonState, currentNode, automatonState.getSource(), match.start + 1, match.end - 1);
     } else {
-      textNode = automatonState.getWholematch();
+      return pushTextNode(automatonState, currentNode, automatonState.getSource(), match.start, match.end);
     }
-    currentNode = pushTextNode(automatonState, currentNode, textNode);
-    return currentNode;
   }
 
   private Node processCloseTag(ParserAutomatonState automatonState, Node currentNode, boolean tagNameIsCode) {
@@ -369,20 +442,131 @@ public class Parser {
     return currentNode;
   }
 
-  private Node trimNewLine(ParserAutomatonState automatonState, Node currentNode, String bbcode, Matcher match) {
-    String fixWhole = bbcode.substring(automatonState.getPos(), match.start());
-    if (fixWhole.startsWith("\n")) {
-      fixWhole = fixWhole.substring(1); // откусить ведущий перевод строки
-    } else if (fixWhole.startsWith("\r\n")) {
-      fixWhole = fixWhole.substring(2); // откусить ведущий перевод строки
+  private Node trimNewLine(ParserAutomatonState automatonState, Node currentNode, String bbcode, int end) {
+    int start = automatonState.getPos();
+    if (bbcode.startsWith("\n", start) && start < end) {
+      start += 1; // откусить ведущий перевод строки
+    } else if (bbcode.startsWith("\r\n", start) && start + 1 < end) {
+      start += 2; // откусить ведущий перевод строки
     }
     automatonState.setFirstCode(false);
-    return pushTextNode(automatonState, currentNode, fixWhole);
+    return pushTextNode(automatonState, currentNode, bbcode, start, end);
+  }
+
+  /**
+   * Поиск тэга без регулярных выражений, эквивалент
+   * <code>\[\[?/?([A-Za-z\*]+)(:[a-f0-9]+)?(=[^\]]+)?\]?\]</code>.
+   *
+   * Объект переиспользуется на всем разборе, результат - смещения в исходном тексте.
+   */
+  static final class TagToken {
+    int start;
+    int end;
+    int nameStart;
+    int nameEnd;
+    /**
+     * Начало параметра (после '='), -1 если параметра нет
+     */
+    int paramStart;
+    int paramEnd;
+
+    boolean find(String text, int from) {
+      for (int i = text.indexOf('[', from); i >= 0; i = text.indexOf('[', i + 1)) {
+        if (matchAt(text, i)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    private boolean matchAt(String text, int start) {
+      int length = text.length();
+      int pos = start + 1;
+
+      if (pos < length && text.charAt(pos) == '[') {
+        pos++;
+      }
+
+      if (pos < length && text.charAt(pos) == '/') {
+        pos++;
+      }
+
+      int nameStart = pos;
+
+      while (pos < length && isNameChar(text.charAt(pos))) {
+        pos++;
+      }
+
+      if (pos == nameStart) {
+        return false;
+      }
+
+      int nameEnd = pos;
+
+      if (pos < length && text.charAt(pos) == ':') {
+        pos++;
+
+        int hashStart = pos;
+
+        while (pos < length && isHashChar(text.charAt(pos))) {
+          pos++;
+        }
+
+        if (pos == hashStart) {
+          return false;
+        }
+      }
+
+      int paramStart = -1;
+      int paramEnd = -1;
+
+      if (pos < length && text.charAt(pos) == '=') {
+        int close = text.indexOf(']', pos + 1);
+
+        if (close <= pos + 1) {
+          return false;
+        }
+
+        paramStart = pos + 1;
+        paramEnd = close;
+        pos = close;
+      }
+
+      if (pos >= length || text.charAt(pos) != ']') {
+        return false;
+      }
+
+      pos++;
+
+      if (pos < length && text.charAt(pos) == ']') {
+        pos++;
+      }
+
+      this.start = start;
+      this.end = pos;
+      this.nameStart = nameStart;
+      this.nameEnd = nameEnd;
+      this.paramStart = paramStart;
+      this.paramEnd = paramEnd;
+
+      return true;
+    }
+
+    private static boolean isNameChar(char c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '*';
+    }
+
+    private static boolean isHashChar(char c) {
+      return (c >= 'a' && c <= 'f') || (c >= '0' && c <= '9');
+    }
   }
 
   public class ParserAutomatonState {
     private final RootNode rootNode;
     private final Set<String> allTagsNames;
+    private final String source;
+    private final TagToken token = new TagToken();
 
     private int pos = 0;
     private boolean isCode = false;
@@ -394,27 +578,48 @@ public class Parser {
     private String parameter;
     private String wholematch;
 
-    private ParserAutomatonState(RootNode rootNode, ParserParameters parserParameters) {
+    private ParserAutomatonState(RootNode rootNode, ParserParameters parserParameters, String source) {
       this.rootNode = rootNode;
+      this.source = source;
       allTagsNames = parserParameters.getAllTagsNames();
     }
 
-    private void processTagMatcher(Matcher match) {
-      tagname = match.group(1).toLowerCase();
-      parameter = match.group(3);
-      wholematch = match.group(0);
+    private void processTagToken() {
+      tagname = tagName(token.nameStart, token.nameEnd);
+      parameter = token.paramStart >= 0 ? source.substring(token.paramStart, token.paramEnd) : null;
+      wholematch = null;
+    }
+
+    /**
+     * Имя тэга в нижнем регистре; для известных тэгов без копирования строки
+     */
+    private String tagName(int start, int end) {
+      int length = end - start;
 
-      if (!StringUtils.isEmpty(parameter)){
-        parameter = parameter.substring(1);
+      for (String name : allTagsNames) {
+        if (name.length() == length && source.regionMatches(true, start, name, 0, length)) {
+          return name;
+        }
       }
+
+      return source.substring(start, end).toLowerCase();
+    }
+
+    private boolean isOpenEscaped() {
+      return source.charAt(token.start + 1) == '[';
+    }
+
+    private boolean isCloseEscaped() {
+      return source.charAt(token.end - 1) == ']' && source.charAt(token.end - 2) == ']';
     }
 
     private boolean isTagEscaped() {
-      return wholematch.startsWith("[[") && wholematch.endsWith("]]");
+      return isOpenEscaped() && isCloseEscaped();
     }
 
     private boolean isCloseTag() {
-      return wholematch.startsWith("[/") || wholematch.startsWith("[[/");
+      return source.charAt(token.start + 1) == '/'
+              || (source.charAt(token.start + 1) == '[' && source.charAt(token.start + 2) == '/');
     }
 
     private int getPos() {
@@ -450,9 +655,21 @@ public class Parser {
     }
 
     private String getWholematch() {
+      if (wholematch == null) {
+        wholematch = source.substring(token.start, token.end);
+      }
+
       return wholematch;
     }
 
+    private String getSource() {
+      return source;
+    }
+
+    private TagToken getToken() {
+      return token;
+    }
+
     public RootNode getRootNode() {
       return rootNode;
     }
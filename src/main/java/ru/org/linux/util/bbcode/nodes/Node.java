@@ -140,6 +140,19 @@ abstract public class Node {
     return "";
   }
 
+  /**
+   * Обойти поддерево узла
+   */
+  public void accept(NodeVisitor visitor) {
+    acceptChildren(visitor);
+  }
+
+  public final void acceptChildren(NodeVisitor visitor) {
+    for (Node child : children) {
+      child.accept(visitor);
+    }
+  }
+
   public final String renderChildrenOg() {
     StringBuilder stringBuilder = new StringBuilder();
     for(Node child : children) {
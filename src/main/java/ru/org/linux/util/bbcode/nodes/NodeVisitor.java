@@ -0,0 +1,36 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util.bbcode.nodes;
+
+/**
+ * Обход дерева разбора LORCODE без построения html.
+ *
+ * Используется, когда из сообщения нужно извлечь данные (упоминания,
+ * cut'ы, текст), а сам html не нужен.
+ */
+public interface NodeVisitor {
+  /**
+   * Узел с тэгом
+   *
+   * @return обходить ли дочерние узлы
+   */
+  boolean visitTag(TagNode node);
+
+  /**
+   * Узел с текстом, в том числе текст из тэга code
+   */
+  void visitText(TextNode node);
+}
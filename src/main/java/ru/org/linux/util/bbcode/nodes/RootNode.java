@@ -58,6 +58,7 @@ import ru.org.linux.user.User;
 import ru.org.linux.user.UserService;
 import ru.org.linux.util.bbcode.ParserParameters;
 import ru.org.linux.util.bbcode.ParserParameters.CutType;
+import ru.org.linux.util.formatter.MessageLinks;
 import ru.org.linux.util.formatter.ToHtmlFormatter;
 
 import java.util.HashSet;
@@ -73,6 +74,7 @@ public class RootNode extends Node {
   private URI cutURI;
   private UserService userService;
   private ToHtmlFormatter toHtmlFormatter;
+  private MessageLinks messageLinks;
   private final Set<User> replier;
   private boolean rss;
   private boolean nofollow = false;
@@ -96,6 +98,22 @@ public class RootNode extends Node {
     this.toHtmlFormatter = toHtmlFormatter;
   }
 
+  /**
+   * Ссылки на топики и комментарии; если не заданы заранее для всей страницы,
+   * то создаются на время разбора этого текста
+   */
+  public MessageLinks getMessageLinks() {
+    if (messageLinks == null) {
+      messageLinks = toHtmlFormatter.newMessageLinks();
+    }
+
+    return messageLinks;
+  }
+
+  public void setMessageLinks(MessageLinks messageLinks) {
+    this.messageLinks = messageLinks;
+  }
+
   public UserService getUserService() {
     return userService;
   }
@@ -110,4 +110,11 @@ public class TagNode extends Node {
   public String renderOg() {
     return bbtag.renderOg(this);
   }
+
+  @Override
+  public void accept(NodeVisitor visitor) {
+    if (visitor.visitTag(this)) {
+      acceptChildren(visitor);
+    }
+  }
 }
@@ -84,7 +84,8 @@ public class TextNode extends Node {
           return toHtmlFormatter.format(
               text,
               state.getRootNode().isNofollow(),
-              state.getTypoChanger()
+              state.getTypoChanger(),
+              state.getRootNode().getMessageLinks()
               );
         } else {
           return toHtmlFormatter.simpleFormat(state.getTypoChanger().format(text));
@@ -108,4 +109,9 @@ public class TextNode extends Node {
   public String renderOg() {
     return text;
   }
+
+  @Override
+  public void accept(NodeVisitor visitor) {
+    visitor.visitText(this);
+  }
 }
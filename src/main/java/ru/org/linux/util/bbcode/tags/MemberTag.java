@@ -64,18 +64,33 @@ import ru.org.linux.util.bbcode.nodes.TagNode;
 import ru.org.linux.util.bbcode.nodes.TextNode;
 import ru.org.linux.util.formatter.ToHtmlFormatter;
 
+import javax.annotation.Nullable;
+
 public class MemberTag extends Tag {
   public MemberTag(ImmutableSet<String> allowedChildren, ParserParameters parserParameters) {
     super("user", allowedChildren, "p", parserParameters);
   }
 
+  /**
+   * Ник из тэга [user]
+   *
+   * @return ник или null, если тэг пустой
+   */
+  @Nullable
+  public static String getMemberName(Node node) {
+    if (node.lengthChildren() == 0) {
+      return null;
+    }
+    TextNode txtNode = (TextNode) node.getChildren().iterator().next();
+    return Parser.escape(txtNode.getText()).trim();
+  }
+
   @Override
   public String renderNodeXhtml(Node node) {
-    if (node.lengthChildren() == 0) {
+    String memberName = getMemberName(node);
+    if (memberName == null) {
       return "";
     }
-    TextNode txtNode = (TextNode) node.getChildren().iterator().next();
-    String memberName = Parser.escape(txtNode.getText()).trim();
     TagNode tagNode = (TagNode)node;
     RootNode rootNode = tagNode.getRootNode();
     ToHtmlFormatter toHtmlFormatter = rootNode.getToHtmlFormatter();
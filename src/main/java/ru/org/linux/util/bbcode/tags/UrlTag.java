@@ -101,7 +101,8 @@ public class UrlTag extends Tag {
                 rootNode.isNofollow(),
                 out,
                 escapedUrl,
-                linkText
+                linkText,
+                rootNode.getMessageLinks()
         );
 
         ret.append(out);
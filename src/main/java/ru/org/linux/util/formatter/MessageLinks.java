@@ -0,0 +1,263 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util.formatter;
+
+import org.apache.commons.httpclient.URI;
+import org.apache.commons.httpclient.URIException;
+import ru.org.linux.comment.CommentDao;
+import ru.org.linux.group.Group;
+import ru.org.linux.site.MessageNotFoundException;
+import ru.org.linux.topic.Topic;
+import ru.org.linux.topic.TopicDao;
+import ru.org.linux.util.LorURL;
+import ru.org.linux.util.StringUtil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Топики и комментарии, на которые ссылаются тексты одной страницы.
+ *
+ * Тексты страницы добавляются до рендеринга, при первом обращении они
+ * просматриваются целиком и все найденные ссылки загружаются двумя запросами
+ * (топики и признаки удаления комментариев). Если при рендеринге встретилась
+ * ссылка, которую просмотр не нашел, то она загружается отдельно и запоминается.
+ * Запросов нет, только если ни один текст страницы не ссылается на сайт: html
+ * из кеша комментариев проверяется через {@link #linkState}, поэтому и полностью
+ * закешированная страница с такими ссылками выполняет оба пакетных запроса.
+ *
+ * Объект живет в пределах одного запроса и не потокобезопасен.
+ */
+public final class MessageLinks {
+  private final TopicDao topicDao;
+  private final CommentDao commentDao;
+  private final URI mainURI;
+
+  private final List<String> pending = new ArrayList<>();
+
+  private final Map<Integer, Optional<Topic>> topics = new HashMap<>();
+  private final Map<Integer, Optional<Boolean>> commentDeleted = new HashMap<>();
+  private final Map<Integer, Group> groups = new HashMap<>();
+
+  public MessageLinks(TopicDao topicDao, CommentDao commentDao, URI mainURI) {
+    this.topicDao = topicDao;
+    this.commentDao = commentDao;
+    this.mainURI = mainURI;
+  }
+
+  /**
+   * Добавить тексты, ссылки из которых нужно загрузить заранее
+   *
+   * @param texts исходные тексты сообщений (LORCODE, markdown и т.п.)
+   */
+  public void addTexts(Iterable<String> texts) {
+    for (String text : texts) {
+      if (text != null) {
+        pending.add(text);
+      }
+    }
+  }
+
+  /**
+   * Топик, на который ссылается текст
+   *
+   * @return Optional.empty() если топика нет
+   */
+  public Optional<Topic> findTopic(int id) {
+    resolve();
+
+    Optional<Topic> topic = topics.get(id);
+
+    if (topic == null) {
+      try {
+        topic = Optional.of(topicDao.getById(id));
+      } catch (MessageNotFoundException ex) {
+        topic = Optional.empty();
+      }
+
+      topics.put(id, topic);
+    }
+
+    return topic;
+  }
+
+  /**
+   * Удален ли комментарий, на который ссылается текст
+   *
+   * @return Optional.empty() если комментария нет
+   */
+  public Optional<Boolean> findCommentDeleted(int id) {
+    resolve();
+
+    Optional<Boolean> deleted = commentDeleted.get(id);
+
+    if (deleted == null) {
+      try {
+        deleted = Optional.of(commentDao.getById(id).isDeleted());
+      } catch (MessageNotFoundException ex) {
+        deleted = Optional.empty();
+      }
+
+      commentDeleted.put(id, deleted);
+    }
+
+    return deleted;
+  }
+
+  /**
+   * Отпечаток состояния ссылок текста: заголовки, группы и признаки удаления
+   * топиков и комментариев, на которые он ссылается. Html текста нужно
+   * перерисовать, если отпечаток изменился. Для текста без ссылок на сайт
+   * запросов нет и результат 0.
+   *
+   * @param text исходный текст сообщения
+   */
+  public long linkState(String text) {
+    Set<Integer> topicIds = new TreeSet<>();
+    Set<Integer> commentIds = new TreeSet<>();
+
+    scan(text, topicIds, commentIds);
+
+    long state = 0;
+
+    for (int id : topicIds) {
+      Optional<Topic> topic = findTopic(id);
+
+      state = 31 * state + id;
+      state = 31 * state + topic.map(t -> Objects.hash(t.isDeleted(), t.getGroupId(), t.getTitle())).orElse(-1);
+    }
+
+    for (int id : commentIds) {
+      state = 31 * state + id;
+      state = 31 * state + findCommentDeleted(id).map(deleted -> deleted ? 1 : 0).orElse(-1);
+    }
+
+    return state;
+  }
+
+  public Group getGroup(Topic topic) {
+    return groups.computeIfAbsent(topic.getGroupId(), id -> topicDao.getGroup(topic));
+  }
+
+  private void resolve() {
+    if (pending.isEmpty()) {
+      return;
+    }
+
+    Set<Integer> topicIds = new HashSet<>();
+    Set<Integer> commentIds = new HashSet<>();
+
+    for (String text : pending) {
+      scan(text, topicIds, commentIds);
+    }
+
+    pending.clear();
+
+    topicIds.removeAll(topics.keySet());
+    commentIds.removeAll(commentDeleted.keySet());
+
+    if (!topicIds.isEmpty()) {
+      for (Topic topic : topicDao.findByIds(topicIds)) {
+        topics.put(topic.getId(), Optional.of(topic));
+      }
+
+      for (Integer id : topicIds) {
+        topics.putIfAbsent(id, Optional.empty());
+      }
+    }
+
+    if (!commentIds.isEmpty()) {
+      Map<Integer, Boolean> deleted = commentDao.getDeletedByIds(commentIds);
+
+      for (Integer id : commentIds) {
+        commentDeleted.put(id, Optional.ofNullable(deleted.get(id)));
+      }
+    }
+  }
+
+  /**
+   * Находит в тексте ссылки на сайт и собирает id топиков и комментариев.
+   * Просмотр грубый: лишние id стоят только места в запросе, пропущенные
+   * загрузятся при рендеринге.
+   */
+  void scan(String text, Set<Integer> topicIds, Set<Integer> commentIds) {
+    String host = new String(mainURI.getRawHost());
+
+    int pos = text.indexOf(host);
+
+    while (pos >= 0) {
+      int start = pos;
+
+      if (text.startsWith("://", pos - 3)) {
+        start = pos - 3;
+
+        while (start > 0 && Character.isLetter(text.charAt(start - 1))) {
+          start--;
+        }
+      }
+
+      int end = pos + host.length();
+
+      while (end < text.length() && !isUrlEnd(text.charAt(end))) {
+        end++;
+      }
+
+      String candidate = text.substring(start, end);
+
+      if (start == pos) {
+        candidate = "http://" + candidate;
+      }
+
+      try {
+        LorURL url = new LorURL(mainURI, StringUtil.escapeHtml(candidate));
+
+        if (url.isMessageUrl()) {
+          topicIds.add(url.getMessageId());
+
+          if (url.isCommentUrl()) {
+            commentIds.add(url.getCommentId());
+          }
+        }
+      } catch (URIException ignored) {
+      }
+
+      pos = text.indexOf(host, end);
+    }
+  }
+
+  private static boolean isUrlEnd(char c) {
+    switch (c) {
+      case '[':
+      case ']':
+      case '<':
+      case '>':
+      case '(':
+      case ')':
+      case '"':
+      case '\'':
+        return true;
+      default:
+        return Character.isWhitespace(c);
+    }
+  }
+}
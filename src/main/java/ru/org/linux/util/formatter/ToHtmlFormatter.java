@@ -19,7 +19,6 @@ import org.apache.commons.httpclient.URI;
 import org.apache.commons.httpclient.URIException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import ru.org.linux.comment.Comment;
 import ru.org.linux.comment.CommentDao;
 import ru.org.linux.site.MessageNotFoundException;
 import ru.org.linux.spring.SiteConfig;
@@ -31,7 +30,6 @@ import ru.org.linux.util.StringUtil;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -95,18 +93,78 @@ public class ToHtmlFormatter {
   }
 
   public String format(String text, boolean nofollow, RuTypoChanger changer) {
+    return format(text, nofollow, changer, newMessageLinks());
+  }
+
+  public String format(String text, boolean nofollow, RuTypoChanger changer, MessageLinks links) {
+    StringBuilder out = new StringBuilder(text.length() + 16);
+
+    format(text, nofollow, changer, links, out);
+
+    return out.toString();
+  }
+
+  /**
+   * Контекст ссылок на топики и комментарии для одного рендеринга
+   * или целой страницы (см. MessageLinks.addTexts)
+   */
+  public MessageLinks newMessageLinks() {
+    return new MessageLinks(topicDao, commentDao, siteConfig.getMainURI());
+  }
+
+  /**
+   * Форматирует текст в переданный буфер за один проход.
+   *
+   * Текст разбивается на слова по пробелам и переводам строк без копирования,
+   * регулярное выражение URL запускается только для слов, в которых может
+   * быть ссылка, одним Matcher на весь текст.
+   *
+   * @param text текст
+   * @param out сюда дописывается результат
+   */
+  public void format(String text, boolean nofollow, @Nullable RuTypoChanger changer, StringBuilder out) {
+    format(text, nofollow, changer, newMessageLinks(), out);
+  }
+
+  private void format(String text, boolean nofollow, @Nullable RuTypoChanger changer, MessageLinks links,
+                      StringBuilder out) {
     String escapedText = StringUtil.escapeHtml(text);
+    Matcher matcher = URL_PATTERN.matcher(escapedText);
+
+    int mark = out.length();
+    int length = escapedText.length();
+    int tokenStart = 0;
+
+    while (tokenStart < length) {
+      int tokenEnd = tokenStart;
+
+      if (isDelimiter(escapedText.charAt(tokenStart))) {
+        tokenEnd++;
+      } else {
+        while (tokenEnd < length && !isDelimiter(escapedText.charAt(tokenEnd))) {
+          tokenEnd++;
+        }
+      }
 
-    StringTokenizer st = new StringTokenizer(escapedText, " \n", true);
-    StringBuilder sb = new StringBuilder();
+      formatURL(escapedText, tokenStart, tokenEnd, matcher, nofollow, changer, links, out);
 
-    while (st.hasMoreTokens()) {
-      String token = st.nextToken();
-      String formattedToken = formatURL(token, nofollow, changer);
-      sb.append(formattedToken);
+      tokenStart = tokenEnd;
     }
 
-    return sb.toString().replaceAll(MDASH_REGEX, MDASH_REPLACE);
+    replaceMdash(out, mark);
+  }
+
+  private static boolean isDelimiter(char c) {
+    return c == ' ' || c == '\n';
+  }
+
+  /**
+   * Замена " -- " на тире в буфере начиная с позиции from
+   */
+  private static void replaceMdash(StringBuilder out, int from) {
+    for (int i = out.indexOf(MDASH_REGEX, from); i >= 0; i = out.indexOf(MDASH_REGEX, i + MDASH_REPLACE.length())) {
+      out.replace(i, i + MDASH_REGEX.length(), MDASH_REPLACE);
+    }
   }
 
   /**
@@ -115,11 +173,35 @@ public class ToHtmlFormatter {
    * @return форматированый текст
    */
   public String simpleFormat(String text) {
-    return StringUtil.escapeHtml(text).replaceAll(MDASH_REGEX, MDASH_REPLACE);
+    return StringUtil.escapeHtml(text).replace(MDASH_REGEX, MDASH_REPLACE);
+  }
+
+  private static void appendWithMagic(StringBuilder out, String text, int start, int end, @Nullable RuTypoChanger changer) {
+    if (changer != null) {
+      out.append(changer.format(text.substring(start, end)));
+    } else {
+      out.append(text, start, end);
+    }
   }
 
-  private String formatWithMagic(String text, RuTypoChanger changer) {
-    return changer!=null ? changer.format(text) : text;
+  /**
+   * Может ли в слове быть ссылка: все варианты URL_REGEX содержат ':', "www." или "ftp."
+   */
+  private static boolean mayContainUrl(String text, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+
+      if (c == ':') {
+        return true;
+      }
+
+      if (c == '.' && i - start >= 3 &&
+              (text.regionMatches(true, i - 3, "www", 0, 3) || text.regionMatches(true, i - 3, "ftp", 0, 3))) {
+        return true;
+      }
+    }
+
+    return false;
   }
 
   public String memberURL(User user) throws URIException {
@@ -128,19 +210,24 @@ public class ToHtmlFormatter {
     return (new URI(mainUri.getScheme(), null, mainUri.getHost(), mainUri.getPort(), String.format("/people/%s/profile", user.getNick()))).getEscapedURIReference();
   }
 
-  private String formatURL(String line, boolean nofollow, RuTypoChanger changer) {
-    StringBuilder out = new StringBuilder();
-    Matcher m = URL_PATTERN.matcher(line);
-    int index = 0;
-    while (m.find()) {
+  private void formatURL(String text, int tokenStart, int tokenEnd, Matcher m, boolean nofollow,
+                         @Nullable RuTypoChanger changer, MessageLinks links, StringBuilder out) {
+    int index = tokenStart;
+
+    // границы региона непрозрачны, поэтому (?<!...) не видит соседние слова
+    m.region(tokenStart, tokenEnd);
+
+    boolean mayContainUrl = mayContainUrl(text, tokenStart, tokenEnd);
+
+    while (mayContainUrl && m.find()) {
       int start = m.start();
       int end = m.end();
 
       // обработка начальной части до URL
-      out.append(formatWithMagic(line.substring(index, start), changer));
+      appendWithMagic(out, text, index, start, changer);
 
       // возможно это url
-      String mayUrl = line.substring(start, end);
+      String mayUrl = text.substring(start, end);
       // href
       String urlHref = mayUrl;
 
@@ -151,21 +238,19 @@ public class ToHtmlFormatter {
       }
 
       try {
-        processUrl(nofollow, out, urlHref, null);
+        processUrl(nofollow, out, urlHref, null, links);
       } catch (URIException e) {
         // e.printStackTrace();
         // ссылка не ссылка
-        out.append(formatWithMagic(mayUrl, changer));
+        appendWithMagic(out, text, start, end, changer);
       }
       index = end;
     }
 
     // обработка последнего фрагмента
-    if (index < line.length()) {
-      out.append(formatWithMagic(line.substring(index), changer));
+    if (index < tokenEnd) {
+      appendWithMagic(out, text, index, tokenEnd, changer);
     }
-
-    return out.toString();
   }
 
   public void processUrl(
@@ -173,11 +258,21 @@ public class ToHtmlFormatter {
           @Nonnull StringBuilder out,
           @Nonnull String urlHref,
           @Nullable String linktext
+  ) throws URIException {
+    processUrl(nofollow, out, urlHref, linktext, newMessageLinks());
+  }
+
+  public void processUrl(
+          boolean nofollow,
+          @Nonnull StringBuilder out,
+          @Nonnull String urlHref,
+          @Nullable String linktext,
+          @Nonnull MessageLinks links
   ) throws URIException {
     LorURL url = new LorURL(siteConfig.getMainURI(), urlHref);
 
     if(url.isMessageUrl()) {
-      processMessageUrl(out, url, linktext);
+      processMessageUrl(out, url, linktext, links);
     } else if(url.isTrueLorUrl()) {
       processGenericLorUrl(out, url, linktext);
     } else {
@@ -217,27 +312,29 @@ public class ToHtmlFormatter {
    *
    * @param out сюда будет записана ссылка
    * @param url исходный url
+   * @param links загруженные топики и комментарии страницы
    * @throws URIException если uri не корректный
    */
   private void processMessageUrl(
           @Nonnull StringBuilder out,
           @Nonnull LorURL url,
-          @Nullable String linkText
+          @Nullable String linkText,
+          @Nonnull MessageLinks links
   ) throws URIException {
     try {
-      Topic message = topicDao.getById(url.getMessageId());
+      Topic message = links.findTopic(url.getMessageId())
+              .orElseThrow(() -> new MessageNotFoundException(url.getMessageId()));
 
       boolean deleted = message.isDeleted();
 
       if (!deleted && url.isCommentUrl()) {
-        Comment comment = commentDao.getById(url.getCommentId());
-
-        deleted = comment.isDeleted();
+        deleted = links.findCommentDeleted(url.getCommentId())
+                .orElseThrow(() -> new MessageNotFoundException(url.getCommentId()));
       }
 
       String urlTitle = linkText!=null?simpleFormat(linkText):StringUtil.escapeHtml(message.getTitle());
 
-      String newUrlHref = url.formatJump(topicDao, siteConfig.getSecureURI());
+      String newUrlHref = url.formatJump(links.getGroup(message), siteConfig.getSecureURI());
       String fixedUrlBody = url.formatUrlBody(maxLength);
 
       if (deleted) {
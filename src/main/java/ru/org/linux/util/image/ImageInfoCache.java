@@ -0,0 +1,108 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util.image;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.stereotype.Component;
+import ru.org.linux.util.BadImageException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кеш размеров изображений.
+ *
+ * Запись действительна, пока не изменилось время модификации файла, поэтому
+ * при показе страницы вместо чтения заголовка файла выполняется только stat.
+ * Отсутствующие файлы запоминаются на {@link #MISSING_TTL} мс.
+ */
+@Component
+public class ImageInfoCache {
+  private static final int MAX_SIZE = 50000;
+  private static final int MISSING_TTL = 60 * 1000;
+
+  private final Cache<String, Entry> cache =
+          CacheBuilder.newBuilder()
+                  .maximumSize(MAX_SIZE)
+                  .expireAfterAccess(1, TimeUnit.DAYS)
+                  .build();
+
+  /**
+   * Получить размеры изображения
+   *
+   * @param filename полный путь к файлу
+   * @throws FileNotFoundException если файл отсутствует
+   * @throws BadImageException если файл не удалось разобрать
+   */
+  public ImageInfo getInfo(String filename) throws BadImageException, IOException {
+    Entry entry = cache.getIfPresent(filename);
+
+    if (entry != null && entry.isMissing() && System.currentTimeMillis() - entry.checked < MISSING_TTL) {
+      throw new FileNotFoundException(filename + " (cached)");
+    }
+
+    long lastModified = new File(filename).lastModified();
+
+    if (entry == null || entry.isMissing() || entry.lastModified != lastModified) {
+      entry = load(filename, lastModified);
+      cache.put(filename, entry);
+    }
+
+    if (entry.isMissing()) {
+      throw new FileNotFoundException(filename);
+    }
+
+    if (entry.info == null) {
+      throw new BadImageException(entry.error);
+    }
+
+    return entry.info;
+  }
+
+  private static Entry load(String filename, long lastModified) throws IOException {
+    if (lastModified == 0 && !new File(filename).exists()) {
+      return new Entry(0, null, null);
+    }
+
+    try {
+      return new Entry(lastModified, new ImageInfo(filename), null);
+    } catch (FileNotFoundException ex) {
+      return new Entry(0, null, null);
+    } catch (BadImageException ex) {
+      return new Entry(lastModified, null, ex.getMessage() != null ? ex.getMessage() : "");
+    }
+  }
+
+  private static final class Entry {
+    private final long lastModified;
+    private final ImageInfo info;
+    private final String error;
+    private final long checked = System.currentTimeMillis();
+
+    private Entry(long lastModified, ImageInfo info, String error) {
+      this.lastModified = lastModified;
+      this.info = info;
+      this.error = error;
+    }
+
+    private boolean isMissing() {
+      return info == null && error == null;
+    }
+  }
+}
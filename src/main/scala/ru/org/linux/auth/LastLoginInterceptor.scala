@@ -18,12 +18,11 @@ package ru.org.linux.auth
 import javax.servlet.http.{HttpServletRequest, HttpServletResponse}
 
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter
-import ru.org.linux.user.UserDao
 
-class LastLoginInterceptor(userDao:UserDao) extends HandlerInterceptorAdapter {
+class LastLoginInterceptor(lastLoginUpdater: LastLoginUpdater) extends HandlerInterceptorAdapter {
   override def preHandle(request: HttpServletRequest, response: HttpServletResponse, handler: Any) = {
     if (AuthUtil.isSessionAuthorized) {
-      userDao.updateLastlogin(AuthUtil.getCurrentUser, false)
+      lastLoginUpdater.userSeen(AuthUtil.getCurrentUser)
     }
 
     true
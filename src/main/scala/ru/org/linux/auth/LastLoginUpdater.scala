@@ -0,0 +1,145 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.auth
+
+import java.sql.Timestamp
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicLong}
+import java.util.concurrent.{ConcurrentHashMap, Executors, TimeUnit}
+import javax.annotation.PreDestroy
+
+import com.google.common.cache.CacheBuilder
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.typesafe.scalalogging.StrictLogging
+import org.springframework.jmx.export.annotation.{ManagedAttribute, ManagedResource}
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import ru.org.linux.user.{User, UserDao}
+
+import scala.jdk.CollectionConverters._
+
+object LastLoginUpdater {
+  final val FlushDelay = 30 * 1000
+
+  /**
+   * Пользователь повторно попадает в очередь не чаще, чем раз в ThrottleMinutes
+   */
+  private val ThrottleMinutes = 5
+
+  private val MaxUsers = 100000
+
+  /**
+   * При переполнении очереди запись запускается в фоне, не дожидаясь планировщика
+   */
+  private val MaxPending = 5000
+
+  private val FlushTimeoutSeconds = 30
+}
+
+/**
+ * Отложенное обновление users.lastlogin: время последнего запроса
+ * накапливается в памяти и периодически записывается одним запросом.
+ */
+@Component
+@ManagedResource(objectName = "ru.org.linux:type=LastLoginUpdater")
+class LastLoginUpdater(userDao: UserDao) extends StrictLogging {
+  private val pending = new ConcurrentHashMap[Integer, Timestamp]()
+
+  private val throttle = CacheBuilder.newBuilder()
+    .maximumSize(LastLoginUpdater.MaxUsers)
+    .expireAfterWrite(LastLoginUpdater.ThrottleMinutes, TimeUnit.MINUTES)
+    .build[Integer, java.lang.Boolean]()
+
+  private val flushCount = new AtomicLong()
+  private val flushedUsers = new AtomicLong()
+
+  @volatile
+  private var lastFlushMillis = 0L
+
+  private val flushRequested = new AtomicBoolean()
+
+  private val flushExecutor = Executors.newSingleThreadExecutor(
+    new ThreadFactoryBuilder().setNameFormat("lastlogin-flush").setDaemon(true).build())
+
+  def userSeen(user: User): Unit = {
+    val id = Integer.valueOf(user.getId)
+
+    if (throttle.getIfPresent(id) == null) {
+      throttle.put(id, java.lang.Boolean.TRUE)
+      pending.put(id, new Timestamp(System.currentTimeMillis()))
+
+      if (pending.size >= LastLoginUpdater.MaxPending && flushRequested.compareAndSet(false, true)) {
+        flushExecutor.execute(() => {
+          flushRequested.set(false)
+          flush()
+        })
+      }
+    }
+  }
+
+  @Scheduled(fixedDelay = LastLoginUpdater.FlushDelay)
+  def flush(): Unit = synchronized {
+    val batch = new java.util.HashMap[Integer, Timestamp]()
+
+    pending.keySet.asScala.foreach { id =>
+      val ts = pending.remove(id)
+
+      if (ts != null) {
+        batch.put(id, ts)
+      }
+    }
+
+    if (!batch.isEmpty) {
+      val start = System.nanoTime()
+
+      try {
+        userDao.updateLastlogin(batch)
+
+        flushCount.incrementAndGet()
+        flushedUsers.addAndGet(batch.size)
+      } catch {
+        case ex: RuntimeException =>
+          logger.warn(s"Failed to update lastlogin for ${batch.size} users", ex)
+
+          // возвращаем в очередь: повторно пользователь не попадёт в неё до истечения throttle
+          batch.forEach { (id, ts) =>
+            pending.merge(id, ts, (current, failed) => if (current.after(failed)) current else failed)
+          }
+      } finally {
+        lastFlushMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+      }
+    }
+  }
+
+  @PreDestroy
+  def shutdown(): Unit = {
+    flushExecutor.shutdown()
+    flushExecutor.awaitTermination(LastLoginUpdater.FlushTimeoutSeconds, TimeUnit.SECONDS)
+
+    flush()
+  }
+
+  @ManagedAttribute
+  def getPendingCount: Int = pending.size
+
+  @ManagedAttribute
+  def getLastFlushMillis: Long = lastFlushMillis
+
+  @ManagedAttribute
+  def getFlushCount: Long = flushCount.get
+
+  @ManagedAttribute
+  def getFlushedUsers: Long = flushedUsers.get
+}
@@ -30,7 +30,7 @@ import ru.org.linux.spring.SiteConfig
 import ru.org.linux.topic.{PreparedImage, Topic, TopicDao}
 import ru.org.linux.user.{User, UserDao}
 import ru.org.linux.util.BadImageException
-import ru.org.linux.util.image.{ImageInfo, ImageUtil}
+import ru.org.linux.util.image.{ImageInfoCache, ImageUtil}
 
 import scala.jdk.CollectionConverters._
 import scala.util.control.NonFatal
@@ -38,7 +38,7 @@ import scala.util.control.NonFatal
 @Service
 class ImageService(imageDao: ImageDao, editHistoryDao: EditHistoryDao,
                    topicDao: TopicDao, userDao: UserDao, siteConfig: SiteConfig,
-                   val transactionManager: PlatformTransactionManager)
+                   imageInfoCache: ImageInfoCache, val transactionManager: PlatformTransactionManager)
   extends StrictLogging with TransactionManagement {
 
   private val previewPath = new File(siteConfig.getUploadPath + "/gallery/preview")
@@ -79,8 +79,8 @@ class ImageService(imageDao: ImageDao, editHistoryDao: EditHistoryDao,
     val mediumName = image.getMedium
 
     try {
-      val mediumImageInfo = new ImageInfo(htmlPath + mediumName)
-      val fullInfo = new ImageInfo(htmlPath + image.getOriginal)
+      val mediumImageInfo = imageInfoCache.getInfo(htmlPath + mediumName)
+      val fullInfo = imageInfoCache.getInfo(htmlPath + image.getOriginal)
       val medURI = siteConfig.getSecureUrl + mediumName
       val fullURI = siteConfig.getSecureUrl + image.getOriginal
 
@@ -23,7 +23,7 @@ import ru.org.linux.spring.dao.MessageText
 import ru.org.linux.user.User
 import ru.org.linux.util.StringUtil
 import ru.org.linux.util.bbcode.LorCodeService
-import ru.org.linux.util.formatter.ToLorCodeTexFormatter
+import ru.org.linux.util.formatter.{MessageLinks, ToLorCodeTexFormatter}
 import ru.org.linux.util.markdown.MarkdownFormatter
 
 import scala.jdk.CollectionConverters._
@@ -39,16 +39,31 @@ class MessageTextService(lorCodeService: LorCodeService, markdownFormatter: Mark
     * @param text текст комментария
     * @return строку html комментария
     */
-  def renderCommentText(text: MessageText, nofollow: Boolean): String = {
+  def renderCommentText(text: MessageText, nofollow: Boolean): String = renderCommentText(text, nofollow, None)
+
+  /**
+    * Получить html представление текста комментария
+    *
+    * @param text текст комментария
+    * @param links ссылки на топики и комментарии, загруженные для всей страницы
+    * @return строку html комментария
+    */
+  def renderCommentText(text: MessageText, nofollow: Boolean, links: MessageLinks): String =
+    renderCommentText(text, nofollow, Some(links))
+
+  private def renderCommentText(text: MessageText, nofollow: Boolean, links: Option[MessageLinks]): String = {
     text.markup match {
       case Lorcode =>
-        lorCodeService.parseComment(prepareLorcode(text.text), nofollow)
+        lorCodeService.parseComment(prepareLorcode(text.text), nofollow, links.orNull)
       case LorcodeUlb =>
-        lorCodeService.parseComment(prepareUlb(text.text), nofollow)
+        lorCodeService.parseComment(prepareUlb(text.text), nofollow, links.orNull)
       case Html =>
         "<p>" + text.text + "</p>"
       case Markdown =>
-        markdownFormatter.renderToHtml(text.text, nofollow)
+        links match {
+          case Some(l) => markdownFormatter.renderToHtml(text.text, nofollow, l)
+          case None => markdownFormatter.renderToHtml(text.text, nofollow)
+        }
     }
   }
 
@@ -72,27 +87,36 @@ class MessageTextService(lorCodeService: LorCodeService, markdownFormatter: Mark
     }
   }
 
-  def renderTopic(text: MessageText, minimizeCut: Boolean, nofollow: Boolean, canonicalUrl: String): String = {
+  def renderTopic(text: MessageText, minimizeCut: Boolean, nofollow: Boolean, canonicalUrl: String): String =
+    renderTopic(text, minimizeCut, nofollow, canonicalUrl, None)
+
+  def renderTopic(text: MessageText, minimizeCut: Boolean, nofollow: Boolean, canonicalUrl: String,
+                  links: MessageLinks): String =
+    renderTopic(text, minimizeCut, nofollow, canonicalUrl, Some(links))
+
+  private def renderTopic(text: MessageText, minimizeCut: Boolean, nofollow: Boolean, canonicalUrl: String,
+                          links: Option[MessageLinks]): String = {
     text.markup match {
       case Lorcode =>
         if (minimizeCut) {
-          lorCodeService.parseTopicWithMinimizedCut(prepareLorcode(text.text), canonicalUrl, nofollow)
+          lorCodeService.parseTopicWithMinimizedCut(prepareLorcode(text.text), canonicalUrl, nofollow, links.orNull)
         } else {
-          lorCodeService.parseTopic(prepareLorcode(text.text), nofollow)
+          lorCodeService.parseTopic(prepareLorcode(text.text), nofollow, links.orNull)
         }
       case LorcodeUlb =>
         if (minimizeCut) {
-          lorCodeService.parseTopicWithMinimizedCut(prepareUlb(text.text), canonicalUrl, nofollow)
+          lorCodeService.parseTopicWithMinimizedCut(prepareUlb(text.text), canonicalUrl, nofollow, links.orNull)
         } else {
-          lorCodeService.parseTopic(prepareUlb(text.text), nofollow)
+          lorCodeService.parseTopic(prepareUlb(text.text), nofollow, links.orNull)
         }
       case Html =>
         "<p>" + text.text
       case Markdown =>
-        if (minimizeCut) {
-          markdownFormatter.renderWithMinimizedCut(text.text, nofollow, canonicalUrl)
-        } else {
-          markdownFormatter.renderToHtml(text.text, nofollow)
+        (minimizeCut, links) match {
+          case (true, Some(l)) => markdownFormatter.renderWithMinimizedCut(text.text, nofollow, canonicalUrl, l)
+          case (true, None) => markdownFormatter.renderWithMinimizedCut(text.text, nofollow, canonicalUrl)
+          case (false, Some(l)) => markdownFormatter.renderToHtml(text.text, nofollow, l)
+          case (false, None) => markdownFormatter.renderToHtml(text.text, nofollow)
         }
     }
   }
@@ -18,8 +18,8 @@ package ru.org.linux.realtime
 import java.io.IOException
 
 import akka.NotUsed
-import akka.actor.{Actor, ActorLogging, ActorRef, ActorSystem, PoisonPill, Props, SupervisorStrategy, Terminated, Timers}
-import akka.pattern.ask
+import akka.actor.{Actor, ActorLogging, ActorRef, ActorSystem, PoisonPill, Props, Status, SupervisorStrategy, Terminated, Timers}
+import akka.pattern.{ask, pipe}
 import akka.util.Timeout
 import com.typesafe.scalalogging.StrictLogging
 import org.springframework.beans.factory.annotation.Qualifier
@@ -28,21 +28,29 @@ import org.springframework.stereotype.Service
 import org.springframework.web.socket.config.annotation.{EnableWebSocket, WebSocketConfigurer, WebSocketHandlerRegistry}
 import org.springframework.web.socket.handler.TextWebSocketHandler
 import org.springframework.web.socket.{CloseStatus, PingMessage, TextMessage, WebSocketSession}
+import org.springframework.security.core.Authentication
+import ru.org.linux.auth.UserDetailsImpl
 import ru.org.linux.comment.CommentService
-import ru.org.linux.realtime.RealtimeEventHub.{NewComment, SessionTerminated, Subscribe, Tick}
+import ru.org.linux.realtime.RealtimeEventHub._
 import ru.org.linux.spring.SiteConfig
 import ru.org.linux.topic.TopicDao
+import ru.org.linux.user.UserEventDao
 
 import scala.jdk.CollectionConverters._
 import scala.collection.mutable
-import scala.concurrent.{Await, ExecutionContext}
+import scala.concurrent.{Await, ExecutionContext, Future, blocking}
 import scala.concurrent.duration._
 import scala.util.control.NonFatal
 
 // TODO ignore list support
 // TODO fix face conditions on simultaneous posting comment, subscription and missing processing
-class RealtimeEventHub extends Actor with ActorLogging with Timers {
+class RealtimeEventHub(userEventDao: UserEventDao) extends Actor with ActorLogging with Timers {
   private val data = new mutable.HashMap[Int, mutable.Set[ActorRef]] with mutable.MultiMap[Int, ActorRef]
+  private val users = new mutable.HashMap[Int, Set[ActorRef]]
+  private val actorUsers = new mutable.HashMap[ActorRef, Int]
+  // последний запрошенный подсчет непрочитанных для пользователя; ответы устаревших запросов отбрасываются
+  private val countRequests = new mutable.HashMap[Int, Long]
+  private var countVersion: Long = 0
   private val sessions = new mutable.HashMap[String, ActorRef]
   private var maxDataSize: Int = 0
 
@@ -51,9 +59,9 @@ class RealtimeEventHub extends Actor with ActorLogging with Timers {
   override def supervisorStrategy = SupervisorStrategy.stoppingStrategy
 
   override def receive: Receive = {
-    case Subscribe(session, _) if sessions.contains(session.getId) =>
+    case Subscribe(session, _, _) if sessions.contains(session.getId) =>
       log.warning(s"Session ${session.getId} already subscribed")
-    case Subscribe(session, topic) =>
+    case Subscribe(session, topic, user) =>
       val actor = context.actorOf(RealtimeSessionActor.props(session))
 
       context.watch(actor)
@@ -61,6 +69,12 @@ class RealtimeEventHub extends Actor with ActorLogging with Timers {
       data.addBinding(topic, actor)
       sessions += (session.getId -> actor)
 
+      user.foreach { userId =>
+        users.update(userId, users.getOrElse(userId, Set.empty) + actor)
+        actorUsers += (actor -> userId)
+        self ! UnreadEventsChanged(Seq(userId))
+      }
+
       val dataSize = context.children.size
 
       if (dataSize > maxDataSize) {
@@ -82,6 +96,17 @@ class RealtimeEventHub extends Actor with ActorLogging with Timers {
       sessions.find(_._2 == actorRef).foreach { f =>
         sessions.remove(f._1)
       }
+
+      actorUsers.remove(actorRef).foreach { userId =>
+        val remaining = users.getOrElse(userId, Set.empty) - actorRef
+
+        if (remaining.isEmpty) {
+          users.remove(userId)
+          countRequests.remove(userId)
+        } else {
+          users.update(userId, remaining)
+        }
+      }
     case SessionTerminated(id) =>
       sessions.get(id) foreach { actor =>
         log.debug("Session was terminated, stopping actor")
@@ -94,6 +119,35 @@ class RealtimeEventHub extends Actor with ActorLogging with Timers {
       data.getOrElse(msgid, Set.empty).foreach {
         _ ! msg
       }
+    case UnreadEventsChanged(changed) =>
+      val connected = changed.filter(users.contains).distinct
+
+      if (connected.nonEmpty) {
+        implicit val ec: ExecutionContext = context.dispatcher
+
+        countVersion += 1
+        val version = countVersion
+
+        connected.foreach { userId => countRequests.update(userId, version) }
+
+        Future {
+          blocking {
+            UnreadEvents(version, userEventDao.getUnreadEventsCount(connected.map(Integer.valueOf).asJava).asScala.map {
+              case (userId, count) => userId.toInt -> count.toInt
+            }.toMap)
+          }
+        } pipeTo self
+      }
+    case UnreadEvents(version, counts) =>
+      for {
+        (userId, count) <- counts
+        if countRequests.get(userId).contains(version)
+      } {
+        countRequests.remove(userId)
+        users.getOrElse(userId, Set.empty).foreach(_ ! UnreadEventsCount(count))
+      }
+    case Status.Failure(ex) =>
+      log.warning(s"Unread events count failed: $ex")
     case Tick =>
       log.info(s"Realtime hub: maximum number connections was $maxDataSize")
       maxDataSize = 0
@@ -105,10 +159,21 @@ object RealtimeEventHub {
   case class NewComment(msgid: Int, cid: Int)
   case object Tick
 
-  case class Subscribe(session: WebSocketSession, topic: Int)
+  case class Subscribe(session: WebSocketSession, topic: Int, user: Option[Int])
   case class SessionTerminated(session: String)
 
-  def props = Props(new RealtimeEventHub())
+  /**
+   * Изменилось количество непрочитанных уведомлений пользователей
+   */
+  case class UnreadEventsChanged(users: Seq[Int])
+  case class UnreadEvents(version: Long, counts: Map[Int, Int])
+  case class UnreadEventsCount(count: Int)
+
+  // java api
+  def unreadEventsChanged(users: java.util.Collection[Integer]): UnreadEventsChanged =
+    UnreadEventsChanged(users.asScala.map(_.toInt).toVector)
+
+  def props(userEventDao: UserEventDao) = Props(new RealtimeEventHub(userEventDao))
 }
 
 class RealtimeSessionActor(session: WebSocketSession) extends Actor with ActorLogging {
@@ -125,6 +190,11 @@ class RealtimeSessionActor(session: WebSocketSession) extends Actor with ActorLo
         notifyComment(cid)
       } catch handleExceptions
 
+    case UnreadEventsCount(count) =>
+      try {
+        session.sendMessage(new TextMessage(s"events $count"))
+      } catch handleExceptions
+
     case Tick =>
       log.debug("Sending keepalive")
       try {
@@ -186,7 +256,7 @@ class RealtimeWebsocketHandler(@Qualifier("realtimeHubWS") hub: ActorRef,
         session.sendMessage(new TextMessage(cid.toString))
       }
 
-      val result = hub ? Subscribe(session, topic.getId)
+      val result = hub ? Subscribe(session, topic.getId, currentUser(session))
 
       Await.result(result, 10.seconds)
     } catch {
@@ -196,6 +266,15 @@ class RealtimeWebsocketHandler(@Qualifier("realtimeHubWS") hub: ActorRef,
     }
   }
 
+  private def currentUser(session: WebSocketSession): Option[Int] = session.getPrincipal match {
+    case auth: Authentication =>
+      auth.getPrincipal match {
+        case details: UserDetailsImpl if !details.getUser.isAnonymous => Some(details.getUser.getId)
+        case _ => None
+      }
+    case _ => None
+  }
+
   override def afterConnectionClosed(session: WebSocketSession, status: CloseStatus): Unit = {
     logger.debug(s"Session terminated with status $status")
 
@@ -204,9 +283,9 @@ class RealtimeWebsocketHandler(@Qualifier("realtimeHubWS") hub: ActorRef,
 }
 
 @Configuration
-class RealtimeConfigurationBeans(actorSystem: ActorSystem) {
+class RealtimeConfigurationBeans(actorSystem: ActorSystem, userEventDao: UserEventDao) {
   @Bean(Array("realtimeHubWS"))
-  def hub: ActorRef = actorSystem.actorOf(RealtimeEventHub.props)
+  def hub: ActorRef = actorSystem.actorOf(RealtimeEventHub.props(userEventDao))
 }
 
 @Configuration
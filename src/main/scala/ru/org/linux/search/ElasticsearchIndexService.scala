@@ -15,6 +15,10 @@
 
 package ru.org.linux.search
 
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong, AtomicReference}
+import java.util.concurrent.{Executors, Semaphore}
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import com.sksamuel.elastic4s.IndexAndType
 import com.sksamuel.elastic4s.http.ElasticDsl._
 import com.sksamuel.elastic4s.analyzers._
@@ -36,6 +40,8 @@ import ru.org.linux.user.UserDao
 
 import scala.jdk.CollectionConverters._
 import scala.collection.{Seq => MSeq}
+import scala.concurrent.duration.Deadline
+import scala.util.control.NonFatal
 
 object ElasticsearchIndexService {
   val MessageIndex = "messages"
@@ -72,6 +78,25 @@ object ElasticsearchIndexService {
         SnowballTokenFilter("m_my_snow_ru", "Russian"),
         SnowballTokenFilter("m_my_snow_en", "English")))
   )
+
+  /**
+   * Переиндексация месяца: число потоков подготовки документов,
+   * число топиков в одной задаче и максимум задач в очереди на поток
+   */
+  private val ReindexThreads = 4
+  private val ReindexTopicBatch = 20
+  private val ReindexQueuePerThread = 2
+
+  /**
+   * Ограничения размера одного bulk запроса при переиндексации
+   */
+  private val MaxBulkActions = 1000
+  private val MaxBulkChars = 5 * 1024 * 1024
+
+  /**
+   * Тексты загружаются из msgbase частями, чтобы не превысить лимит параметров запроса
+   */
+  private val TextBatch = 1000
 }
 
 @Service
@@ -89,6 +114,14 @@ class ElasticsearchIndexService
 ) extends StrictLogging {
   import ElasticsearchIndexService._
 
+  private val generation = new AtomicLong()
+
+  /**
+   * Поколение индекса; увеличивается при каждой записи в индекс.
+   * Используется для сброса кеша результатов поиска.
+   */
+  def indexGeneration: Long = generation.get
+
   private def isTopicSearchable(msg: Topic) = !msg.isDeleted && !msg.isDraft
 
   private def reindexComments(topic: Topic, comments: CommentList): MSeq[BulkCompatibleRequest] = {
@@ -106,7 +139,8 @@ class ElasticsearchIndexService
     val topic = topicDao.getById(msgid)
 
     if (isTopicSearchable(topic)) {
-      val topicIndex = indexOfTopic(topic)
+      val topicIndex = indexOfTopic(topic,
+        messageTextService.extractPlainText(msgbaseDao.getMessageText(topic.getId)))
 
       val commentsIndex = if (withComments) {
         reindexComments(topic, commentService.getCommentList(topic, true))
@@ -128,12 +162,118 @@ class ElasticsearchIndexService
     }
   }
 
+  /**
+   * Переиндексировать все топики месяца вместе с комментариями.
+   *
+   * Топики обрабатываются пачками на пуле из ReindexThreads потоков; число
+   * пачек в очереди ограничено, так что чтение из БД не опережает запись в индекс.
+   */
   def reindexMonth(year: Int, month: Int):Unit = {
-    val topicIds = topicDao.getMessageForMonth(year, month)
+    val topicIds = topicDao.getMessageForMonth(year, month).asScala.map(_.toInt).toVector
+
+    val startTime = Deadline.now
+
+    val executor = Executors.newFixedThreadPool(ReindexThreads,
+      new ThreadFactoryBuilder().setNameFormat(s"reindex-$year-$month-%d").setDaemon(true).build())
+
+    val maxQueued = ReindexThreads * ReindexQueuePerThread
+    val queued = new Semaphore(maxQueued)
+
+    val topicsDone = new AtomicInteger()
+    val documents = new AtomicLong()
+    val failure = new AtomicReference[Throwable]()
+
+    try {
+      for (batch <- topicIds.grouped(ReindexTopicBatch) if failure.get == null) {
+        queued.acquire()
+
+        executor.execute(() => {
+          try {
+            documents.addAndGet(reindexTopicBatch(batch))
+
+            val done = topicsDone.addAndGet(batch.size)
+
+            logger.debug(s"Reindex $year/$month: $done/${topicIds.size} topics, ${documents.get} documents")
+          } catch {
+            case NonFatal(ex) =>
+              failure.compareAndSet(null, ex)
+          } finally {
+            queued.release()
+          }
+        })
+      }
+
+      queued.acquire(maxQueued)
+    } finally {
+      executor.shutdownNow()
+    }
+
+    if (failure.get != null) {
+      throw new RuntimeException(s"Reindex of $year/$month failed", failure.get)
+    }
+
+    val elapsed = (Deadline.now - startTime).toMillis max 1
+
+    logger.info(s"Reindex $year/$month: ${topicIds.size} topics, ${documents.get} documents, " +
+      s"$elapsed millis (${documents.get * 1000 / elapsed} documents/s)")
+  }
 
-    for (topicId <- topicIds.asScala) {
-      reindexMessage(topicId, withComments = true)
+  /**
+   * @return число отправленных в индекс документов
+   */
+  private def reindexTopicBatch(topicIds: Seq[Int]): Long = {
+    val topics = topicIds.map { id =>
+      val topic = topicDao.getById(id)
+      topic -> commentService.getCommentList(topic, true).getList.asScala
     }
+
+    val textIds = topics.collect {
+      case (topic, comments) if isTopicSearchable(topic) =>
+        topic.getId +: comments.filterNot(_.isDeleted).map(_.getId)
+    }.flatten
+
+    val texts = textIds.grouped(TextBatch).flatMap { ids =>
+      msgbaseDao.getMessageText(ids.map(Integer.valueOf).asJava).asScala
+    }.toMap
+
+    def plainText(msgid: Int) = messageTextService.extractPlainText(texts(msgid))
+
+    val requests: Seq[(BulkCompatibleRequest, Int)] = topics.flatMap { case (topic, comments) =>
+      if (isTopicSearchable(topic)) {
+        val topicText = plainText(topic.getId)
+
+        (indexOfTopic(topic, topicText) -> topicText.length) +: comments.map { comment =>
+          if (comment.isDeleted) {
+            (delete(comment.getId.toString) from MessageIndexType) -> 0
+          } else {
+            val text = plainText(comment.getId)
+            indexOfComment(topic, comment, text) -> text.length
+          }
+        }
+      } else {
+        ((delete(topic.getId.toString) from MessageIndexType) -> 0) +: comments.map { comment =>
+          (delete(comment.getId.toString) from MessageIndexType) -> 0
+        }
+      }
+    }
+
+    var chunk = Vector.empty[BulkCompatibleRequest]
+    var chunkChars = 0
+
+    for ((request, chars) <- requests) {
+      if (chunk.size >= MaxBulkActions || (chunk.nonEmpty && chunkChars + chars > MaxBulkChars)) {
+        executeBulk(bulk(chunk))
+        chunk = Vector.empty
+        chunkChars = 0
+      }
+
+      chunk = chunk :+ request
+      chunkChars += chars
+    }
+
+    executeBulk(bulk(chunk))
+
+    requests.size
   }
 
   def reindexComments(comments: MSeq[Int]): Unit = {
@@ -180,7 +320,11 @@ class ElasticsearchIndexService
 
   private def executeBulk(bulkRequest: BulkRequest): Unit = {
     if (bulkRequest.requests.nonEmpty) {
-      val bulkResponse = elastic.execute(bulkRequest).await
+      val bulkResponse = try {
+        elastic.execute(bulkRequest).await
+      } finally {
+        generation.incrementAndGet()
+      }
 
       if (bulkResponse.result.failures.exists(_.status != 404)) {
         logger.warn(s"Bulk index failed: ${bulkResponse.result.failures.flatMap(_.error).map(_.reason).mkString(", ")}")
@@ -227,7 +371,7 @@ class ElasticsearchIndexService
     section.isPremoderated && !msg.isCommited
   }
 
-  private def indexOfTopic(topic: Topic): IndexRequest = {
+  private def indexOfTopic(topic: Topic, message: String): IndexRequest = {
     val section = sectionService.getSection(topic.getSectionId)
     val group = groupDao.getGroup(topic.getGroupId)
     val author = userDao.getUserCached(topic.getUid)
@@ -240,7 +384,7 @@ class ElasticsearchIndexService
       "group" -> group.getUrlName,
       "title" -> topic.getTitleUnescaped,
       "topic_title" -> topic.getTitleUnescaped,
-      "message" -> messageTextService.extractPlainText(msgbaseDao.getMessageText(topic.getId)),
+      "message" -> message,
       "postdate" -> new DateTime(topic.getPostdate),
       "tag" -> topicTagService.getTags(topic),
       COLUMN_TOPIC_AWAITS_COMMIT -> topicAwaitsCommit(topic),
@@ -15,13 +15,17 @@
 
 package ru.org.linux.search
 
+import java.util.concurrent.CompletionStage
+
 import com.sksamuel.elastic4s.http.ElasticClient
 import com.sksamuel.elastic4s.http.ElasticDsl.{termsAggregation, _}
 import com.sksamuel.elastic4s.http.search.SearchResponse
 import com.sksamuel.elastic4s.searches.queries.Query
 import com.sksamuel.elastic4s.searches.queries.funcscorer.WeightScore
 
-import scala.concurrent.Await
+import scala.compat.java8.FutureConverters._
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.{Await, Future}
 import scala.concurrent.duration._
 
 class SearchViewer(query: SearchRequest, elastic: ElasticClient) {
@@ -55,7 +59,12 @@ class SearchViewer(query: SearchRequest, elastic: ElasticClient) {
     }
   }
 
-  def performSearch: SearchResponse = {
+  def performSearch: SearchResponse = Await.result(performSearchAsync, SearchHardTimeout)
+
+  // java api
+  def performSearchJava: CompletionStage[SearchResponse] = performSearchAsync.toJava
+
+  def performSearchAsync: Future[SearchResponse] = {
     val typeFilter = Option(query.getRange.getValue) map { value =>
       termQuery(query.getRange.getColumn, value)
     }
@@ -86,7 +95,7 @@ class SearchViewer(query: SearchRequest, elastic: ElasticClient) {
 
     val postFilters = (sectionFilter ++ groupFilter).toSeq
 
-    val future = elastic execute {
+    elastic execute {
       search(ElasticsearchIndexService.MessageIndex) fetchSource true sourceInclude Fields query esQuery sortBy query.getSort.order aggs(
         filterAggregation("sections") query matchAllQuery subAggregations (
             termsAggregation("sections") field "section" size 50 subAggregations (
@@ -100,9 +109,7 @@ class SearchViewer(query: SearchRequest, elastic: ElasticClient) {
           highlight("topicTitle") numberOfFragments 0,
           highlight("message") numberOfFragments 1 fragmentSize MessageFragment highlighterType "fvh"
         ) size SearchRows from this.query.getOffset postFilter andFilters(postFilters) timeout SearchTimeout
-    }
-
-    Await.result(future, SearchHardTimeout).result
+    } map (_.result)
   }
 
   private def andFilters(filters: Seq[Query]) = {
@@ -25,6 +25,7 @@ import ru.org.linux.group.GroupPermissionService
 import ru.org.linux.search.SearchQueueSender
 import ru.org.linux.section.SectionService
 import ru.org.linux.site.Template
+import ru.org.linux.tracker.TrackerIndex
 import ru.org.linux.user.{User, UserDao, UserErrorException}
 
 import scala.jdk.CollectionConverters._
@@ -34,7 +35,7 @@ class DeleteTopicController(searchQueueSender: SearchQueueSender, sectionService
                                          messageDao: TopicDao, topicService: TopicService,
                                          prepareService: TopicPrepareService,
                                          permissionService: GroupPermissionService,
-                                         userDao: UserDao) extends StrictLogging {
+                                         userDao: UserDao, trackerIndex: TrackerIndex) extends StrictLogging {
   private def checkUndeletable(topic: Topic, currentUser: User): Unit = {
     if (!permissionService.isUndeletable(topic, currentUser)) {
       throw new AccessViolationException("это сообщение нельзя восстановить")
@@ -130,6 +131,7 @@ class DeleteTopicController(searchQueueSender: SearchQueueSender, sectionService
 
     if (message.isDeleted) {
       messageDao.undelete(message)
+      trackerIndex.topicChanged(msgid)
 
       logger.info(s"Восстановлено сообщение $msgid пользователем ${tmpl.getNick}")
 
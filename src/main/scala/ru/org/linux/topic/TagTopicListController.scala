@@ -21,7 +21,7 @@ import org.springframework.stereotype.Controller
 import org.springframework.web.bind.annotation.{PathVariable, RequestMapping, RequestMethod, RequestParam}
 import org.springframework.web.servlet.view.RedirectView
 import org.springframework.web.servlet.{ModelAndView, View}
-import org.springframework.web.util.{UriComponentsBuilder, UriTemplate}
+import org.springframework.web.util.UriTemplate
 import ru.org.linux.section.{Section, SectionService}
 import ru.org.linux.site.Template
 import ru.org.linux.tag.{TagName, TagService}
@@ -40,18 +40,14 @@ object TagTopicListController {
 
   def tagsUrl(letter: Char): String = TagsUriTemplate.expand(letter.toString).toString
 
-  private def buildTagUri(tag: String, section: Int, offset: Int) = {
-    val builder: UriComponentsBuilder = UriComponentsBuilder.fromUri(TagUriTemplate.expand(tag))
+  private def buildTagUri(tag: String, section: Int, cursor: Option[TopicListCursor]) = {
+    val url = TagUriTemplate.expand(tag).toString
 
     if (section != 0) {
-      builder.queryParam("section", Integer.valueOf(section))
-    }
-
-    if (offset != 0) {
-      builder.queryParam("offset", Integer.valueOf(offset))
+      TopicListController.pageLink(url, cursor, "section" -> Integer.valueOf(section))
+    } else {
+      TopicListController.pageLink(url, cursor)
     }
-
-    builder.build.toUriString
   }
 }
 
@@ -80,6 +76,8 @@ class TagTopicListController (
                response: HttpServletResponse,
                @PathVariable tag: String,
                @RequestParam(value = "offset", defaultValue = "0") rawOffset: Int,
+               @RequestParam(value = "after", required = false) after: Integer,
+               @RequestParam(value = "before", required = false) before: Integer,
                @RequestParam(value = "section", defaultValue = "0") sectionId: Int
   ): ModelAndView = {
     val modelAndView = new ModelAndView("tag-topics")
@@ -101,8 +99,16 @@ class TagTopicListController (
     modelAndView.addObject("navtitle", title)
     modelAndView.addObject("ptitle", title)
 
-    val offset = topicListService.fixOffset(rawOffset)
-    val topics = topicListService.getTopicsFeed(section.orNull, null, tag, offset, null, null, 20)
+    val cursor = TopicListCursor.fromRequest(after, before)
+    val page = topicListService.getTopicsFeedPage(section.orNull, null, tag, rawOffset, cursor)
+
+    def link(cursor: Option[TopicListCursor]) = TagTopicListController.buildTagUri(tag, sectionId, cursor)
+
+    if (page.isRedirect) {
+      return TopicListController.pageRedirect(page)(link)
+    }
+
+    val topics = page.getTopics
 
     val tmpl = Template.getTemplate(request)
 
@@ -113,7 +119,6 @@ class TagTopicListController (
     modelAndView.addObject("offsetNavigation", true)
     modelAndView.addObject("tag", tag)
     modelAndView.addObject("section", sectionId)
-    modelAndView.addObject("offset", offset)
     modelAndView.addObject("sectionList", sectionService.getSectionList)
 
     if (tmpl.isSessionAuthorized) {
@@ -132,13 +137,7 @@ class TagTopicListController (
     modelAndView.addObject("url", TagTopicListController.tagListUrl(tag))
     modelAndView.addObject("favsCount", userTagService.countFavs(tagInfo.id))
 
-    if (offset < 200 && preparedTopics.size == 20) {
-      modelAndView.addObject("nextLink", TagTopicListController.buildTagUri(tag, sectionId, offset + 20))
-    }
-
-    if (offset >= 20) {
-      modelAndView.addObject("prevLink", TagTopicListController.buildTagUri(tag, sectionId, offset - 20))
-    }
+    TopicListController.addPageLinks(modelAndView, page)(link)
 
     modelAndView
   }
@@ -27,6 +27,7 @@ import org.springframework.stereotype.Controller
 import org.springframework.web.bind.annotation._
 import org.springframework.web.servlet.view.RedirectView
 import org.springframework.web.servlet.{ModelAndView, View}
+import org.springframework.web.util.UriComponentsBuilder
 import ru.org.linux.group.{Group, GroupDao, GroupNotFoundException}
 import ru.org.linux.section.{Section, SectionNotFoundException, SectionService}
 import ru.org.linux.site.{ScriptErrorException, Template}
@@ -80,6 +81,42 @@ object TopicListController {
   }
 
   val RssFilters: Set[String] = Set("all", "notalks", "tech")
+
+  /**
+   * Ссылка на страницу ленты с курсором
+   */
+  def pageLink(url: String, cursor: Option[TopicListCursor], params: (String, AnyRef)*): String = {
+    val builder = UriComponentsBuilder.fromUriString(url)
+
+    params foreach { case (name, value) =>
+      builder.queryParam(name, value)
+    }
+
+    cursor foreach { cursor =>
+      builder.queryParam(cursor.getParamName, Integer.valueOf(cursor.getTopicId))
+    }
+
+    builder.build.toUriString
+  }
+
+  def addPageLinks(modelAndView: ModelAndView, page: TopicListPage)(link: Option[TopicListCursor] => String): Unit = {
+    Option(page.getPrev) foreach { cursor =>
+      modelAndView.addObject("prevLink", link(Some(cursor)))
+    }
+
+    Option(page.getNext) foreach { cursor =>
+      modelAndView.addObject("nextLink", link(Some(cursor)))
+    }
+  }
+
+  def pageRedirect(page: TopicListPage)(link: Option[TopicListCursor] => String): ModelAndView = {
+    val view = new RedirectView(link(Option(page.getRedirectTo)))
+
+    // вызывающие методы дополняют модель, она не должна попасть в адрес
+    view.setExposeModelAttributes(false)
+
+    new ModelAndView(view)
+  }
 }
 
 @Controller
@@ -108,10 +145,25 @@ class TopicListController(sectionService: SectionService, topicListService: Topi
 
     modelAndView.addObject("navtitle", TopicListController.calculateNavTitle(section, group, topicListForm))
 
-    topicListForm.setOffset(topicListService.fixOffset(topicListForm.getOffset))
+    val messages = if (topicListForm.getMonth == null) {
+      val cursor = TopicListCursor.fromRequest(topicListForm.getAfter, topicListForm.getBefore)
+      val page = topicListService.getTopicsFeedPage(section, group.orNull, null, topicListForm.getOffset, cursor)
+
+      val url = group.map(_.getUrl).getOrElse(section.getNewsViewerLink)
+
+      def link(cursor: Option[TopicListCursor]) = TopicListController.pageLink(url, cursor)
 
-    val messages = topicListService.getTopicsFeed(
-      section, group.orNull, null, topicListForm.getOffset, topicListForm.getYear, topicListForm.getMonth, 20)
+      if (page.isRedirect) {
+        return TopicListController.pageRedirect(page)(link)
+      }
+
+      TopicListController.addPageLinks(modelAndView, page)(link)
+
+      page.getTopics
+    } else {
+      topicListService.getTopicsFeed(
+        section, group.orNull, null, 0, topicListForm.getYear, topicListForm.getMonth, 20)
+    }
 
     val tmpl = Template.getTemplate(request)
 
@@ -46,15 +46,15 @@ class UserTopicListController
   ): ModelAndView = {
     val (modelAndView, user) = mkModel(nick)
 
-    modelAndView.addObject("url",
-      UriComponentsBuilder.fromUriString("/people/{nick}/favs").buildAndExpand(nick).encode.toUriString)
+    val url = UriComponentsBuilder.fromUriString("/people/{nick}/favs").buildAndExpand(nick).encode.toUriString
+    modelAndView.addObject("url", url)
 
     modelAndView.addObject("ptitle", s"Избранные сообщения ${user.getNick}")
     modelAndView.addObject("navtitle", s"Избранные сообщения")
 
     val offset = topicListService.fixOffset(rawOffset)
-    modelAndView.addObject("offset", offset)
     val messages = topicListService.getUserTopicsFeed(user, offset, true, false)
+    addOffsetLinks(modelAndView, url, offset, messages.size)
     prepareTopicsForPlainOrRss(request, modelAndView, rss = false, messages)
     modelAndView.setViewName("user-topics")
 
@@ -74,14 +74,14 @@ class UserTopicListController
       throw new AccessViolationException("Вы не можете смотреть черновики другого пользователя")
     }
 
-    modelAndView.addObject("url",
-      UriComponentsBuilder.fromUriString("/people/{nick}/drafts").buildAndExpand(nick).encode.toUriString)
+    val url = UriComponentsBuilder.fromUriString("/people/{nick}/drafts").buildAndExpand(nick).encode.toUriString
+    modelAndView.addObject("url", url)
 
     modelAndView.addObject("ptitle", s"Черновики ${user.getNick}")
     modelAndView.addObject("navtitle", s"Черновики")
     val offset = topicListService.fixOffset(rawOffset)
-    modelAndView.addObject("offset", offset)
     val messages = topicListService.getDrafts(user, offset)
+    addOffsetLinks(modelAndView, url, offset, messages.size)
     prepareTopicsForPlainOrRss(request, modelAndView, rss = false, messages)
     modelAndView.setViewName("user-topics")
 
@@ -94,6 +94,8 @@ class UserTopicListController
     @PathVariable nick: String,
     response: HttpServletResponse,
     @RequestParam(value = "offset", defaultValue = "0") rawOffset: Int,
+    @RequestParam(value = "after", required = false) after: Integer,
+    @RequestParam(value = "before", required = false) before: Integer,
     @RequestParam(value = "section", defaultValue = "0") sectionId: Int,
     @RequestParam(value = "output", required = false) output: String
   ): ModelAndView = {
@@ -113,26 +115,41 @@ class UserTopicListController
       modelAndView.addObject("meLink", userInfo.getUrl)
     }
 
+    val url = UriComponentsBuilder.fromUriString("/people/{nick}/").buildAndExpand(nick).encode.toUriString
+
     modelAndView.addObject("nick", user.getNick)
-    modelAndView.addObject("url",
-      UriComponentsBuilder.fromUriString("/people/{nick}/").buildAndExpand(nick).encode.toUriString)
+    modelAndView.addObject("url", url)
     modelAndView.addObject("ptitle", s"Сообщения ${user.getNick}")
     modelAndView.addObject("navtitle", s"Сообщения")
     modelAndView.addObject("rssLink",
       UriComponentsBuilder.fromUriString("/people/{nick}/?output=rss").buildAndExpand(nick).encode.toUriString)
 
-    val offset = topicListService.fixOffset(rawOffset)
-    modelAndView.addObject("offset", offset)
-    val messages = topicListService.getUserTopicsFeed(user, section.orNull, null, offset, false, false)
-
     val rss = "rss" == output
+
+    def link(cursor: Option[TopicListCursor]) = section match {
+      case Some(s) => TopicListController.pageLink(url, cursor, "section" -> Integer.valueOf(s.getId))
+      case None    => TopicListController.pageLink(url, cursor)
+    }
+
+    // rss всегда с начала ленты
+    val page = if (rss) {
+      topicListService.getUserTopicsFeedPage(user, section.orNull, 0, null)
+    } else {
+      topicListService.getUserTopicsFeedPage(user, section.orNull, rawOffset, TopicListCursor.fromRequest(after, before))
+    }
+
+    if (page.isRedirect) {
+      return TopicListController.pageRedirect(page)(link)
+    }
+
+    TopicListController.addPageLinks(modelAndView, page)(link)
+
+    val messages = page.getTopics
     if (!rss) {
       section.foreach { section => modelAndView.addObject("section", section)}
       modelAndView.addObject("sectionList", sectionService.getSectionList)
     }
 
-    modelAndView.addObject("params", section.map(s => s"section=${s.getId}").getOrElse(""))
-
     prepareTopicsForPlainOrRss(request, modelAndView, rss, messages)
 
     if (!rss) {
@@ -158,22 +175,38 @@ class UserTopicListController
       throw new AccessViolationException("Вы не можете смотреть отслеживаемые темы другого пользователя")
     }
 
-    modelAndView.addObject("url",
-      UriComponentsBuilder.fromUriString("/people/{nick}/tracked").buildAndExpand(nick).encode.toUriString)
+    val url = UriComponentsBuilder.fromUriString("/people/{nick}/tracked").buildAndExpand(nick).encode.toUriString
+    modelAndView.addObject("url", url)
 
     modelAndView.addObject("ptitle", s"Отслеживаемые сообщения ${user.getNick}")
     modelAndView.addObject("navtitle", s"Отслеживаемые сообщения")
 
     val offset = topicListService.fixOffset(rawOffset)
-    modelAndView.addObject("offset", offset)
 
     val messages = topicListService.getUserTopicsFeed(user, offset, true, true)
+    addOffsetLinks(modelAndView, url, offset, messages.size)
     prepareTopicsForPlainOrRss(request, modelAndView, rss = false, messages)
     modelAndView.setViewName("user-topics")
 
     modelAndView
   }
 
+  private def addOffsetLinks(modelAndView: ModelAndView, url: String, offset: Int, size: Int): Unit = {
+    def link(offset: Int) = if (offset == 0) {
+      url
+    } else {
+      TopicListController.pageLink(url, None, "offset" -> Integer.valueOf(offset))
+    }
+
+    if (offset >= 20) {
+      modelAndView.addObject("prevLink", link(offset - 20))
+    }
+
+    if (offset < 200 && size == 20) {
+      modelAndView.addObject("nextLink", link(offset + 20))
+    }
+  }
+
   private def prepareTopicsForPlainOrRss(
     request: HttpServletRequest,
     modelAndView: ModelAndView,
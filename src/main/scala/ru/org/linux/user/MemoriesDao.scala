@@ -14,8 +14,10 @@
  */
 package ru.org.linux.user
 
+import java.util.concurrent.TimeUnit
 import javax.sql.DataSource
 
+import com.google.common.cache.{CacheBuilder, Weigher}
 import com.google.common.collect.ImmutableMap
 import org.springframework.dao.DuplicateKeyException
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert
@@ -23,11 +25,59 @@ import org.springframework.scala.jdbc.core.JdbcTemplate
 import org.springframework.stereotype.Repository
 import org.springframework.transaction.annotation.{Propagation, Transactional}
 import ru.org.linux.topic.Topic
+import ru.org.linux.util.InvalidationStamps
 import scala.compat.java8.OptionConverters._
 
+object MemoriesDao {
+  /**
+    * Ограничение кеша в записях memories, а не в пользователях:
+    * у отдельных пользователей отслеживаются десятки тысяч топиков
+    */
+  private val CacheWeight = 2000000
+}
+
+/**
+  * Записи memories пользователя по топикам: id топиков по возрастанию
+  * и id соответствующих записей, отдельно для отслеживаемых и избранных.
+  * stamp - отметка сброса кеша на момент загрузки, см. MemoriesDao.userMemoriesChanged
+  */
+private[user] class UserMemories(val stamp: Long, watchTopics: Array[Int], watchIds: Array[Int],
+                                 favTopics: Array[Int], favIds: Array[Int]) {
+  def watchId(topic: Int): Int = UserMemories.find(watchTopics, watchIds, topic)
+
+  def favId(topic: Int): Int = UserMemories.find(favTopics, favIds, topic)
+
+  def size: Int = watchTopics.length + favTopics.length
+}
+
+private[user] object UserMemories {
+  def apply(stamp: Long, memories: collection.Seq[(Int, Int, Boolean)]): UserMemories = {
+    val (watch, favs) = memories.sortBy(_._2).partition(_._3)
+
+    new UserMemories(stamp, watch.map(_._2).toArray, watch.map(_._1).toArray, favs.map(_._2).toArray, favs.map(_._1).toArray)
+  }
+
+  private def find(topics: Array[Int], ids: Array[Int], topic: Int): Int = {
+    val idx = java.util.Arrays.binarySearch(topics, topic)
+
+    if (idx >= 0) ids(idx) else 0
+  }
+}
+
 @Repository
 class MemoriesDao(ds: DataSource) {
   private val jdbcTemplate = new JdbcTemplate(ds)
+
+  private val stamps = new InvalidationStamps(4096)
+
+  private val userMemories = CacheBuilder.newBuilder()
+    .maximumWeight(MemoriesDao.CacheWeight)
+    .weigher(new Weigher[Integer, UserMemories] {
+      override def weigh(userid: Integer, memories: UserMemories): Int = memories.size + 1
+    })
+    .expireAfterWrite(1, TimeUnit.HOURS)
+    .build[Integer, UserMemories]()
+
   private val insertTemplate = {
     new SimpleJdbcInsert(ds)
       .withTableName("memories")
@@ -36,7 +86,11 @@ class MemoriesDao(ds: DataSource) {
   }
 
   def addToMemories(user: User, topic: Topic, watch: Boolean): Int = try {
-    doAddToMemories(user, topic, watch)
+    val id = doAddToMemories(user, topic, watch)
+
+    userMemoriesChanged(user.getId)
+
+    id
   } catch {
     case _: DuplicateKeyException =>
       getId(user, topic.getId, watch)
@@ -68,39 +122,46 @@ class MemoriesDao(ds: DataSource) {
     * get number of memories/favs for topic
     */
   def getTopicInfo(topic: Int, currentUser: User): MemoriesInfo = {
-    val res: MemoriesInfo = jdbcTemplate.queryAndMap("SELECT watch, count(*) FROM memories WHERE topic=? GROUP BY watch", topic){ (rs, _) =>
-      if (rs.getBoolean("watch")) {
-        MemoriesInfo(watchCount = rs.getInt("count"), favsCount = 0, watchId = 0, favId = 0)
-      } else {
-        MemoriesInfo(watchCount = 0, favsCount = rs.getInt("count"), watchId = 0, favId = 0)
-      }
-    }.fold(MemoriesInfo(0, 0, 0, 0)) { (acc, cur) =>
-      MemoriesInfo(
-        watchCount = acc.watchCount + cur.watchCount,
-        favsCount = acc.favsCount + cur.favsCount,
-        watchId = 0,
-        favId = 0)
-    }
+    val res = jdbcTemplate.queryAndMap("SELECT watch_count, favs_count FROM memories_count WHERE topic=?", topic) {
+      (rs, _) => MemoriesInfo(watchCount = rs.getInt("watch_count"), favsCount = rs.getInt("favs_count"), watchId = 0, favId = 0)
+    }.headOption.getOrElse(MemoriesInfo(0, 0, 0, 0))
 
     if (currentUser != null) {
-      val ids = jdbcTemplate.queryAndMap("SELECT id, watch FROM memories WHERE userid=? AND topic=?", currentUser.getId, topic) {
-        (rs, _) => rs.getInt("id") -> rs.getBoolean("watch")
-      }
+      val memories = getUserMemories(currentUser.getId)
 
-      var watchId = 0
-      var favsId = 0
+      res.copy(watchId = memories.watchId(topic), favId = memories.favId(topic))
+    } else {
+      res
+    }
+  }
 
-      for (p <- ids) {
-        if (p._2) watchId = p._1
-        else favsId = p._1
-      }
+  private def getUserMemories(userid: Int): UserMemories = {
+    val cached = userMemories.getIfPresent(userid)
 
-      MemoriesInfo(watchCount = res.watchCount, favsCount = res.favsCount, watchId = watchId, favId = favsId)
+    if (cached != null && cached.stamp == stamps.get(userid)) {
+      cached
     } else {
-      res
+      val loaded = loadUserMemories(userid)
+
+      userMemories.put(userid, loaded)
+
+      loaded
     }
   }
 
+  private def loadUserMemories(userid: Int): UserMemories = {
+    val stamp = stamps.get(userid)
+
+    UserMemories(stamp, jdbcTemplate.queryAndMap("SELECT id, topic, watch FROM memories WHERE userid=?", userid) {
+      (rs, _) => (rs.getInt("id"), rs.getInt("topic"), rs.getBoolean("watch"))
+    })
+  }
+
+  /**
+    * Сбросить закешированные записи пользователя после изменения memories
+    */
+  def userMemoriesChanged(userid: Int): Unit = stamps.invalidate(userid, () => userMemories.invalidate(userid))
+
   def getMemoriesListItem(id: Int): java.util.Optional[MemoriesListItem] = {
     val res = jdbcTemplate.queryAndMap("SELECT * FROM memories WHERE id=?", id) {
       (rs, _) => new MemoriesListItem(rs)
@@ -109,7 +170,11 @@ class MemoriesDao(ds: DataSource) {
     res.headOption.asJava
   }
 
-  def delete(id: Int): Unit = jdbcTemplate.update("DELETE FROM memories WHERE id=?", id)
+  def delete(id: Int): Unit = {
+    val users = jdbcTemplate.queryForSeq[Int]("DELETE FROM memories WHERE id=? RETURNING userid", id)
+
+    users.foreach(userMemoriesChanged)
+  }
 
   def isWatchPresetForUser(user: User): Boolean = checkMemoriesPresent(user, watch = true)
 
@@ -23,7 +23,7 @@ import com.google.common.util.concurrent.UncheckedExecutionException
 import com.typesafe.scalalogging.StrictLogging
 import org.springframework.stereotype.Service
 import ru.org.linux.spring.SiteConfig
-import ru.org.linux.util.image.{ImageInfo, ImageParam, ImageUtil}
+import ru.org.linux.util.image.{ImageInfoCache, ImageParam, ImageUtil}
 import ru.org.linux.util.{BadImageException, StringUtil}
 
 import scala.jdk.CollectionConverters._
@@ -43,7 +43,8 @@ object UserService {
 }
 
 @Service
-class UserService(siteConfig: SiteConfig, userDao: UserDao, ignoreListDao: IgnoreListDao) extends StrictLogging {
+class UserService(siteConfig: SiteConfig, userDao: UserDao, ignoreListDao: IgnoreListDao,
+                  imageInfoCache: ImageInfoCache) extends StrictLogging {
   private val nameToIdCache =
     CacheBuilder.newBuilder().maximumSize(UserService.NameCacheSize).build[String, Integer](
       new CacheLoader[String, Integer] {
@@ -118,7 +119,7 @@ class UserService(siteConfig: SiteConfig, userDao: UserDao, ignoreListDao: Ignor
       Some(new Userpic(gravatar("anonymous@linux.org.ru", avatarMode, 150), 150, 150))
     } else if (user.getPhoto != null && !user.getPhoto.isEmpty) {
       Try {
-        val info = new ImageInfo(siteConfig.getUploadPath + "/photos/" + user.getPhoto)
+        val info = imageInfoCache.getInfo(siteConfig.getUploadPath + "/photos/" + user.getPhoto)
         new Userpic("/photos/" + user.getPhoto, info.getWidth, info.getHeight)
       } match {
         case Failure(e: FileNotFoundException) =>
@@ -148,8 +149,27 @@ class UserService(siteConfig: SiteConfig, userDao: UserDao, ignoreListDao: Ignor
     StringUtil.md5hash(base + ':' + nick + ':' + email + ':' + tm.getTime.toString + ":reset")
   }
 
-  def getUsersCached(ids: java.lang.Iterable[Integer]): java.util.List[User] =
-    ids.asScala.map(x => userDao.getUserCached(x)).toSeq.asJava
+  def getUsersCached(ids: java.lang.Iterable[Integer]): java.util.List[User] = {
+    val idSeq = ids.asScala.toSeq
+    val users = getUsersCachedMap(idSeq.asJava)
+
+    idSeq.map(users.get).asJava
+  }
+
+  /**
+    * Пользователи одним запросом; пропущенные пакетным запросом загружаются
+    * по одному, как в getUserCached (исключение только для отсутствующего id)
+    */
+  def getUsersCachedMap(ids: java.lang.Iterable[Integer]): java.util.Map[Integer, User] = {
+    val idSeq = ids.asScala.toSeq.distinct
+    val users = new java.util.HashMap[Integer, User](userDao.getUsersCached(idSeq.asJava))
+
+    for (id <- idSeq if !users.containsKey(id)) {
+      users.put(id, userDao.getUserCached(id))
+    }
+
+    users
+  }
 
   def getNewUsers = getUsersCached(userDao.getNewUserIds)
 
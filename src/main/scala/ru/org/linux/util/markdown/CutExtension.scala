@@ -27,6 +27,10 @@ import scala.jdk.CollectionConverters._
 
 object CutExtension {
   val CutCollapsed = new DataKey[Boolean]("CutCollapsed", false)
+
+  /**
+    * Ссылка на полный текст топика, задается документу перед рендерингом
+    */
   val CutLink = new DataKey[String]("CutLink", "")
 }
 
@@ -56,7 +60,7 @@ class CutRenderer(options: DataHolder) extends NodeRenderer {
 
         html
           .withAttr()
-          .attr("href", options.get(CutExtension.CutLink) + "#" + id)
+          .attr("href", ctx.getDocument.get(CutExtension.CutLink) + "#" + id)
           .tag("a")
           .text("читать дальше...")
           .closeTag("a")
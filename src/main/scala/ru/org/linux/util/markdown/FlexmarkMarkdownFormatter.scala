@@ -29,7 +29,7 @@ import ru.org.linux.comment.CommentDao
 import ru.org.linux.spring.SiteConfig
 import ru.org.linux.topic.TopicDao
 import ru.org.linux.user.{User, UserService}
-import ru.org.linux.util.formatter.ToHtmlFormatter
+import ru.org.linux.util.formatter.{MessageLinks, ToHtmlFormatter}
 
 import scala.jdk.CollectionConverters._
 import scala.collection.mutable
@@ -38,7 +38,7 @@ import scala.collection.mutable
 @Qualifier("flexmark")
 class FlexmarkMarkdownFormatter(siteConfig: SiteConfig, topicDao: TopicDao, commentDao: CommentDao,
                                 userService: UserService, toHtmlFormatter: ToHtmlFormatter) extends MarkdownFormatter {
-  private def options(nofollow: Boolean, minimizeCut: Boolean, cutUrl: Option[String] = None) = {
+  private[markdown] def options(nofollow: Boolean, minimizeCut: Boolean) = {
     val options = new MutableDataSet
 
     val extensions = Seq(TablesExtension.create, StrikethroughExtension.create, AutolinkExtension.create(),
@@ -66,10 +66,6 @@ class FlexmarkMarkdownFormatter(siteConfig: SiteConfig, topicDao: TopicDao, comm
 
     options.set(CutExtension.CutCollapsed, minimizeCut)
 
-    cutUrl foreach { url =>
-      options.set(CutExtension.CutLink, url)
-    }
-
     // uncomment to convert soft-breaks to hard breaks
     //options.set(HtmlRenderer.SOFT_BREAK, "<br />\n");
 
@@ -77,27 +73,39 @@ class FlexmarkMarkdownFormatter(siteConfig: SiteConfig, topicDao: TopicDao, comm
   }
 
   private val parser = Parser.builder(options(nofollow = false, minimizeCut = false)).build
-  private val renderer = HtmlRenderer.builder(options(nofollow = false, minimizeCut = false)).build
-  private val rendererNofollow = HtmlRenderer.builder(options(nofollow = true, minimizeCut = false)).build
 
-  override def renderToHtml(content: String, nofollow: Boolean): String = {
+  // renderer на каждый вариант опций; всё, что меняется от текста к тексту, передается через документ
+  private val renderers: Map[(Boolean, Boolean), HtmlRenderer] = (for {
+    nofollow <- Seq(false, true)
+    minimizeCut <- Seq(false, true)
+  } yield (nofollow, minimizeCut) -> HtmlRenderer.builder(options(nofollow, minimizeCut)).build).toMap
+
+  private def newMessageLinks() = new MessageLinks(topicDao, commentDao, siteConfig.getMainURI)
+
+  override def renderToHtml(content: String, nofollow: Boolean): String =
+    renderToHtml(content, nofollow, newMessageLinks())
+
+  override def renderToHtml(content: String, nofollow: Boolean, links: MessageLinks): String = {
     // You can re-use parser and renderer instances
     val document = parser.parse(content)
 
-    (if (nofollow) {
-      rendererNofollow
-    } else {
-      renderer
-    }).render(document)
+    document.set(LorLinkExtension.Links, links)
+
+    renderers((nofollow, false)).render(document)
   }
 
 
-  override def renderWithMinimizedCut(content: String, nofollow: Boolean, canonicalUrl: String): String = {
+  override def renderWithMinimizedCut(content: String, nofollow: Boolean, canonicalUrl: String): String =
+    renderWithMinimizedCut(content, nofollow, canonicalUrl, newMessageLinks())
+
+  override def renderWithMinimizedCut(content: String, nofollow: Boolean, canonicalUrl: String,
+                                      links: MessageLinks): String = {
     val document = parser.parse(content)
 
-    val renderer = HtmlRenderer.builder(options(nofollow = false, minimizeCut = true, cutUrl = Some(canonicalUrl))).build
+    document.set(LorLinkExtension.Links, links)
+    document.set(CutExtension.CutLink, canonicalUrl)
 
-    renderer.render(document)
+    renderers((nofollow, true)).render(document)
   }
 
   override def mentions(content: String): Set[User] = {
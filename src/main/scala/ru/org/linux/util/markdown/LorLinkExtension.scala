@@ -18,17 +18,24 @@ package ru.org.linux.util.markdown
 import com.vladsch.flexmark.ast._
 import com.vladsch.flexmark.html.renderer._
 import com.vladsch.flexmark.html.{HtmlRenderer, HtmlWriter}
-import com.vladsch.flexmark.util.options.MutableDataHolder
+import com.vladsch.flexmark.util.options.{DataKey, MutableDataHolder}
 import org.apache.commons.httpclient.URIException
 import ru.org.linux.comment.CommentDao
-import ru.org.linux.site.MessageNotFoundException
 import ru.org.linux.spring.SiteConfig
 import ru.org.linux.topic.TopicDao
 import ru.org.linux.util.LorURL
+import ru.org.linux.util.formatter.MessageLinks
 
 import scala.compat.java8.OptionConverters._
 import scala.jdk.CollectionConverters._
 
+object LorLinkExtension {
+  /**
+    * Ссылки на топики и комментарии страницы, задаются документу перед рендерингом
+    */
+  val Links = new DataKey[MessageLinks]("LorLinks", null: MessageLinks)
+}
+
 class LorLinkExtension(siteConfig: SiteConfig, topicDao: TopicDao, commentDao: CommentDao) extends HtmlRenderer.HtmlRendererExtension {
   override def rendererOptions(options: MutableDataHolder): Unit = {}
 
@@ -69,15 +76,13 @@ class LorLinkRenderer(siteConfig: SiteConfig, topicDao: TopicDao, commentDao: Co
     }
 
     if (url.isMessageUrl) {
-      topicDao.findById(url.getMessageId).asScala match {
+      val links = Option(ctx.getDocument.get(LorLinkExtension.Links)).getOrElse(
+        new MessageLinks(topicDao, commentDao, siteConfig.getMainURI))
+
+      links.findTopic(url.getMessageId).asScala match {
         case Some(message) =>
           val deleted = if (url.isCommentUrl && !message.isDeleted) {
-            try {
-              commentDao.getById(url.getCommentId).isDeleted
-            } catch {
-              case _: MessageNotFoundException =>
-                false
-            }
+            links.findCommentDeleted(url.getCommentId).asScala.exists(_.booleanValue)
           } else {
             message.isDeleted
           }
@@ -15,9 +15,12 @@
 package ru.org.linux.util.markdown
 
 import ru.org.linux.user.User
+import ru.org.linux.util.formatter.MessageLinks
 
 trait MarkdownFormatter {
   def renderToHtml(content: String, nofollow: Boolean): String
+  def renderToHtml(content: String, nofollow: Boolean, links: MessageLinks): String
   def renderWithMinimizedCut(content: String, nofollow: Boolean, canonicalUrl: String): String
+  def renderWithMinimizedCut(content: String, nofollow: Boolean, canonicalUrl: String, links: MessageLinks): String
   def mentions(content: String): Set[User]
 }
\ No newline at end of file
@@ -33,7 +33,10 @@ ${message}
 
 <br/>
 
-Удалено тем: ${topics}
+Удалено тем: ${topics}<br/>
+Удалено комментариев: ${comments}
+
+<p>Комментарии, удаленные ранее, в список не входят.</p>
 
 <ul>
 
@@ -41,7 +44,7 @@ ${message}
 
     <li>
     
-Удаляется #${del.key}: ${del.value}
+#${del.key}: ${del.value}
 
     </li>
                       
@@ -21,7 +21,6 @@
 <%--@elvariable id="favsCount" type="java.lang.Integer"--%>
 <%--@elvariable id="sectionList" type="java.util.List<ru.org.linux.section.Section>"--%>
 <%--@elvariable id="tag" type="java.lang.String"--%>
-<%--@elvariable id="offset" type="java.lang.Integer"--%>
 <%--@elvariable id="section" type="java.lang.Integer"--%>
 <%--@elvariable id="messages" type="java.util.List<ru.org.linux.topic.PersonalizedPreparedTopic>"--%>
 
@@ -85,30 +85,16 @@
   />
 </c:forEach>
 
-<c:if test="${params !=null}">
-  <c:set var="aparams" value="${params}&"/>
-</c:if>
-
 <table class="nav">
   <tr>
-    <c:if test="${offset > 20}">
-      <td width="35%" align="left">
-        <a href="${url}?${aparams}offset=${offset-20}">← назад</a>
-      </td>
-    </c:if>
-    <c:if test="${offset == 20}">
+    <c:if test="${not empty prevLink}">
       <td width="35%" align="left">
-        <c:if test="${params!=null}">
-          <a href="${url}?${params}">← назад</a>
-        </c:if>
-        <c:if test="${params==null}">
-          <a href="${url}">← назад</a>
-        </c:if>
+        <a href="${prevLink}">← назад</a>
       </td>
     </c:if>
-    <c:if test="${offset < 200 && fn:length(messages) == 20}">
+    <c:if test="${not empty nextLink}">
       <td align="right" width="35%">
-        <a href="${url}?${aparams}offset=${offset+20}">вперед →</a>
+        <a href="${nextLink}">вперед →</a>
       </td>
     </c:if>
   </tr>
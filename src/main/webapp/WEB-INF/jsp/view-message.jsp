@@ -76,6 +76,7 @@
   </c:if>
 
   <c:if test="${not message.expired and not pages.hasNext}">
+    window.realtimeEventsCount = true;
     $script('/js/realtime.js', "realtime");
     $script.ready('realtime', function() {
         startRealtimeWS(${message.id}, "${message.link}", ${lastCommentId}, "${template.WSUrl}");
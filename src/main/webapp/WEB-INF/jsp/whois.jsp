@@ -270,7 +270,9 @@
             <lor:csrf/>
             <input type='hidden' name='id' value='${user.id}'>
             <c:if test="${user.blocked}">
-                <button type='submit' name='action' value="unblock">разблокировать</button>
+                <button type='submit' name='action' value="unblock">разблокировать</button><br>
+
+                [<a href="/people/${user.nick}/profile?wipe">перейти к удалению оставшихся сообщений</a>]
             </c:if>
             <c:if test="${not user.blocked}">
                 <label>Причина: <input type="text" name="reason" size="40" required></label>
@@ -45,6 +45,13 @@
       </button>
     </div>
   </c:if>
+  <c:if test="${user.blocked}">
+    <div class="form-actions">
+      <button type=submit name=action value="block-n-delete-comments" class="btn btn-danger">
+        Удалить оставшиеся сообщения
+      </button>
+    </div>
+  </c:if>
 </form>
 
 <jsp:include page="footer.jsp"/>
\ No newline at end of file
@@ -414,9 +414,20 @@ $(document).ready(function() {
       });
     }
 
+    function poll_count() {
+      // на страницах с realtime счетчик приходит через websocket, до первого сообщения опрашиваем сервер;
+      // после него опрашиваем редко на случай пропущенных сообщений
+      update_count();
+      setTimeout(poll_count, window.realtimeEventsReceived ? 600000 : 60000);
+    }
+
     $(function() {
       if ($('#main_events_count').length>0) {
-        update_count();
+        if (window.realtimeEventsCount) {
+          setTimeout(poll_count, 5000);
+        } else {
+          update_count();
+        }
       }
     });
   }
@@ -13,6 +13,10 @@
  *    limitations under the License.
  */
 
+function updateEventsCount(count) {
+  $('#main_events_count').text(count == 0 ? "" : ("(" + count + ")"));
+}
+
 function startRealtimeWS(topic, link, cid, wsUrl) {
   $script.ready('jquery', function () {
     $(function () {
@@ -23,7 +27,10 @@ function startRealtimeWS(topic, link, cid, wsUrl) {
         var ws = new WebSocket(wsUrl + "ws");
 
         ws.onmessage = function (event) {
-          if (!$('#commentForm').find(".spinner").length) {
+          if (event.data.lastIndexOf("events ", 0) === 0) {
+            window.realtimeEventsReceived = true;
+            updateEventsCount(event.data.substr(7));
+          } else if (!$('#commentForm').find(".spinner").length) {
             $("#realtime")
                 .text("Был добавлен новый комментарий. ")
                 .append($("<a>").attr("href", link + "?cid=" + event.data+"&skipdeleted=true").text("Обновить."))
@@ -0,0 +1,51 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.auth;
+
+import org.junit.Test;
+import ru.org.linux.auth.IPBlockDao.InetKey;
+
+import static org.junit.Assert.*;
+
+public class IPBlockDaoTest {
+  @Test
+  public void hostAddressEqualsFullMask() {
+    assertEquals(InetKey.parse("192.168.1.1"), InetKey.parse("192.168.1.1/32"));
+    assertEquals(InetKey.parse("::1"), InetKey.parse("0:0:0:0:0:0:0:1"));
+    assertEquals(InetKey.parse("2001:db8::1"), InetKey.parse("2001:db8::1/128"));
+  }
+
+  @Test
+  public void networkIsNotHost() {
+    assertNotEquals(InetKey.parse("10.0.0.0"), InetKey.parse("10.0.0.0/8"));
+    assertNotEquals(InetKey.parse("10.0.0.1"), InetKey.parse("10.0.0.0/8"));
+  }
+
+  @Test
+  public void mappedAddressKeepsFamily() {
+    assertNotEquals(InetKey.parse("1.2.3.4"), InetKey.parse("::ffff:1.2.3.4"));
+    assertEquals(InetKey.parse("::ffff:1.2.3.4"), InetKey.parse("::ffff:102:304/128"));
+    assertNull(InetKey.parse("::ffff:1.2.3.4/129"));
+  }
+
+  @Test
+  public void invalidAddress() {
+    assertNull(InetKey.parse("localhost"));
+    assertNull(InetKey.parse("10.0.0.1/33"));
+    assertNull(InetKey.parse("10.0.0.1/x"));
+    assertNull(InetKey.parse(""));
+  }
+}
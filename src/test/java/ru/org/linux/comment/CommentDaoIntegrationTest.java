@@ -25,6 +25,8 @@ import org.springframework.test.context.ContextHierarchy;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.ImmutableList;
+
 import javax.sql.DataSource;
 import java.sql.Timestamp;
 import java.util.Date;
@@ -163,4 +165,28 @@ public class CommentDaoIntegrationTest {
 
     assertTrue(commentDao.getReplaysCount(commentId1)>0);
   }
+
+  @Test
+  public void deleteCommentsWithoutRepliesTest() {
+    int commentId1 = jdbcTemplate.queryForObject("select nextval('s_msgid')", Integer.class);
+    int commentId2 = jdbcTemplate.queryForObject("select nextval('s_msgid')", Integer.class);
+    addComment(
+            commentId1,
+            null,
+            "CommentDaoIntegrationTest.deleteCommentsWithoutRepliesTest() - 1",
+            "comment body"
+    );
+    addComment(
+            commentId2,
+            commentId1,
+            "CommentDaoIntegrationTest.deleteCommentsWithoutRepliesTest() - 2",
+            "comment body"
+    );
+
+    List<Integer> ids = ImmutableList.of(commentId1, commentId2);
+
+    assertEquals(ImmutableList.of(commentId2), commentDao.deleteCommentsWithoutReplies(ids));
+    assertEquals(ImmutableList.of(commentId1), commentDao.deleteCommentsWithoutReplies(ids));
+    assertTrue(commentDao.deleteCommentsWithoutReplies(ids).isEmpty());
+  }
 }
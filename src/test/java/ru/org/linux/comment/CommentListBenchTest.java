@@ -0,0 +1,125 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ru.org.linux.comment;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Сравнение выборки страницы комментариев через индекс CommentList
+ * с прежним линейным поиском на синтетическом топике из 20000 комментариев;
+ * разница видна по времени lastPageLinear и lastPageIndexed в отчете тестов
+ */
+public class CommentListBenchTest {
+  private static final int COMMENTS = 20000;
+  private static final int PER_PAGE = 50;
+  private static final int ROUNDS = 500;
+
+  private CommentList comments;
+
+  @Before
+  public void buildTree() {
+    Random random = new Random(42);
+    List<Comment> list = new ArrayList<>(COMMENTS);
+
+    for (int i = 0; i < COMMENTS; i++) {
+      int id = 1000 + i * 3;
+      Integer replyTo = i > 0 && random.nextInt(3) > 0 ? list.get(random.nextInt(i)).getId() : null;
+
+      list.add(new Comment(replyTo, "", 1, id, 1, null));
+    }
+
+    comments = new CommentList(list, 0);
+  }
+
+  private static List<Comment> linearPage(List<Comment> comments, boolean reverse, int offset, int limit, Set<Integer> hideSet) {
+    List<Comment> out = new ArrayList<>();
+
+    for (ListIterator<Comment> i = comments.listIterator(reverse?comments.size():0); reverse?i.hasPrevious():i.hasNext();) {
+      int index = reverse?(comments.size()-i.previousIndex()):i.nextIndex();
+
+      Comment comment = reverse?i.previous():i.next();
+
+      if (index<offset || (limit!=0 && index>=offset+limit)) {
+        continue;
+      }
+
+      if (!hideSet.contains(comment.getId())) {
+        out.add(comment);
+      }
+    }
+
+    return out;
+  }
+
+  @Test
+  public void pagesMatchLinearScan() {
+    CommentFilter filter = new CommentFilter(comments);
+    Set<Integer> hideSet = ImmutableSet.of(1000, 1003, comments.getList().get(COMMENTS - 1).getId());
+
+    for (boolean reverse : new boolean[] { false, true }) {
+      for (int page : new int[] { 0, 1, 7, COMMENTS / PER_PAGE - 1, COMMENTS / PER_PAGE, COMMENTS / PER_PAGE + 1 }) {
+        assertEquals(
+                linearPage(comments.getList(), reverse, page * PER_PAGE, PER_PAGE, hideSet),
+                filter.getCommentsForPage(reverse, page, PER_PAGE, hideSet)
+        );
+      }
+
+      assertEquals(
+              linearPage(comments.getList(), reverse, 0, 0, hideSet),
+              filter.getCommentsForPage(reverse, -1, PER_PAGE, hideSet)
+      );
+    }
+
+    for (int i = 0; i < COMMENTS; i += 997) {
+      Comment comment = comments.getList().get(i);
+      assertEquals(comments.getList().indexOf(comment), comments.indexOf(comment.getId()));
+    }
+
+    assertEquals(-1, comments.indexOf(1));
+  }
+
+  @Test
+  public void lastPageLinear() {
+    int lastPage = COMMENTS / PER_PAGE - 1;
+
+    for (int round = 0; round < ROUNDS; round++) {
+      for (Comment comment : linearPage(comments.getList(), false, lastPage * PER_PAGE, PER_PAGE, ImmutableSet.of())) {
+        assertEquals(lastPage, comments.getList().indexOf(comment) / PER_PAGE);
+      }
+    }
+  }
+
+  @Test
+  public void lastPageIndexed() {
+    CommentFilter filter = new CommentFilter(comments);
+    int lastPage = COMMENTS / PER_PAGE - 1;
+
+    for (int round = 0; round < ROUNDS; round++) {
+      for (Comment comment : filter.getCommentsForPage(false, lastPage, PER_PAGE, ImmutableSet.of())) {
+        assertEquals(lastPage, comments.indexOf(comment.getId()) / PER_PAGE);
+      }
+    }
+  }
+}
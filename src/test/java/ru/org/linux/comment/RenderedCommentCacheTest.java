@@ -0,0 +1,73 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.comment;
+
+import org.apache.commons.httpclient.URI;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.org.linux.markup.MarkupType;
+import ru.org.linux.markup.MessageTextService;
+import ru.org.linux.spring.dao.MessageText;
+import ru.org.linux.topic.TopicDao;
+import ru.org.linux.util.formatter.MessageLinks;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class RenderedCommentCacheTest {
+  private RenderedCommentCache cache;
+  private MessageTextService textService;
+  private MessageLinks links;
+
+  @Before
+  public void init() throws Exception {
+    textService = mock(MessageTextService.class);
+
+    cache = new RenderedCommentCache();
+    ReflectionTestUtils.setField(cache, "textService", textService);
+
+    links = new MessageLinks(mock(TopicDao.class), mock(CommentDao.class), new URI("http://www.linux.org.ru/", true, "UTF-8"));
+  }
+
+  @Test
+  public void cachedHtmlIsReused() {
+    MessageText text = new MessageText("текст", MarkupType.Lorcode$.MODULE$);
+    when(textService.renderCommentText(text, false, links)).thenReturn("<p>текст</p>");
+
+    assertEquals("<p>текст</p>", cache.renderCommentText(1, text, false, links));
+    assertEquals("<p>текст</p>", cache.renderCommentText(1, text, false, links));
+
+    verify(textService, times(1)).renderCommentText(text, false, links);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void changedTextIsRenderedAgain() {
+    MessageText before = new MessageText("до правки", MarkupType.Lorcode$.MODULE$);
+    MessageText after = new MessageText("после правки", MarkupType.Lorcode$.MODULE$);
+    when(textService.renderCommentText(before, false, links)).thenReturn("<p>до правки</p>");
+    when(textService.renderCommentText(after, false, links)).thenReturn("<p>после правки</p>");
+
+    // показ, прочитавший текст до правки, положил html в кеш уже после сброса
+    cache.renderCommentText(1, before, false, links);
+
+    assertEquals("<p>после правки</p>", cache.renderCommentText(1, after, false, links));
+    assertEquals(0, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+}
@@ -15,6 +15,8 @@
 
 package ru.org.linux.gallery;
 
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.ImportResource;
@@ -49,6 +51,11 @@ public class ImageDaoIntegrationTestConfiguration {
     return new UserDao();
   }
 
+  @Bean
+  public CacheManager cacheManager() {
+    return new NoOpCacheManager();
+  }
+
   @Bean
   public UserLogDao userLogDao() {
     return mock(UserLogDao.class);
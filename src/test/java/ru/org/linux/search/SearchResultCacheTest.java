@@ -0,0 +1,65 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.search;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SearchResultCacheTest {
+  @Test
+  public void hitSameGeneration() {
+    SearchResultCache cache = new SearchResultCache();
+
+    cache.put("q=linux", 1, "forum", ImmutableMap.of("numFound", 10));
+
+    SearchResultCache.Page page = cache.get("q=linux", 1);
+
+    assertNotNull(page);
+    assertEquals("forum", page.getSection());
+    assertEquals(10, page.getParams().get("numFound"));
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void missAfterIndexChange() {
+    SearchResultCache cache = new SearchResultCache();
+
+    cache.put("q=linux", 1, null, ImmutableMap.of());
+
+    assertNull(cache.get("q=linux", 2));
+    assertNull(cache.get("q=bsd", 1));
+    assertEquals(2, cache.getMissCount());
+    assertEquals(0.0, cache.getHitRatio(), 0.001);
+  }
+
+  @Test
+  public void storedCopy() {
+    SearchResultCache cache = new SearchResultCache();
+
+    Map<String, Object> params = new HashMap<>();
+    params.put("numFound", 10);
+
+    cache.put("q=linux", 1, null, params);
+    params.put("numFound", 20);
+
+    assertEquals(10, cache.get("q=linux", 1).getParams().get("numFound"));
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.site.tags;
+
+import com.google.common.collect.Maps;
+import de.neuland.jade4j.JadeConfiguration;
+import de.neuland.jade4j.template.FileTemplateLoader;
+import de.neuland.jade4j.template.JadeTemplate;
+import org.junit.Before;
+import org.junit.Test;
+import ru.org.linux.comment.*;
+import ru.org.linux.site.ApiDeleteInfo;
+import ru.org.linux.user.ApiUserRef;
+import ru.org.linux.user.Userpic;
+
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Сравнение CommentRenderer с jade шаблонами: одинаковая разметка
+ * и время вывода страницы из 200 комментариев (pageJade и pageCompiled)
+ */
+public class CommentRendererBenchTest {
+  private static final String LINK = "/forum/talks/77";
+  private static final int ROUNDS = 20;
+
+  private JadeConfiguration jade;
+  private JadeTemplate templateComment;
+  private JadeTemplate templateSign;
+
+  private final List<PreparedComment> comments = new ArrayList<>();
+
+  @Before
+  public void prepare() throws Exception {
+    jade = new JadeConfiguration();
+    jade.setPrettyPrint(false);
+    jade.setCaching(true);
+    jade.setTemplateLoader(new FileTemplateLoader("src/main/webapp/template/", "UTF-8"));
+
+    templateComment = jade.getTemplate("comment");
+    templateSign = jade.getTemplate("sign");
+
+    ApiUserRef user = new ApiUserRef("maxcom", false, false, "<img src=\"/img/normal-star.gif\" width=9 height=9 alt=\"*\">", null, null);
+    ApiUserRef moderator = new ApiUserRef("mo<d>", false, false, "*****", 450, 500);
+    ApiUserRef blocked = new ApiUserRef("blocked", true, false, "*", null, null);
+    ApiUserRef anonymous = new ApiUserRef("anonymous", false, true, "", null, null);
+    ApiUserRef blockedAnonymous = new ApiUserRef("anonymous", true, true, "", null, null);
+
+    Timestamp date = new Timestamp(1500000000000L);
+
+    comments.add(new PreparedComment(comment(1, "", false), user, "<p>text</p>",
+            null, false, false, null, null, null, null, null, null, false));
+
+    comments.add(new PreparedComment(comment(2, "Re: \"title\" & <more>", false), moderator, "<p>text &amp; more</p>",
+            new ReplyInfo(1, "maxcom", "R <b>title</b>", date, true, false),
+            true, true, "rem<ark>", new Userpic("/photos/1.png?a=1&b=\"2\"", 150, 100), null,
+            new EditSummary("ed<it>", date, 3), "127.0.0.1", "Mozilla/5.0 & \"x\"", false));
+
+    comments.add(new PreparedComment(comment(3, "«Ё» ü", true), blocked, "<p>deleted</p>",
+            new ReplyInfo(2, true), false, false, "", null,
+            new ApiDeleteInfo("mo<d>", "6.2 \"reason\""), null, "", "", true));
+
+    comments.add(new PreparedComment(comment(4, "", true), anonymous, "<p>deleted</p>",
+            new ReplyInfo(3, "blocked", null, date, false, false), false, false, null, null,
+            null, null, null, null, false));
+
+    comments.add(new PreparedComment(comment(5, "", false), blockedAnonymous, "<pre>code</pre>",
+            new ReplyInfo(4, "anonymous", "", date, false, false), false, true, null, null,
+            null, null, null, null, false));
+
+    for (int i = 0; comments.size() < 200; i++) {
+      comments.add(comments.get(i % 5));
+    }
+  }
+
+  private static Comment comment(int id, String title, boolean deleted) {
+    Comment comment = mock(Comment.class);
+
+    when(comment.getId()).thenReturn(id);
+    when(comment.getTitle()).thenReturn(title);
+    when(comment.getPostdate()).thenReturn(new Timestamp(1500000000000L + id * 1000));
+    when(comment.isDeleted()).thenReturn(deleted);
+
+    return comment;
+  }
+
+  private String renderJade(PreparedComment comment, boolean enableSchema, boolean commentsAllowed, boolean showMenu) {
+    Map<String, Object> data = Maps.newHashMap();
+
+    data.put("comment", comment);
+    data.put("enableSchema", enableSchema);
+    data.put("topic", new ApiCommentTopicInfo(77, LINK, commentsAllowed));
+    data.put("showMenu", showMenu);
+    data.put("dateFormat", new SignTag.DateFormatHandler());
+
+    StringWriter out = new StringWriter();
+    jade.renderTemplate(templateComment, data, out);
+    return out.toString();
+  }
+
+  private static String render(PreparedComment comment, boolean enableSchema, boolean commentsAllowed, boolean showMenu) throws Exception {
+    StringWriter out = new StringWriter();
+    CommentRenderer.comment(out, comment, enableSchema, 77, LINK, commentsAllowed, showMenu);
+    return out.toString();
+  }
+
+  @Test
+  public void commentSameAsJade() throws Exception {
+    for (PreparedComment comment : comments.subList(0, 5)) {
+      for (int flags = 0; flags < 8; flags++) {
+        boolean enableSchema = (flags & 1) != 0;
+        boolean commentsAllowed = (flags & 2) != 0;
+        boolean showMenu = (flags & 4) != 0;
+
+        assertEquals(
+                renderJade(comment, enableSchema, commentsAllowed, showMenu),
+                render(comment, enableSchema, commentsAllowed, showMenu)
+        );
+      }
+    }
+  }
+
+  @Test
+  public void signSameAsJade() throws Exception {
+    for (PreparedComment comment : comments.subList(0, 5)) {
+      for (int flags = 0; flags < 8; flags++) {
+        boolean shortMode = (flags & 1) != 0;
+        boolean author = (flags & 2) != 0;
+        String timeprop = (flags & 4) != 0 ? "dateCreated" : null;
+
+        Map<String, Object> data = Maps.newHashMap();
+
+        data.put("user", comment.getAuthor());
+        data.put("shortMode", shortMode);
+        data.put("author", author);
+        data.put("postdate", comment.getPostdate());
+        data.put("dateFormat", new SignTag.DateFormatHandler());
+
+        if (timeprop != null) {
+          data.put("timeprop", timeprop);
+        }
+
+        StringWriter jadeOut = new StringWriter();
+        jade.renderTemplate(templateSign, data, jadeOut);
+
+        StringWriter out = new StringWriter();
+        CommentRenderer.sign(out, comment.getAuthor(), shortMode, author, comment.getPostdate(), timeprop);
+
+        assertEquals(jadeOut.toString(), out.toString());
+      }
+    }
+  }
+
+  @Test
+  public void pageSameAsJade() throws Exception {
+    assertEquals(renderPageJade(), renderPage());
+  }
+
+  @Test
+  public void pageJade() throws Exception {
+    int length = renderPage().length();
+
+    for (int round = 0; round < ROUNDS; round++) {
+      assertEquals(length, renderPageJade().length());
+    }
+  }
+
+  @Test
+  public void pageCompiled() throws Exception {
+    int length = renderPageJade().length();
+
+    for (int round = 0; round < ROUNDS; round++) {
+      assertEquals(length, renderPage().length());
+    }
+  }
+
+  private String renderPageJade() {
+    StringBuilder page = new StringBuilder();
+
+    for (PreparedComment comment : comments) {
+      page.append(renderJade(comment, true, true, true));
+    }
+
+    return page.toString();
+  }
+
+  private String renderPage() throws Exception {
+    StringBuilder page = new StringBuilder();
+
+    for (PreparedComment comment : comments) {
+      page.append(render(comment, true, true, true));
+    }
+
+    return page.toString();
+  }
+}
@@ -15,7 +15,10 @@
 
 package ru.org.linux.topic;
 
+import akka.actor.ActorRef;
 import com.sksamuel.elastic4s.http.ElasticClient;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
 import org.springframework.context.annotation.*;
 import org.springframework.stereotype.Controller;
 import play.api.libs.ws.StandaloneWSClient;
@@ -90,4 +93,14 @@ public class TopicIntegrationTestConfiguration {
   public ElasticClient elasticClient() {
     return mock(ElasticClient.class);
   }
+
+  @Bean
+  public CacheManager cacheManager() {
+    return new NoOpCacheManager();
+  }
+
+  @Bean(name = "realtimeHubWS")
+  public ActorRef realtimeHub() {
+    return mock(ActorRef.class);
+  }
 }
@@ -23,6 +23,7 @@ import org.junit.Test;
 import ru.org.linux.test.WebHelper;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  */
@@ -43,4 +44,15 @@ public class TopicListControllerWebTest {
         .get(ClientResponse.class);
     assertEquals(HttpStatus.SC_OK, cr.getStatus());
   }
+
+  @Test
+  public void testOffsetRedirect() {
+    ClientResponse cr = resource
+        .path("/news/")
+        .queryParam("offset", "20")
+        .get(ClientResponse.class);
+
+    assertEquals(HttpStatus.SC_MOVED_TEMPORARILY, cr.getStatus());
+    assertTrue(cr.getLocation().toString().contains("/news/?after="));
+  }
 }
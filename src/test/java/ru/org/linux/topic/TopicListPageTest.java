@@ -0,0 +1,111 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import org.junit.Test;
+import ru.org.linux.util.ServletParameterBadValueException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TopicListPageTest {
+  private static final int PAGE = 3;
+
+  private static List<Topic> topics(int... ids) {
+    List<Topic> topics = new ArrayList<>();
+
+    for (int id : ids) {
+      Topic topic = mock(Topic.class);
+      when(topic.getId()).thenReturn(id);
+      topics.add(topic);
+    }
+
+    return topics;
+  }
+
+  private static void assertCursor(String expected, TopicListCursor cursor) {
+    assertEquals(expected, cursor != null ? cursor.toString() : null);
+  }
+
+  @Test
+  public void firstPage() {
+    TopicListPage page = TopicListPage.of(topics(10, 9, 8, 7), null, PAGE);
+
+    assertEquals(PAGE, page.getTopics().size());
+    assertNull(page.getPrev());
+    assertCursor("after=8", page.getNext());
+
+    assertNull(TopicListPage.of(topics(10, 9), null, PAGE).getNext());
+  }
+
+  @Test
+  public void afterCursor() {
+    TopicListPage page = TopicListPage.of(topics(7, 6, 5, 4), TopicListCursor.after(8), PAGE);
+
+    assertCursor("before=7", page.getPrev());
+    assertCursor("after=5", page.getNext());
+
+    TopicListPage last = TopicListPage.of(topics(4), TopicListCursor.after(5), PAGE);
+
+    assertCursor("before=4", last.getPrev());
+    assertNull(last.getNext());
+
+    TopicListPage empty = TopicListPage.of(topics(), TopicListCursor.after(4), PAGE);
+
+    assertTrue(empty.isRedirect());
+    assertNull(empty.getRedirectTo());
+  }
+
+  @Test
+  public void withoutNext() {
+    TopicListPage page = TopicListPage.of(topics(7, 6, 5, 4), TopicListCursor.after(8), PAGE).withoutNext();
+
+    assertEquals(PAGE, page.getTopics().size());
+    assertCursor("before=7", page.getPrev());
+    assertNull(page.getNext());
+  }
+
+  @Test
+  public void beforeCursor() {
+    TopicListPage page = TopicListPage.of(topics(11, 10, 9, 8), TopicListCursor.before(7), PAGE);
+
+    assertFalse(page.isRedirect());
+    assertEquals(10, page.getTopics().get(0).getId());
+    assertCursor("before=10", page.getPrev());
+    assertCursor("after=8", page.getNext());
+
+    TopicListPage top = TopicListPage.of(topics(9, 8, 7), TopicListCursor.before(6), PAGE);
+
+    assertTrue(top.isRedirect());
+    assertNull(top.getRedirectTo());
+  }
+
+  @Test
+  public void fromRequest() throws Exception {
+    assertNull(TopicListCursor.fromRequest(null, null));
+    assertCursor("after=5", TopicListCursor.fromRequest(5, null));
+    assertCursor("before=5", TopicListCursor.fromRequest(null, 5));
+  }
+
+  @Test(expected = ServletParameterBadValueException.class)
+  public void bothCursors() throws Exception {
+    TopicListCursor.fromRequest(5, 6);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.topic;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import ru.org.linux.topic.TopicNavigationIndex.Track;
+
+import java.sql.Timestamp;
+
+import static org.junit.Assert.*;
+import static ru.org.linux.topic.TopicNavigationIndex.NOT_FOUND;
+
+public class TopicNavigationIndexTest {
+  private static final Track TRACK = Track.EMPTY
+          .with(300, 3, 100)
+          .with(100, 1, 100)
+          .with(200, 2, 200)
+          .with(200, 4, 100);
+
+  @Test
+  public void previousAndNext() {
+    assertEquals(1, TRACK.previous(200, 2, ImmutableSet.of()));
+    assertEquals(4, TRACK.next(200, 2, ImmutableSet.of()));
+    assertEquals(2, TRACK.previous(200, 4, ImmutableSet.of()));
+    assertEquals(3, TRACK.next(200, 4, ImmutableSet.of()));
+    assertEquals(4, TRACK.previous(300, 3, ImmutableSet.of()));
+    assertEquals(2, TRACK.next(100, 1, ImmutableSet.of()));
+  }
+
+  @Test
+  public void bounds() {
+    assertEquals(NOT_FOUND, TRACK.previous(100, 1, ImmutableSet.of()));
+    assertEquals(NOT_FOUND, TRACK.next(300, 3, ImmutableSet.of()));
+    assertEquals(NOT_FOUND, Track.EMPTY.next(0, 0, ImmutableSet.of()));
+  }
+
+  @Test
+  public void ignoreList() {
+    assertEquals(2, TRACK.previous(300, 3, ImmutableSet.of(100)));
+    assertEquals(NOT_FOUND, TRACK.next(200, 2, ImmutableSet.of(100)));
+  }
+
+  @Test
+  public void without() {
+    Track track = TRACK.without(4);
+
+    assertEquals(3, track.size());
+    assertEquals(2, track.previous(300, 3, ImmutableSet.of()));
+    assertSame(track, track.without(4));
+  }
+
+  @Test
+  public void micros() {
+    Timestamp first = Timestamp.valueOf("2019-12-01 10:00:00.123456");
+    Timestamp second = Timestamp.valueOf("2019-12-01 10:00:00.123789");
+
+    assertEquals(333, TopicNavigationIndex.micros(second) - TopicNavigationIndex.micros(first));
+    assertEquals(first.getTime() * 1000 + 456, TopicNavigationIndex.micros(first));
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.tracker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.org.linux.group.TopicsListItem;
+import ru.org.linux.tracker.TrackerTopic.TrackerComment;
+import ru.org.linux.user.IgnoreListDao;
+import ru.org.linux.user.User;
+import ru.org.linux.user.UserService;
+import ru.org.linux.user.UserTagDao;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Отбор топиков индексом трекера должен совпадать с запросом GroupListDao.queryTrackerMain
+ */
+public class TrackerIndexTest {
+  private static final int GROUP = 1;
+  private static final int TALKS = 8404;
+
+  private TrackerIndex index;
+  private TrackerDao trackerDao;
+  private IgnoreListDao ignoreListDao;
+  private UserTagDao userTagDao;
+  private User user;
+
+  private final Map<Integer, TrackerTopic> topics = new HashMap<>();
+
+  private static Timestamp hoursAgo(int hours) {
+    return new Timestamp(System.currentTimeMillis() - hours * 60L * 60 * 1000);
+  }
+
+  private static Date startDate() {
+    return hoursAgo(4 * 24);
+  }
+
+  private static TrackerComment comment(int id, int userid, int hoursAgo, Integer... branchAuthors) {
+    return new TrackerComment(id, userid, hoursAgo(hoursAgo), ImmutableSet.copyOf(branchAuthors));
+  }
+
+  private void topic(int msgid, int author, int groupId, int hoursAgo, boolean uncommited,
+                     List<String> tags, boolean truncated, TrackerComment... comments) {
+    Timestamp postdate = hoursAgo(hoursAgo);
+    Timestamp lastmod = comments.length > 0 ? comments[0].getPostdate() : postdate;
+
+    topics.put(msgid, new TrackerTopic(msgid, author, lastmod, postdate, comments.length, groupId, "group", "group",
+            2, "title " + msgid, false, false, uncommited, ImmutableList.copyOf(tags),
+            ImmutableList.copyOf(comments), truncated));
+  }
+
+  private void topic(int msgid, int author, int hoursAgo, TrackerComment... comments) {
+    topic(msgid, author, GROUP, hoursAgo, false, ImmutableList.of(), false, comments);
+  }
+
+  @Before
+  public void init() {
+    trackerDao = mock(TrackerDao.class);
+    ignoreListDao = mock(IgnoreListDao.class);
+    userTagDao = mock(UserTagDao.class);
+
+    UserService userService = mock(UserService.class);
+    when(userService.getUsersCachedMap(any(Iterable.class))).thenReturn(ImmutableMap.of());
+
+    index = new TrackerIndex();
+    ReflectionTestUtils.setField(index, "trackerDao", trackerDao);
+    ReflectionTestUtils.setField(index, "userService", userService);
+    ReflectionTestUtils.setField(index, "ignoreListDao", ignoreListDao);
+    ReflectionTestUtils.setField(index, "userTagDao", userTagDao);
+
+    // полная загрузка без списка id, обновление - только запрошенные топики
+    when(trackerDao.load(any(Date.class), anyCollectionOf(Integer.class))).thenAnswer(invocation -> {
+      Collection<?> ids = (Collection<?>) invocation.getArguments()[1];
+      Map<Integer, TrackerTopic> loaded = new HashMap<>(topics);
+
+      if (ids != null) {
+        loaded.keySet().retainAll(ids);
+      }
+
+      return loaded;
+    });
+    when(trackerDao.changedSince(any(Timestamp.class)))
+            .thenAnswer(invocation -> new TrackerDao.Changes(ImmutableList.of(), (Timestamp) invocation.getArguments()[0]));
+
+    user = mock(User.class);
+    when(user.getId()).thenReturn(100);
+    when(ignoreListDao.get(user)).thenReturn(ImmutableSet.of());
+    when(userTagDao.getTags(100, false)).thenReturn(ImmutableList.of());
+    when(userTagDao.getTags(100, true)).thenReturn(ImmutableList.of());
+  }
+
+  private List<TopicsListItem> tracker(User currentUser) {
+    index.refresh();
+
+    return index.getTrackerTopics(topic -> true, currentUser, startDate(), 30, 0, 50);
+  }
+
+  private static List<Integer> ids(List<TopicsListItem> items) {
+    return items.stream().map(TopicsListItem::getMsgid).collect(Collectors.toList());
+  }
+
+  @Test
+  public void orderedByLastCommentOrTopicDate() {
+    topic(1, 10, 50, comment(11, 20, 1), comment(12, 21, 30));
+    topic(2, 10, 3);
+    topic(3, 10, 5 * 24, comment(31, 20, 2));
+    // комментарии за окном трекера, сам топик в окне
+    topic(4, 10, 10, comment(41, 20, 99 * 24));
+
+    List<TopicsListItem> items = tracker(null);
+
+    assertEquals(ImmutableList.of(1, 3, 2, 4), ids(items));
+    assertEquals(11, items.get(0).getCid());
+    assertEquals(0, items.get(2).getCid());
+  }
+
+  @Test
+  public void oldTopicsWithoutNewCommentsSkipped() {
+    topic(1, 10, 5 * 24);
+    topic(2, 10, 6 * 24, comment(21, 20, 5 * 24));
+
+    assertEquals(ImmutableList.of(), ids(tracker(null)));
+  }
+
+  @Test
+  public void uncommitedShownToModerators() {
+    topic(1, 10, GROUP, 1, true, ImmutableList.of(), false);
+    topic(2, 10, 2);
+
+    assertEquals(ImmutableList.of(2), ids(tracker(null)));
+
+    when(user.isModerator()).thenReturn(true);
+
+    assertEquals(ImmutableList.of(1, 2), ids(tracker(user)));
+  }
+
+  @Test
+  public void ignoredAuthorsAndBranches() {
+    when(ignoreListDao.get(user)).thenReturn(ImmutableSet.of(666));
+
+    topic(1, 666, 1);
+    // последний комментарий в ветке игнорируемого, показывается предыдущий
+    topic(2, 10, 50, comment(21, 20, 2, 20, 666), comment(22, 21, 3, 21));
+    // все комментарии в ветках игнорируемого, топик показывается по дате создания
+    topic(3, 10, 4, comment(31, 20, 1, 666));
+
+    List<TopicsListItem> items = tracker(user);
+
+    assertEquals(ImmutableList.of(2, 3), ids(items));
+    assertEquals(22, items.get(0).getCid());
+    assertEquals(0, items.get(1).getCid());
+  }
+
+  @Test
+  public void truncatedTopicFallsBackToSql() {
+    when(ignoreListDao.get(user)).thenReturn(ImmutableSet.of(666));
+
+    topic(1, 10, GROUP, 50, false, ImmutableList.of(), true, comment(11, 20, 1, 666));
+
+    assertNull(tracker(user));
+    assertEquals(ImmutableList.of(1), ids(tracker(null)));
+  }
+
+  @Test
+  public void ignoredTagsUnlessFavorite() {
+    when(userTagDao.getTags(100, false)).thenReturn(ImmutableList.of("windows"));
+    when(userTagDao.getTags(100, true)).thenReturn(ImmutableList.of("linux"));
+
+    topic(1, 10, GROUP, 1, false, ImmutableList.of("windows"), false);
+    topic(2, 10, GROUP, 2, false, ImmutableList.of("windows", "linux"), false);
+    topic(3, 10, GROUP, 3, false, ImmutableList.of("macos"), false);
+
+    assertEquals(ImmutableList.of(2, 3), ids(tracker(user)));
+  }
+
+  @Test
+  public void filterAndPaging() {
+    topic(1, 10, TALKS, 1, false, ImmutableList.of(), false);
+    topic(2, 10, 2);
+    topic(3, 10, 3);
+    topic(4, 10, 4);
+
+    index.refresh();
+
+    List<TopicsListItem> page = index.getTrackerTopics(topic -> topic.getGroupId() != TALKS, null, startDate(), 2, 1, 50);
+
+    assertEquals(ImmutableList.of(3, 4), ids(page));
+  }
+
+  @Test
+  public void startBeforeWindowFallsBackToSql() {
+    index.refresh();
+
+    assertNull(index.getTrackerTopics(topic -> true, null, hoursAgo(6 * 24), 30, 0, 50));
+  }
+
+  @Test
+  public void changesReadWithLastmodSlack() {
+    topic(1, 10, 1);
+
+    index.refresh();
+    index.refresh();
+
+    Timestamp lastmod = topics.get(1).getLastmod();
+
+    verify(trackerDao, atLeastOnce()).changedSince(new Timestamp(lastmod.getTime() - 60 * 1000));
+  }
+
+  @Test
+  public void changedTopicReloaded() {
+    topic(1, 10, 5);
+    index.refresh();
+
+    topic(2, 10, 1);
+    index.topicChanged(2);
+
+    assertEquals(ImmutableList.of(2, 1), ids(tracker(null)));
+  }
+}
@@ -19,10 +19,18 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.ContextHierarchy;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+import ru.org.linux.topic.Topic;
 
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @ContextHierarchy({
         @ContextConfiguration("classpath:database.xml"),
@@ -37,6 +45,13 @@ public class MemoriesDaoIntegrationTest {
   @Autowired
   private MemoriesDao memoriesDao;
 
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  public void setDataSource(DataSource ds) {
+    jdbcTemplate = new JdbcTemplate(ds);
+  }
+
   @Test
   public void test1() {
     User maxcom = userDao.getUser(1);
@@ -47,4 +62,28 @@ public class MemoriesDaoIntegrationTest {
     assertFalse(memoriesDao.isFavPresetForUser(anonymous));
   }
 
+  @Test
+  @Transactional
+  public void topicInfoTest() {
+    User anonymous = userDao.getUser(2);
+
+    Topic topic = mock(Topic.class);
+    when(topic.getId()).thenReturn(jdbcTemplate.queryForObject("select min (id) from topics", Integer.class));
+
+    MemoriesInfo before = memoriesDao.getTopicInfo(topic.getId(), anonymous);
+    assertEquals(0, before.favId());
+
+    int id = memoriesDao.addToMemories(anonymous, topic, false);
+
+    MemoriesInfo added = memoriesDao.getTopicInfo(topic.getId(), anonymous);
+    assertEquals(id, added.favId());
+    assertEquals(before.favsCount() + 1, added.favsCount());
+    assertEquals(before.watchCount(), added.watchCount());
+
+    memoriesDao.delete(id);
+
+    MemoriesInfo removed = memoriesDao.getTopicInfo(topic.getId(), anonymous);
+    assertEquals(0, removed.favId());
+    assertEquals(before.favsCount(), removed.favsCount());
+  }
 }
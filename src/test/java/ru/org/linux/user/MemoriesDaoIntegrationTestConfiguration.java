@@ -14,6 +14,8 @@
  */
 package ru.org.linux.user;
 
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -31,6 +33,11 @@ public class MemoriesDaoIntegrationTestConfiguration {
     return new UserDao();
   }
 
+  @Bean
+  public CacheManager cacheManager() {
+    return new NoOpCacheManager();
+  }
+
   @Bean
   public UserLogDao userLogDao() {
     return new UserLogDao();
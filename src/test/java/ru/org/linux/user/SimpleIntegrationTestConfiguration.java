@@ -15,6 +15,8 @@
 
 package ru.org.linux.user;
 
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -32,6 +34,11 @@ public class SimpleIntegrationTestConfiguration {
     return new UserDao();
   }
 
+  @Bean
+  public CacheManager cacheManager() {
+    return new NoOpCacheManager();
+  }
+
   @Bean
   public UserLogDao userLogDao() {
     return mock(UserLogDao.class);
@@ -15,6 +15,7 @@
 
 package ru.org.linux.user;
 
+import com.google.common.collect.ImmutableList;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -29,6 +30,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.sql.DataSource;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -104,6 +106,29 @@ public class UserDaoIntegrationTest {
     assertNotNull(cache.get(user.getId()));
   }
 
+  @Test
+  public void testUsersCached() throws UserNotFoundException {
+    User cached = userDao.getUserCached(TEST_ID);
+
+    jdbcTemplate.update("UPDATE users SET blocked='t' WHERE id=?", TEST_ID);
+
+    Map<Integer, User> users = userDao.getUsersCached(ImmutableList.of(TEST_ID, UserService.AnonymousUserId()));
+
+    assertEquals(2, users.size());
+    assertSame(cached, users.get(TEST_ID));
+    assertTrue(users.get(UserService.AnonymousUserId()).isAnonymous());
+
+    assertNotNull(cache.get(UserService.AnonymousUserId()));
+  }
+
+  @Test
+  public void testUsersCachedNotFound() {
+    Map<Integer, User> users = userDao.getUsersCached(ImmutableList.of(TEST_ID, -1));
+
+    assertEquals(1, users.size());
+    assertNotNull(users.get(TEST_ID));
+  }
+
   @Test
   public void testBlock() throws UserNotFoundException {
     User user = userDao.getUser(TEST_ID);
@@ -54,6 +54,17 @@ public class UserEventDaoIntegrationTest {
     assertEquals(1, events.size());
   }
 
+  @Test
+  public void testAddEvents() {
+    userEventDao.addEvents(UserEventFilterEnum.TAG.getType(), ImmutableList.of(TEST_USER_ID), false, TEST_TOPIC_ID, null, null);
+
+    List<UserEvent> events = userEventDao.getRepliesForUser(TEST_USER_ID, true, 50, 0, null);
+
+    assertEquals(1, events.size());
+    assertEquals(TEST_TOPIC_ID, events.get(0).getTopicId());
+    assertEquals(1, userDao.getUser(TEST_USER_ID).getUnreadEvents());
+  }
+
   @Test
   public void testInsertTopicUserNotification() {
     userEventDao.insertTopicNotification(TEST_TOPIC_ID, ImmutableList.of(TEST_USER_ID));
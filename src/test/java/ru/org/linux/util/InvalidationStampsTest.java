@@ -0,0 +1,66 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class InvalidationStampsTest {
+  @After
+  public void clearSynchronization() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  public void loadBeforeInvalidateIsStale() {
+    InvalidationStamps stamps = new InvalidationStamps(16);
+
+    long loaded = stamps.get("user");
+
+    stamps.invalidate("user", () -> {});
+
+    assertNotEquals(loaded, stamps.get("user"));
+  }
+
+  @Test
+  public void invalidateAgainAfterCommit() {
+    InvalidationStamps stamps = new InvalidationStamps(16);
+    AtomicInteger evicted = new AtomicInteger();
+
+    TransactionSynchronizationManager.initSynchronization();
+
+    stamps.invalidate(1, evicted::incrementAndGet);
+
+    // загрузка до коммита видит еще старые данные
+    long loadedInTransaction = stamps.get(1);
+
+    assertEquals(1, evicted.get());
+
+    TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+    assertEquals(2, evicted.get());
+    assertNotEquals(loadedInTransaction, stamps.get(1));
+  }
+}
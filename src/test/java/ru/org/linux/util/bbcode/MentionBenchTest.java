@@ -0,0 +1,141 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util.bbcode;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.httpclient.URI;
+import org.junit.Before;
+import org.junit.Test;
+import ru.org.linux.spring.SiteConfig;
+import ru.org.linux.user.User;
+import ru.org.linux.user.UserNotFoundException;
+import ru.org.linux.user.UserService;
+import ru.org.linux.util.bbcode.nodes.RootNode;
+import ru.org.linux.util.formatter.ToHtmlFormatter;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static ru.org.linux.util.bbcode.Parser.DEFAULT_PARSER;
+
+/**
+ * Сравнение извлечения упоминаний обходом дерева с прежним извлечением через рендеринг html;
+ * время видно по mentionsByRender и mentionsByVisitor
+ */
+public class MentionBenchTest {
+  private static final int ROUNDS = 2000;
+
+  private static final String MESSAGE =
+          "[quote=[user]maxcom[/user]]Процитированный текст со ссылкой http://www.linux.org.ru/forum/talks/1234 " +
+          "и ещё немного текста[/quote]\n\n" +
+          "[user]JB[/user], посмотри [url=http://www.fishing.org/][user]splinter[/user][/url].\n\n" +
+          "[code=java]public class Test { /* [user]isden[/user] */ }[/code]\n\n" +
+          "[list][*]первый пункт [b]жирный[/b] [user]hizel[/user][*]второй [i]курсив[/i] [user]maxcom[/user][/list]\n\n" +
+          "[cut]под катом [user]JB[/user] [user]isden[/user][/cut]\n\n" +
+          "[user][/user] [user]   [/user] Просто длинный абзац текста без разметки, который обычно составляет " +
+          "большую часть сообщения и проходит через типограф и автоссылки при рендеринге.";
+
+  private LorCodeService lorCodeService;
+  private UserService userService;
+  private ToHtmlFormatter toHtmlFormatter;
+
+  private User maxcom;
+  private User JB;
+  private User splinter;
+
+  @Before
+  public void initTest() throws Exception {
+    userService = mock(UserService.class);
+
+    maxcom = user("maxcom", false);
+    JB = user("JB", false);
+    splinter = user("splinter", false);
+    User isden = user("isden", true);
+
+    when(userService.getUserCached("maxcom")).thenReturn(maxcom);
+    when(userService.getUserCached("JB")).thenReturn(JB);
+    when(userService.getUserCached("splinter")).thenReturn(splinter);
+    when(userService.getUserCached("isden")).thenReturn(isden);
+    when(userService.getUserCached("hizel")).thenThrow(new UserNotFoundException("hizel"));
+
+    URI mainURI = new URI("http://127.0.0.1:8080/", true, "UTF-8");
+
+    SiteConfig siteConfig = mock(SiteConfig.class);
+    when(siteConfig.getMainURI()).thenReturn(mainURI);
+    when(siteConfig.getSecureURI()).thenReturn(mainURI);
+
+    toHtmlFormatter = new ToHtmlFormatter();
+    toHtmlFormatter.setSiteConfig(siteConfig);
+
+    lorCodeService = new LorCodeService();
+    lorCodeService.setUserService(userService);
+    lorCodeService.setToHtmlFormatter(toHtmlFormatter);
+  }
+
+  private static User user(String nick, boolean blocked) {
+    User user = mock(User.class);
+
+    when(user.getNick()).thenReturn(nick);
+    when(user.isBlocked()).thenReturn(blocked);
+
+    return user;
+  }
+
+  private Set<User> replierByRender(String text) {
+    RootNode rootNode = DEFAULT_PARSER.createRootNode();
+    rootNode.setCommentCutOptions();
+    rootNode.setUserService(userService);
+    rootNode.setToHtmlFormatter(toHtmlFormatter);
+
+    DEFAULT_PARSER.parseRoot(rootNode, text).renderXHtml();
+
+    return rootNode.getReplier();
+  }
+
+  @Test
+  public void sameAsRender() {
+    assertEquals(ImmutableSet.of(maxcom, JB, splinter), lorCodeService.getReplierFromMessage(MESSAGE));
+    assertEquals(replierByRender(MESSAGE), lorCodeService.getReplierFromMessage(MESSAGE));
+  }
+
+  @Test
+  public void mentionsInOrder() {
+    MentionVisitor visitor = new MentionVisitor();
+    DEFAULT_PARSER.parseRoot(DEFAULT_PARSER.createRootNode(), MESSAGE).accept(visitor);
+
+    assertEquals(
+            ImmutableList.of("JB", "splinter", "hizel", "maxcom", "isden"),
+            ImmutableList.copyOf(visitor.getMentions())
+    );
+  }
+
+  @Test
+  public void mentionsByRender() {
+    for (int i = 0; i < ROUNDS; i++) {
+      assertEquals(3, replierByRender(MESSAGE).size());
+    }
+  }
+
+  @Test
+  public void mentionsByVisitor() {
+    for (int i = 0; i < ROUNDS; i++) {
+      assertEquals(3, lorCodeService.getReplierFromMessage(MESSAGE).size());
+    }
+  }
+}
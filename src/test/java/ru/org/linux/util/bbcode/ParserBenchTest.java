@@ -0,0 +1,209 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util.bbcode;
+
+import org.junit.Test;
+import ru.org.linux.util.bbcode.Parser.TagToken;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+import static ru.org.linux.util.bbcode.Parser.DEFAULT_PARSER;
+
+/**
+ * Сканер тэгов Parser против прежних регулярных выражений:
+ * одинаковые совпадения на случайных строках и на посте с большим количеством кода,
+ * скорость (время regexpScan, tokenScan и parseCodeHeavyPost) и выделение памяти на KB текста
+ */
+public class ParserBenchTest {
+  private static final Pattern BBTAG_REGEXP = Pattern.compile("\\[\\[?/?([A-Za-z\\*]+)(:[a-f0-9]+)?(=[^\\]]+)?\\]?\\]");
+  private static final Pattern P_REGEXP = Pattern.compile("(\r?\n){2,}");
+
+  private static final String ALPHABET = "[[]]//=:*abfzBQ09 \r\n\n";
+  private static final int ROUNDS = 200;
+
+  private static String random(Random random, int length) {
+    StringBuilder out = new StringBuilder(length);
+
+    for (int i = 0; i < length; i++) {
+      out.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+    }
+
+    return out.toString();
+  }
+
+  @Test
+  public void tagTokenSameAsRegexp() {
+    Random random = new Random(42);
+    TagToken token = new TagToken();
+
+    for (int round = 0; round < 20000; round++) {
+      String text = random(random, random.nextInt(30));
+      int from = text.isEmpty() ? 0 : random.nextInt(text.length());
+
+      Matcher matcher = BBTAG_REGEXP.matcher(text).region(from, text.length());
+      boolean found = matcher.find();
+
+      assertEquals(text, found, token.find(text, from));
+
+      if (found) {
+        assertEquals(text, matcher.start(), token.start);
+        assertEquals(text, matcher.end(), token.end);
+        assertEquals(text, matcher.start(1), token.nameStart);
+        assertEquals(text, matcher.end(1), token.nameEnd);
+
+        if (matcher.group(3) != null) {
+          assertEquals(text, matcher.start(3) + 1, token.paramStart);
+          assertEquals(text, matcher.end(3), token.paramEnd);
+        } else {
+          assertEquals(text, -1, token.paramStart);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void paragraphBreakSameAsRegexp() {
+    Random random = new Random(42);
+
+    for (int round = 0; round < 20000; round++) {
+      String text = random(random, random.nextInt(20));
+
+      Matcher matcher = P_REGEXP.matcher(text);
+
+      if (matcher.find()) {
+        assertEquals(text, matcher.start(), Parser.findParagraphBreak(text, 0));
+        assertEquals(text, matcher.end(), Parser.paragraphBreakEnd(text, matcher.start()));
+      } else {
+        assertEquals(text, -1, Parser.findParagraphBreak(text, 0));
+      }
+
+      assertEquals(text, P_REGEXP.matcher(text).replaceAll(""), Parser.removeParagraphBreaks(text));
+    }
+  }
+
+  private static String codeHeavyPost() {
+    StringBuilder out = new StringBuilder();
+
+    for (int i = 0; i < 20; i++) {
+      out.append("Абзац ").append(i).append(" с [b]разметкой[/b], [i]курсивом[/i] и ссылкой [url=http://www.linux.org.ru/]ЛОР[/url].\n\n");
+      out.append("[code=cpp]\n");
+
+      for (int line = 0; line < 15; line++) {
+        out.append("  if (a[i] > b[j]) { x[").append(line).append("] = y[[0]]; } // [b]не тэг[/b]\n");
+      }
+
+      out.append("[/code]\n\n[quote]цитата[list][*]один[*]два[/list][/quote]\n");
+    }
+
+    return out.toString();
+  }
+
+  private static int scanRegexp(String text) {
+    int count = 0;
+    int pos = 0;
+
+    while (pos < text.length()) {
+      Matcher matcher = BBTAG_REGEXP.matcher(text).region(pos, text.length());
+
+      if (!matcher.find()) {
+        break;
+      }
+
+      count++;
+      matcher.group(0);
+      pos = matcher.end();
+    }
+
+    return count;
+  }
+
+  private static int scanToken(String text) {
+    TagToken token = new TagToken();
+    int count = 0;
+    int pos = 0;
+
+    while (pos < text.length() && token.find(text, pos)) {
+      count++;
+      pos = token.end;
+    }
+
+    return count;
+  }
+
+  @Test
+  public void codeHeavyPostSameAsRegexp() {
+    String text = codeHeavyPost();
+
+    assertEquals(scanRegexp(text), scanToken(text));
+  }
+
+  @Test
+  public void regexpScan() {
+    String text = codeHeavyPost();
+    int tags = scanToken(text);
+
+    for (int i = 0; i < ROUNDS; i++) {
+      assertEquals(tags, scanRegexp(text));
+    }
+  }
+
+  @Test
+  public void tokenScan() {
+    String text = codeHeavyPost();
+    int tags = scanRegexp(text);
+
+    for (int i = 0; i < ROUNDS; i++) {
+      assertEquals(tags, scanToken(text));
+    }
+  }
+
+  @Test
+  public void parseCodeHeavyPost() {
+    String text = codeHeavyPost();
+
+    for (int i = 0; i < ROUNDS; i++) {
+      assertNotNull(DEFAULT_PARSER.parseRoot(DEFAULT_PARSER.createRootNode(), text));
+    }
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+  }
+
+  @Test
+  public void tokenAllocatesLessPerKb() {
+    String text = codeHeavyPost();
+    double kb = text.length() / 1024.0;
+
+    long regexpBytes = allocatedBytes();
+    for (int i = 0; i < ROUNDS; i++) {
+      scanRegexp(text);
+    }
+    double regexpPerKb = (allocatedBytes() - regexpBytes) / kb / ROUNDS;
+
+    long tokenBytes = allocatedBytes();
+    for (int i = 0; i < ROUNDS; i++) {
+      scanToken(text);
+    }
+    double tokenPerKb = (allocatedBytes() - tokenBytes) / kb / ROUNDS;
+
+    assertTrue(String.format("regexp %.0f B/KB, token %.0f B/KB", regexpPerKb, tokenPerKb), tokenPerKb < regexpPerKb);
+  }
+}
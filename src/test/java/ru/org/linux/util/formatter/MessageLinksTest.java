@@ -0,0 +1,171 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util.formatter;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.httpclient.URI;
+import org.junit.Before;
+import org.junit.Test;
+import ru.org.linux.comment.Comment;
+import ru.org.linux.comment.CommentDao;
+import ru.org.linux.group.Group;
+import ru.org.linux.site.MessageNotFoundException;
+import ru.org.linux.spring.SiteConfig;
+import ru.org.linux.topic.Topic;
+import ru.org.linux.topic.TopicDao;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+
+public class MessageLinksTest {
+  private static final String PAGE1 =
+          "см. [url=https://www.linux.org.ru/forum/talks/100?cid=101]тут[/url] и www.linux.org.ru/news/debian/200#comment-201";
+  private static final String PAGE2 =
+          "[markdown](https://www.linux.org.ru/forum/general/300), http://www.linux.org.ru/jump-message.jsp?msgid=400&cid=401 " +
+          "http://example.com/forum/talks/999 https://www.linux.org.ru/forum/talks/500/history";
+
+  private TopicDao topicDao;
+  private CommentDao commentDao;
+  private URI mainURI;
+  private ToHtmlFormatter formatter;
+
+  private static Topic topic(int id, String title, int groupId) {
+    Topic topic = mock(Topic.class);
+    when(topic.getId()).thenReturn(id);
+    when(topic.getTitle()).thenReturn(title);
+    when(topic.getGroupId()).thenReturn(groupId);
+    return topic;
+  }
+
+  @Before
+  public void init() throws Exception {
+    mainURI = new URI("http://www.linux.org.ru/", true, "UTF-8");
+
+    SiteConfig siteConfig = mock(SiteConfig.class);
+    when(siteConfig.getMainURI()).thenReturn(mainURI);
+    when(siteConfig.getSecureURI()).thenReturn(new URI("https://www.linux.org.ru/", true, "UTF-8"));
+
+    Topic topic100 = topic(100, "первый", 1);
+    Topic topic200 = topic(200, "второй", 2);
+    Group talks = mock(Group.class);
+    when(talks.getUrl()).thenReturn("/forum/talks/");
+    Group news = mock(Group.class);
+    when(news.getUrl()).thenReturn("/news/debian/");
+
+    topicDao = mock(TopicDao.class);
+    when(topicDao.findByIds(anyCollectionOf(Integer.class))).thenReturn(ImmutableList.of(topic100, topic200));
+    when(topicDao.getById(100)).thenReturn(topic100);
+    when(topicDao.getById(200)).thenReturn(topic200);
+    when(topicDao.getById(300)).thenThrow(new MessageNotFoundException(300));
+    when(topicDao.getById(400)).thenThrow(new MessageNotFoundException(400));
+    when(topicDao.getGroup(topic100)).thenReturn(talks);
+    when(topicDao.getGroup(topic200)).thenReturn(news);
+
+    Comment deleted = mock(Comment.class);
+    when(deleted.isDeleted()).thenReturn(true);
+
+    commentDao = mock(CommentDao.class);
+    when(commentDao.getDeletedByIds(anyCollectionOf(Integer.class))).thenReturn(ImmutableMap.of(101, false, 201, true));
+    when(commentDao.getById(101)).thenReturn(mock(Comment.class));
+    when(commentDao.getById(201)).thenReturn(deleted);
+
+    formatter = new ToHtmlFormatter();
+    formatter.setSiteConfig(siteConfig);
+    formatter.setTopicDao(topicDao);
+    formatter.setCommentDao(commentDao);
+  }
+
+  @Test
+  public void scanFindsSiteLinks() {
+    MessageLinks links = new MessageLinks(topicDao, commentDao, mainURI);
+
+    Set<Integer> topicIds = new HashSet<>();
+    Set<Integer> commentIds = new HashSet<>();
+
+    links.scan(PAGE1, topicIds, commentIds);
+    links.scan(PAGE2, topicIds, commentIds);
+
+    assertEquals(ImmutableSet.of(100, 200, 300, 400), topicIds);
+    assertEquals(ImmutableSet.of(101, 201, 401), commentIds);
+  }
+
+  @Test
+  public void resolvesPageInOneBatch() throws Exception {
+    MessageLinks links = new MessageLinks(topicDao, commentDao, mainURI);
+    links.addTexts(ImmutableList.of(PAGE1, PAGE2));
+
+    verifyZeroInteractions(topicDao, commentDao);
+
+    assertEquals(100, links.findTopic(100).get().getId());
+    assertEquals(200, links.findTopic(200).get().getId());
+    assertFalse(links.findTopic(300).isPresent());
+    assertFalse(links.findCommentDeleted(101).get());
+    assertTrue(links.findCommentDeleted(201).get());
+    assertFalse(links.findCommentDeleted(401).isPresent());
+
+    verify(topicDao, times(1)).findByIds(ImmutableSet.of(100, 200, 300, 400));
+    verify(commentDao, times(1)).getDeletedByIds(ImmutableSet.of(101, 201, 401));
+    verify(topicDao, never()).getById(anyInt());
+    verify(commentDao, never()).getById(anyInt());
+  }
+
+  @Test
+  public void loadsMissedLinkOnce() throws Exception {
+    MessageLinks links = new MessageLinks(topicDao, commentDao, mainURI);
+
+    assertFalse(links.findTopic(300).isPresent());
+    assertFalse(links.findTopic(300).isPresent());
+    assertTrue(links.findCommentDeleted(201).get());
+    assertTrue(links.findCommentDeleted(201).get());
+
+    verify(topicDao, times(1)).getById(300);
+    verify(commentDao, times(1)).getById(201);
+    verify(topicDao, never()).findByIds(anyCollectionOf(Integer.class));
+  }
+
+  @Test
+  public void linkStateFollowsDeletion() {
+    MessageLinks links = new MessageLinks(topicDao, commentDao, mainURI);
+    links.addTexts(ImmutableList.of(PAGE1));
+
+    assertEquals(0, links.linkState("текст без ссылок"));
+
+    long state = links.linkState(PAGE1);
+
+    when(commentDao.getDeletedByIds(anyCollectionOf(Integer.class))).thenReturn(ImmutableMap.of(101, true, 201, true));
+
+    MessageLinks changed = new MessageLinks(topicDao, commentDao, mainURI);
+    changed.addTexts(ImmutableList.of(PAGE1));
+
+    assertNotEquals(state, changed.linkState(PAGE1));
+  }
+
+  @Test
+  public void formatSameAsSingleLookups() {
+    for (String text : new String[] { PAGE1, PAGE2 }) {
+      MessageLinks links = formatter.newMessageLinks();
+      links.addTexts(ImmutableList.of(PAGE1, PAGE2));
+
+      assertEquals(formatter.format(text, false, null), formatter.format(text, false, null, links));
+    }
+  }
+}
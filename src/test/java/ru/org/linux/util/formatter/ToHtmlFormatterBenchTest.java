@@ -0,0 +1,237 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util.formatter;
+
+import org.apache.commons.httpclient.URI;
+import org.apache.commons.httpclient.URIException;
+import org.junit.Before;
+import org.junit.Test;
+import ru.org.linux.spring.SiteConfig;
+import ru.org.linux.util.StringUtil;
+
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Однопроходный ToHtmlFormatter.format против прежней реализации
+ * через StringTokenizer и Matcher на каждое слово: одинаковый результат
+ * и время форматирования длинного сообщения (longPostTokenizer и longPostSinglePass)
+ */
+public class ToHtmlFormatterBenchTest {
+  private static final Pattern URL_PATTERN = Pattern.compile(
+          "(?<![\\w./])(?:(?:(?:https?://(?:(?:\\w+\\:)?\\w+@)?)|(?:ftp://(?:(?:\\w+\\:)?\\w+@)?)|(?:www\\.)|(?:ftp\\.))[a-z0-9.-]+(?:\\.[a-z]+)?(?::[0-9]+)?" +
+          "(?:/(?:([\\w=?+/\\[\\]~%;,._@#'!\\p{L}:-]|(\\([^\\)]*\\)))*([\\p{L}:'" +
+          "\\w=?+/~@%#-]|(?:&[\\w:|\\[\\]$_.+!*'#%(),@\\p{L}=;/-]+)+|(\\([^\\)]*\\))))?)?)" +
+          "|(?:mailto: ?[a-z0-9+.]+@[a-z0-9.-]+.[a-z]+)|(?:news:([\\w+]\\.?)+)",
+          Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+
+  private static final Pattern uniRE = Pattern.compile("^&((#[1-9]\\d{1,4})|(\\w{1,8}));");
+
+  private static final String[] FRAGMENTS = {
+          "текст", "word", " ", " ", "\n", "\n\n", " -- ", "--", "-", "\"", "''", "&", "&amp;", "&#171;", "&#0;",
+          "&#123456;", "&nbsp;", "&abcdefghi;", "&_;", "<b>", ">", ".", ",", ":", "(", ")",
+          "http://", "https://", "ftp://", "www.", "WWW.", "ftp.", "mailto:", "mailto: ", "news:",
+          "example.com", "/path", "/путь?a=1&b=2", "#anchor", "user:pass@", "[1]", "~x", ":8080",
+          "http://www.linux.org.ru/news/", "https://www.linux.org.ru/tracker/", "http://[::1]/", "a@b.c"
+  };
+
+  private static final int ROUNDS = 200;
+
+  private ToHtmlFormatter formatter;
+
+  @Before
+  public void init() throws Exception {
+    SiteConfig siteConfig = mock(SiteConfig.class);
+    when(siteConfig.getMainURI()).thenReturn(new URI("http://www.linux.org.ru/", true, "UTF-8"));
+    when(siteConfig.getSecureURI()).thenReturn(new URI("https://www.linux.org.ru/", true, "UTF-8"));
+
+    formatter = new ToHtmlFormatter();
+    formatter.setSiteConfig(siteConfig);
+  }
+
+  private static String legacyEscapeHtml(String str) {
+    StringBuilder res = new StringBuilder();
+
+    for (int i = 0; i < str.length(); i++) {
+      switch (str.charAt(i)) {
+        case '<':
+          res.append("&lt;");
+          break;
+        case '>':
+          res.append("&gt;");
+          break;
+        case '\"':
+          res.append("&quot;");
+          break;
+        case '&':
+          Matcher m = uniRE.matcher(str.substring(i));
+          if (m.find()) {
+            String s = m.group();
+            res.append(s);
+            i += s.length() - 1;
+            continue;
+          } else {
+            res.append("&amp;");
+          }
+          break;
+        default:
+          res.append(str.charAt(i));
+      }
+    }
+
+    return res.toString();
+  }
+
+  private String legacyFormat(String text, boolean nofollow, RuTypoChanger changer) {
+    StringTokenizer st = new StringTokenizer(legacyEscapeHtml(text), " \n", true);
+    StringBuilder sb = new StringBuilder();
+
+    while (st.hasMoreTokens()) {
+      sb.append(legacyFormatURL(st.nextToken(), nofollow, changer));
+    }
+
+    return sb.toString().replaceAll(ToHtmlFormatter.MDASH_REGEX, ToHtmlFormatter.MDASH_REPLACE);
+  }
+
+  private static String withMagic(String text, RuTypoChanger changer) {
+    return changer != null ? changer.format(text) : text;
+  }
+
+  private String legacyFormatURL(String line, boolean nofollow, RuTypoChanger changer) {
+    StringBuilder out = new StringBuilder();
+    Matcher m = URL_PATTERN.matcher(line);
+    int index = 0;
+
+    while (m.find()) {
+      out.append(withMagic(line.substring(index, m.start()), changer));
+
+      String mayUrl = line.substring(m.start(), m.end());
+      String urlHref = mayUrl;
+
+      if (mayUrl.toLowerCase().startsWith("www.")) {
+        urlHref = "http://" + mayUrl;
+      } else if (mayUrl.toLowerCase().startsWith("ftp.")) {
+        urlHref = "ftp://" + mayUrl;
+      }
+
+      try {
+        formatter.processUrl(nofollow, out, urlHref, null);
+      } catch (URIException e) {
+        out.append(withMagic(mayUrl, changer));
+      }
+
+      index = m.end();
+    }
+
+    if (index < line.length()) {
+      out.append(withMagic(line.substring(index), changer));
+    }
+
+    return out.toString();
+  }
+
+  private static String random(Random random, int fragments) {
+    StringBuilder out = new StringBuilder();
+
+    for (int i = 0; i < fragments; i++) {
+      out.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+    }
+
+    return out.toString();
+  }
+
+  @Test
+  public void escapeSameAsRegexp() {
+    Random random = new Random(42);
+
+    for (int round = 0; round < 20000; round++) {
+      String text = random(random, random.nextInt(10));
+
+      assertEquals(text, legacyEscapeHtml(text), StringUtil.escapeHtml(text));
+    }
+  }
+
+  @Test
+  public void formatSameAsTokenizer() {
+    Random random = new Random(42);
+
+    for (int round = 0; round < 20000; round++) {
+      String text = random(random, random.nextInt(12));
+      boolean nofollow = random.nextBoolean();
+
+      assertEquals(text, legacyFormat(text, nofollow, null), formatter.format(text, nofollow, null));
+      assertEquals(text, legacyFormat(text, nofollow, new RuTypoChanger()), formatter.format(text, nofollow, new RuTypoChanger()));
+    }
+  }
+
+  @Test
+  public void appendsToBuffer() {
+    StringBuilder out = new StringBuilder("a -");
+
+    formatter.format("- b -- www.example.com", false, null, out);
+
+    assertEquals("a -- b&nbsp;&mdash; <a href=\"http://www.example.com\">http://www.example.com</a>", out.toString());
+  }
+
+  private static String longPost() {
+    StringBuilder out = new StringBuilder();
+
+    for (int i = 0; i < 30; i++) {
+      out.append("Обычный абзац текста -- без ссылок, \"в кавычках\" & с амперсандом &amp; и &#171;entity&#187;, ")
+         .append("который составляет большую часть сообщений на форуме и проходит через автоссылки.\n")
+         .append("Ссылка https://www.kernel.org/doc/html/latest/ и www.example.com/path?a=1&b=2 в конце абзаца.\n\n");
+    }
+
+    return out.toString();
+  }
+
+  @Test
+  public void longPostSameAsTokenizer() {
+    String text = longPost();
+
+    assertEquals(legacyFormat(text, false, null), formatter.format(text, false, null));
+    assertEquals(legacyFormat(text, false, new RuTypoChanger()), formatter.format(text, false, new RuTypoChanger()));
+  }
+
+  @Test
+  public void longPostTokenizer() {
+    String text = longPost();
+    int length = formatter.format(text, false, null).length();
+
+    for (int i = 0; i < ROUNDS; i++) {
+      assertEquals(length, legacyFormat(text, false, null).length());
+    }
+  }
+
+  @Test
+  public void longPostSinglePass() {
+    String text = longPost();
+    int length = legacyFormat(text, false, null).length();
+    StringBuilder out = new StringBuilder();
+
+    for (int i = 0; i < ROUNDS; i++) {
+      out.setLength(0);
+      formatter.format(text, false, null, out);
+      assertEquals(length, out.length());
+    }
+  }
+}
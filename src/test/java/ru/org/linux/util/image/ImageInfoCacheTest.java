@@ -0,0 +1,68 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util.image;
+
+import com.google.common.io.Files;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+import static org.junit.Assert.*;
+
+public class ImageInfoCacheTest {
+  private static final String PNG = "src/test/resources/images/i_want_to_be_a_hero__apng_animated__by_tamalesyatole-d5ht8eu.png";
+
+  @Test
+  public void cachedUntilModified() throws Exception {
+    File file = File.createTempFile("image-info-", ".jpg");
+
+    try {
+      Files.copy(new File("src/main/webapp/img/pcard.jpg"), file);
+
+      ImageInfoCache cache = new ImageInfoCache();
+
+      ImageInfo info = cache.getInfo(file.getPath());
+      assertEquals(1241, info.getWidth());
+      assertSame(info, cache.getInfo(file.getPath()));
+
+      assertTrue(file.setLastModified(file.lastModified() - 10000));
+      assertNotSame(info, cache.getInfo(file.getPath()));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void sameAsImageInfo() throws Exception {
+    ImageInfo info = new ImageInfoCache().getInfo(PNG);
+
+    assertEquals(1275, info.getWidth());
+    assertEquals(720, info.getHeight());
+  }
+
+  @Test(expected = FileNotFoundException.class)
+  public void missingFile() throws Exception {
+    ImageInfoCache cache = new ImageInfoCache();
+
+    try {
+      cache.getInfo("src/test/resources/images/missing.png");
+    } catch (FileNotFoundException ex) {
+      // второй раз из кеша
+      cache.getInfo("src/test/resources/images/missing.png");
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.util.markdown;
+
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.ast.Document;
+import org.apache.commons.httpclient.URI;
+import org.junit.Before;
+import org.junit.Test;
+import ru.org.linux.comment.CommentDao;
+import ru.org.linux.spring.SiteConfig;
+import ru.org.linux.topic.TopicDao;
+import ru.org.linux.user.UserService;
+import ru.org.linux.util.formatter.ToHtmlFormatter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Лента markdown топиков со свернутым cut: готовые renderer против
+ * сборки HtmlRenderer с опциями и расширениями на каждый топик;
+ * время вывода разобранной ленты видно по feedRendererPerTopic и feedCachedRenderer
+ */
+public class FlexmarkRendererBenchTest {
+  private static final int FEED_SIZE = 20;
+  private static final int ROUNDS = 20;
+
+  private FlexmarkMarkdownFormatter formatter;
+
+  @Before
+  public void init() throws Exception {
+    SiteConfig siteConfig = mock(SiteConfig.class);
+    when(siteConfig.getMainURI()).thenReturn(new URI("http://www.linux.org.ru/", true, "UTF-8"));
+    when(siteConfig.getSecureURI()).thenReturn(new URI("https://www.linux.org.ru/", true, "UTF-8"));
+
+    formatter = new FlexmarkMarkdownFormatter(siteConfig, mock(TopicDao.class), mock(CommentDao.class),
+            mock(UserService.class), new ToHtmlFormatter());
+  }
+
+  private static String topic(int n) {
+    return "Вышла новая версия **проекта " + n + "** с *исправлениями* и ~~старыми~~ новыми возможностями.\n\n" +
+            "Подробности на https://example.com/release/" + n + " и в [списке изменений](https://example.com/changes).\n\n" +
+            ">>>\n" +
+            "## Изменения\n\n" +
+            "* пункт первый\n* пункт второй с `кодом`\n* пункт \"третий\"\n\n" +
+            "```c\nint main() { return " + n + "; }\n```\n\n" +
+            "| a | b |\n|---|---|\n| 1 | 2 |\n" +
+            "<<<\n";
+  }
+
+  private static List<String> feed() {
+    List<String> feed = new ArrayList<>(FEED_SIZE);
+
+    for (int i = 0; i < FEED_SIZE; i++) {
+      feed.add(topic(i));
+    }
+
+    return feed;
+  }
+
+  private static String url(int n) {
+    return "https://www.linux.org.ru/news/opensource/" + n;
+  }
+
+  private String legacyRender(Parser parser, String text, String cutUrl) {
+    Document document = parser.parse(text);
+    document.set(CutExtension.CutLink(), cutUrl);
+
+    return HtmlRenderer.builder(formatter.options(false, true)).build().render(document);
+  }
+
+  @Test
+  public void cutLinkPerRender() {
+    String first = formatter.renderWithMinimizedCut(topic(1), false, url(1));
+    String second = formatter.renderWithMinimizedCut(topic(2), false, url(2));
+
+    assertTrue(first, first.contains("href=\"" + url(1) + "#cut\""));
+    assertTrue(second, second.contains("href=\"" + url(2) + "#cut\""));
+    assertFalse(first.contains("rel=\"nofollow\""));
+
+    assertTrue(formatter.renderWithMinimizedCut(topic(1), true, url(1)).contains("rel=\"nofollow\""));
+  }
+
+  @Test
+  public void feedSameAsRendererPerTopic() {
+    List<String> feed = feed();
+    Parser parser = Parser.builder(formatter.options(false, false)).build();
+
+    for (int i = 0; i < FEED_SIZE; i++) {
+      assertEquals(legacyRender(parser, feed.get(i), url(i)), formatter.renderWithMinimizedCut(feed.get(i), false, url(i)));
+    }
+  }
+
+  private List<Document> parsedFeed() {
+    Parser parser = Parser.builder(formatter.options(false, false)).build();
+    List<Document> documents = new ArrayList<>(FEED_SIZE);
+    List<String> feed = feed();
+
+    for (int i = 0; i < FEED_SIZE; i++) {
+      Document document = parser.parse(feed.get(i));
+      document.set(CutExtension.CutLink(), url(i));
+      documents.add(document);
+    }
+
+    return documents;
+  }
+
+  @Test
+  public void feedRendererPerTopic() {
+    List<Document> documents = parsedFeed();
+
+    for (int round = 0; round < ROUNDS; round++) {
+      for (int i = 0; i < FEED_SIZE; i++) {
+        HtmlRenderer renderer = HtmlRenderer.builder(formatter.options(false, true)).build();
+
+        assertTrue(renderer.render(documents.get(i)).contains(url(i)));
+      }
+    }
+  }
+
+  @Test
+  public void feedCachedRenderer() {
+    List<Document> documents = parsedFeed();
+    HtmlRenderer renderer = HtmlRenderer.builder(formatter.options(false, true)).build();
+
+    for (int round = 0; round < ROUNDS; round++) {
+      for (int i = 0; i < FEED_SIZE; i++) {
+        assertTrue(renderer.render(documents.get(i)).contains(url(i)));
+      }
+    }
+  }
+}
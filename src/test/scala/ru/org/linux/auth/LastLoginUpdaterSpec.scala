@@ -0,0 +1,95 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.auth
+
+import java.sql.Timestamp
+
+import org.junit.runner.RunWith
+import org.mockito.ArgumentCaptor
+import org.mockito.Matchers.any
+import org.mockito.Mockito._
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+import ru.org.linux.user.{User, UserDao}
+
+@RunWith(classOf[JUnitRunner])
+class LastLoginUpdaterSpec extends Specification {
+  private def user(id: Int): User = {
+    val user = mock(classOf[User])
+    when(user.getId).thenReturn(id)
+    user
+  }
+
+  "LastLoginUpdater" should {
+    "write all pending users in one batch" in {
+      val userDao = mock(classOf[UserDao])
+      val updater = new LastLoginUpdater(userDao)
+
+      updater.userSeen(user(1))
+      updater.userSeen(user(2))
+      updater.userSeen(user(1))
+
+      updater.getPendingCount must be equalTo 2
+
+      updater.flush()
+
+      val captor = ArgumentCaptor.forClass(classOf[java.util.Map[Integer, Timestamp]])
+      verify(userDao, times(1)).updateLastlogin(captor.capture())
+
+      captor.getValue.keySet must be equalTo java.util.Set.of(Integer.valueOf(1), Integer.valueOf(2))
+      updater.getPendingCount must be equalTo 0
+    }
+
+    "throttle repeated requests of the same user" in {
+      val userDao = mock(classOf[UserDao])
+      val updater = new LastLoginUpdater(userDao)
+
+      updater.userSeen(user(1))
+      updater.flush()
+      updater.userSeen(user(1))
+      updater.flush()
+
+      verify(userDao, times(1)).updateLastlogin(any(classOf[java.util.Map[Integer, Timestamp]]))
+      updater.getPendingCount must be equalTo 0
+    }
+
+    "keep failed batch for the next flush" in {
+      val userDao = mock(classOf[UserDao])
+      doThrow(new RuntimeException("db")).doNothing().when(userDao).updateLastlogin(any(classOf[java.util.Map[Integer, Timestamp]]))
+
+      val updater = new LastLoginUpdater(userDao)
+
+      updater.userSeen(user(1))
+      updater.flush()
+
+      updater.getPendingCount must be equalTo 1
+
+      updater.flush()
+
+      verify(userDao, times(2)).updateLastlogin(any(classOf[java.util.Map[Integer, Timestamp]]))
+      updater.getPendingCount must be equalTo 0
+    }
+
+    "skip database when nothing is pending" in {
+      val userDao = mock(classOf[UserDao])
+
+      new LastLoginUpdater(userDao).flush()
+
+      verifyZeroInteractions(userDao)
+      ok
+    }
+  }
+}
@@ -16,18 +16,25 @@ package ru.org.linux.search
 
 import java.nio.file.Files
 
+import akka.actor.ActorRef
 import com.sksamuel.elastic4s.ElasticsearchClientUri
 import com.sksamuel.elastic4s.http.ElasticClient
 import com.sksamuel.elastic4s.http.ElasticDsl._
 import org.mockito.Mockito
 import org.specs2.mutable.SpecificationWithJUnit
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.cache.CacheManager
+import org.springframework.cache.support.NoOpCacheManager
 import org.springframework.context.annotation._
 import org.springframework.stereotype.{Repository, Service}
 import org.springframework.test.context.{ContextConfiguration, TestContextManager}
 import play.api.libs.ws.StandaloneWSClient
 import ru.org.linux.auth.FloodProtector
+import ru.org.linux.comment.RenderedCommentCache
 import ru.org.linux.search.ElasticsearchIndexService.MessageIndex
+import ru.org.linux.topic.TopicNavigationIndex
+import ru.org.linux.tracker.TrackerIndex
+import ru.org.linux.util.image.ImageInfoCache
 
 @ContextConfiguration(classes = Array(classOf[SearchIntegrationTestConfiguration]))
 class ElasticsearchIndexServiceIntegrationSpec extends SpecificationWithJUnit {
@@ -81,4 +88,22 @@ class SearchIntegrationTestConfiguration {
 
   @Bean
   def httpClient: StandaloneWSClient = Mockito.mock(classOf[StandaloneWSClient])
+
+  @Bean
+  def cacheManager: CacheManager = new NoOpCacheManager()
+
+  @Bean
+  def renderedCommentCache: RenderedCommentCache = new RenderedCommentCache()
+
+  @Bean
+  def trackerIndex: TrackerIndex = new TrackerIndex()
+
+  @Bean
+  def imageInfoCache: ImageInfoCache = new ImageInfoCache()
+
+  @Bean
+  def topicNavigationIndex: TopicNavigationIndex = new TopicNavigationIndex()
+
+  @Bean(Array("realtimeHubWS"))
+  def realtimeHub: ActorRef = Mockito.mock(classOf[ActorRef])
 }
\ No newline at end of file
@@ -19,6 +19,8 @@ import org.junit.runner.RunWith
 import org.junit.{Assert, Test}
 import org.mockito.Mockito
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.cache.CacheManager
+import org.springframework.cache.support.NoOpCacheManager
 import org.springframework.context.annotation.{Bean, Configuration, ImportResource}
 import org.springframework.test.context.ContextConfiguration
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner
@@ -32,6 +34,7 @@ import ru.org.linux.spring.dao.{DeleteInfoDao, MsgbaseDao}
 import ru.org.linux.topic.TopicDaoIntegrationTest._
 import ru.org.linux.user.{IgnoreListDao, UserDao, UserLogDao, UserService}
 import ru.org.linux.util.bbcode.LorCodeService
+import ru.org.linux.util.image.ImageInfoCache
 
 @RunWith (classOf[SpringJUnit4ClassRunner])
 @ContextConfiguration (classes = Array (classOf[TopicDaoIntegrationTestConfiguration] ) )
@@ -78,9 +81,18 @@ class TopicDaoIntegrationTestConfiguration {
   @Bean
   def topicDao = new TopicDao()
 
+  @Bean
+  def topicNavigationDao = new TopicNavigationDao()
+
+  @Bean
+  def topicNavigationIndex = new TopicNavigationIndex()
+
   @Bean
   def userDao = new UserDao()
 
+  @Bean
+  def cacheManager: CacheManager = new NoOpCacheManager()
+
   @Bean
   def imageDao = new ImageDao()
 
@@ -92,7 +104,7 @@ class TopicDaoIntegrationTestConfiguration {
 
   @Bean
   def userService(siteConfig:SiteConfig, userDao:UserDao,
-                  ignoreListDao:IgnoreListDao) = new UserService(siteConfig, userDao, ignoreListDao)
+                  ignoreListDao:IgnoreListDao) = new UserService(siteConfig, userDao, ignoreListDao, new ImageInfoCache)
 
   @Bean
   def userLogDao = Mockito.mock(classOf[UserLogDao])
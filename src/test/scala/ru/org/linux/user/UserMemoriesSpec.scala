@@ -0,0 +1,45 @@
+/*
+ * Copyright 1998-2019 Linux.org.ru
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ru.org.linux.user
+
+import org.junit.runner.RunWith
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class UserMemoriesSpec extends Specification {
+  // (id записи, топик, watch)
+  private val memories = UserMemories(0, Seq((10, 300, true), (11, 100, true), (12, 200, false), (13, 100, false)))
+
+  "UserMemories" should {
+    "find entries by topic" in {
+      memories.watchId(100) must be equalTo 11
+      memories.watchId(300) must be equalTo 10
+      memories.favId(100) must be equalTo 13
+      memories.favId(200) must be equalTo 12
+    }
+
+    "return 0 for missing topics" in {
+      memories.watchId(200) must be equalTo 0
+      memories.favId(300) must be equalTo 0
+      memories.favId(150) must be equalTo 0
+    }
+
+    "weigh by number of entries" in {
+      memories.size must be equalTo 4
+    }
+  }
+}